@@ -24,10 +24,12 @@ import java.util.List;
 import org.apache.commons.net.ssh.cipher.Cipher;
 import org.apache.commons.net.ssh.compression.Compression;
 import org.apache.commons.net.ssh.kex.KeyExchange;
+import org.apache.commons.net.ssh.kex.KeyPairPool;
 import org.apache.commons.net.ssh.keyprovider.FileKeyProvider;
 import org.apache.commons.net.ssh.mac.MAC;
 import org.apache.commons.net.ssh.random.Random;
 import org.apache.commons.net.ssh.signature.Signature;
+import org.apache.commons.net.ssh.transport.Multiplexer;
 
 /**
  * Holds configuration information and factories. Acts a container for factories of {@link KeyExchange}, {@link Cipher},
@@ -47,6 +49,16 @@ public class Config
     private List<Factory.Named<Signature>> signatureFactories;
     private List<Factory.Named<FileKeyProvider>> fileKeyProviderFactories;
     
+    private int writeThreshold = 64 * 1024;
+    private int maxWriteDelay = 5;
+    
+    private Multiplexer multiplexer;
+    
+    private KeyPairPool keyPairPool;
+    
+    private long rekeyBytes;
+    private int rekeyInterval;
+    
     /**
      * Retrieve the list of named factories for {@code Cipher}.
      * 
@@ -87,6 +99,17 @@ public class Config
         return kexFactories;
     }
     
+    /**
+     * Returns the {@link KeyPairPool} from which key exchange takes its ephemeral key pairs, or {@code null} if they are
+     * generated on demand.
+     * 
+     * @see #setKeyPairPool(KeyPairPool)
+     */
+    public KeyPairPool getKeyPairPool()
+    {
+        return keyPairPool;
+    }
+    
     /**
      * Retrieve the list of named factories for <code>MAC</code>.
      * 
@@ -97,6 +120,28 @@ public class Config
         return macFactories;
     }
     
+    /**
+     * Returns the maximum time in milliseconds for which an outgoing packet may be held back while waiting to be
+     * coalesced with packets from other writers.
+     * 
+     * @see #setMaxWriteDelay(int)
+     */
+    public int getMaxWriteDelay()
+    {
+        return maxWriteDelay;
+    }
+    
+    /**
+     * Returns the {@link Multiplexer} serving I/O for transports, or {@code null} if each transport uses a thread of its
+     * own.
+     * 
+     * @see #setMultiplexer(Multiplexer)
+     */
+    public Multiplexer getMultiplexer()
+    {
+        return multiplexer;
+    }
+    
     /**
      * Retrieve the {@link Random} factory.
      * 
@@ -107,6 +152,26 @@ public class Config
         return randomFactory;
     }
     
+    /**
+     * Returns the number of bytes, sent and received together, after which keys are automatically re-exchanged.
+     * 
+     * @see #setRekeyBytes(long)
+     */
+    public long getRekeyBytes()
+    {
+        return rekeyBytes;
+    }
+    
+    /**
+     * Returns the number of seconds after which keys are automatically re-exchanged.
+     * 
+     * @see #setRekeyInterval(int)
+     */
+    public int getRekeyInterval()
+    {
+        return rekeyInterval;
+    }
+    
     /**
      * Retrieve the list of named factories for {@link Signature}
      * 
@@ -126,6 +191,16 @@ public class Config
         return version;
     }
     
+    /**
+     * Returns the number of bytes of outgoing packets that may be coalesced before they are flushed to the socket.
+     * 
+     * @see #setWriteThreshold(int)
+     */
+    public int getWriteThreshold()
+    {
+        return writeThreshold;
+    }
+    
     /**
      * Set the named factories for {@link Cipher}.
      * 
@@ -214,6 +289,19 @@ public class Config
         this.kexFactories = kexFactories;
     }
     
+    /**
+     * Set the {@link KeyPairPool} from which key exchange should take its ephemeral key pairs. Generating these is the
+     * most expensive step of connection setup on the client side, so a pool shared between clients that connect often
+     * takes it off the critical path.
+     * 
+     * @param keyPairPool
+     *            the pool, or {@code null} to generate key pairs on demand
+     */
+    public void setKeyPairPool(KeyPairPool keyPairPool)
+    {
+        this.keyPairPool = keyPairPool;
+    }
+    
     /**
      * Set the named factories for {@link MAC}.
      * 
@@ -236,6 +324,32 @@ public class Config
         this.macFactories = macFactories;
     }
     
+    /**
+     * Set the maximum time for which an outgoing packet may be held back while waiting to be coalesced with packets
+     * from other writers. Packets are only ever held back while another thread is waiting to write, so this bounds the
+     * added latency under contention.
+     * 
+     * @param maxWriteDelay
+     *            delay in milliseconds
+     */
+    public void setMaxWriteDelay(int maxWriteDelay)
+    {
+        this.maxWriteDelay = maxWriteDelay;
+    }
+    
+    /**
+     * Set the {@link Multiplexer} that should serve I/O for transports created with this config, instead of each
+     * transport using a thread of its own. Clients using this config connect through the multiplexer's
+     * {@link Multiplexer#getSocketFactory() socket factory}.
+     * 
+     * @param multiplexer
+     *            the multiplexer, or {@code null} for a thread per transport
+     */
+    public void setMultiplexer(Multiplexer multiplexer)
+    {
+        this.multiplexer = multiplexer;
+    }
+    
     /**
      * Set the factory for {@link Random}.
      * 
@@ -247,6 +361,33 @@ public class Config
         this.randomFactory = randomFactory;
     }
     
+    /**
+     * Set the number of bytes, sent and received together, after which keys should automatically be re-exchanged. RFC
+     * 4253 recommends rekeying after each gigabyte. By default keys are not re-exchanged based on volume.
+     * 
+     * @param rekeyBytes
+     *            limit in bytes, or {@code 0} to not rekey based on volume
+     */
+    public void setRekeyBytes(long rekeyBytes)
+    {
+        this.rekeyBytes = rekeyBytes;
+    }
+    
+    /**
+     * Set the number of seconds after which keys should automatically be re-exchanged. RFC 4253 recommends rekeying
+     * after each hour. By default keys are not re-exchanged based on time.
+     * <p>
+     * The policy is checked as packets are sent or received, so an idle connection is rekeyed when it next carries
+     * data.
+     * 
+     * @param rekeyInterval
+     *            interval in seconds, or {@code 0} to not rekey based on time
+     */
+    public void setRekeyInterval(int rekeyInterval)
+    {
+        this.rekeyInterval = rekeyInterval;
+    }
+    
     /**
      * Set the named factories for {@link Signature}.
      * 
@@ -269,6 +410,18 @@ public class Config
         this.signatureFactories = signatureFactories;
     }
     
+    /**
+     * Set the number of bytes of outgoing packets that may be coalesced before they are flushed to the socket. A value
+     * smaller than the maximum packet size means larger packets are always written on their own.
+     * 
+     * @param writeThreshold
+     *            threshold in bytes
+     */
+    public void setWriteThreshold(int writeThreshold)
+    {
+        this.writeThreshold = writeThreshold;
+    }
+    
     /**
      * Set the software version information for identification during SSH connection initialization. For example,
      * {@code "NET_3_0"}.
@@ -34,11 +34,14 @@ import org.apache.commons.net.SocketClient;
 import org.apache.commons.net.ssh.Factory.Named;
 import org.apache.commons.net.ssh.cipher.AES128CBC;
 import org.apache.commons.net.ssh.cipher.AES128CTR;
+import org.apache.commons.net.ssh.cipher.AES128GCM;
 import org.apache.commons.net.ssh.cipher.AES192CBC;
 import org.apache.commons.net.ssh.cipher.AES192CTR;
 import org.apache.commons.net.ssh.cipher.AES256CBC;
 import org.apache.commons.net.ssh.cipher.AES256CTR;
+import org.apache.commons.net.ssh.cipher.AES256GCM;
 import org.apache.commons.net.ssh.cipher.BlowfishCBC;
+import org.apache.commons.net.ssh.cipher.ChaCha20Poly1305;
 import org.apache.commons.net.ssh.cipher.Cipher;
 import org.apache.commons.net.ssh.cipher.TripleDESCBC;
 import org.apache.commons.net.ssh.compression.DelayedZlibCompression;
@@ -52,11 +55,16 @@ import org.apache.commons.net.ssh.connection.LocalPortForwarder;
 import org.apache.commons.net.ssh.connection.RemotePortForwarder;
 import org.apache.commons.net.ssh.connection.Session;
 import org.apache.commons.net.ssh.connection.SessionChannel;
+import org.apache.commons.net.ssh.connection.SessionSetup;
 import org.apache.commons.net.ssh.connection.X11Forwarder;
 import org.apache.commons.net.ssh.connection.RemotePortForwarder.ForwardedTCPIPChannel;
 import org.apache.commons.net.ssh.connection.X11Forwarder.X11Channel;
+import org.apache.commons.net.ssh.kex.Curve25519SHA256;
 import org.apache.commons.net.ssh.kex.DHG1;
 import org.apache.commons.net.ssh.kex.DHG14;
+import org.apache.commons.net.ssh.kex.ECDHNistP256;
+import org.apache.commons.net.ssh.kex.ECDHNistP384;
+import org.apache.commons.net.ssh.kex.ECDHNistP521;
 import org.apache.commons.net.ssh.keyprovider.FileKeyProvider;
 import org.apache.commons.net.ssh.keyprovider.KeyPairWrapper;
 import org.apache.commons.net.ssh.keyprovider.KeyProvider;
@@ -66,6 +74,10 @@ import org.apache.commons.net.ssh.mac.HMACMD5;
 import org.apache.commons.net.ssh.mac.HMACMD596;
 import org.apache.commons.net.ssh.mac.HMACSHA1;
 import org.apache.commons.net.ssh.mac.HMACSHA196;
+import org.apache.commons.net.ssh.mac.HMACSHA256;
+import org.apache.commons.net.ssh.mac.HMACSHA256ETM;
+import org.apache.commons.net.ssh.mac.HMACSHA512;
+import org.apache.commons.net.ssh.mac.HMACSHA512ETM;
 import org.apache.commons.net.ssh.random.BouncyCastleRandom;
 import org.apache.commons.net.ssh.random.JCERandom;
 import org.apache.commons.net.ssh.random.SingletonRandomFactory;
@@ -143,11 +155,13 @@ public class SSHClient extends SocketClient implements SessionFactory
      * config only if {@link BouncyCastle} is in the classpath.
      * <p>
      * <ul>
-     * <li>{@link Config#setKeyExchangeFactories Key exchange}: {@link DHG14}*, {@link DHG1}</li>
-     * <li>{@link Config#setCipherFactories Ciphers} [1]: {@link AES128CTR}, {@link AES192CTR}, {@link AES256CTR},
-     * {@link AES128CBC}, {@link AES192CBC}, {@link AES256CBC}, {@link AES192CBC}, {@link TripleDESCBC},
-     * {@link BlowfishCBC}</li>
-     * <li>{@link Config#setMACFactories MAC}: {@link HMACSHA1}, {@link HMACSHA196}, {@link HMACMD5}, {@link HMACMD596}</li>
+     * <li>{@link Config#setKeyExchangeFactories Key exchange}: {@link Curve25519SHA256}, {@link ECDHNistP256},
+     * {@link ECDHNistP384}, {@link ECDHNistP521}, {@link DHG14}*, {@link DHG1}</li>
+     * <li>{@link Config#setCipherFactories Ciphers} [1]: {@link AES128GCM}, {@link AES256GCM},
+     * {@link ChaCha20Poly1305}, {@link AES128CTR}, {@link AES192CTR}, {@link AES256CTR}, {@link AES128CBC},
+     * {@link AES192CBC}, {@link AES256CBC}, {@link AES192CBC}, {@link TripleDESCBC}, {@link BlowfishCBC}</li>
+     * <li>{@link Config#setMACFactories MAC}: {@link HMACSHA256ETM}, {@link HMACSHA512ETM}, {@link HMACSHA256},
+     * {@link HMACSHA512}, {@link HMACSHA1}, {@link HMACSHA196}, {@link HMACMD5}, {@link HMACMD596}</li>
      * <li>{@link Config#setCompressionFactories Compression}: {@link NoneCompression}</li>
      * <li>{@link Config#setSignatureFactories Signature}: {@link SignatureRSA}, {@link SignatureDSA}</li>
      * <li>{@link Config#setRandomFactory PRNG}: {@link BouncyCastleRandom}* or {@link JCERandom}</li>
@@ -169,7 +183,12 @@ public class SSHClient extends SocketClient implements SessionFactory
         if (SecurityUtils.isBouncyCastleRegistered())
         {
             
-            conf.setKeyExchangeFactories(new DHG14.Factory(), //
+            conf.setKeyExchangeFactories(new Curve25519SHA256.Factory(), //
+                    new Curve25519SHA256.FactoryLibSSH(), //
+                    new ECDHNistP256.Factory(), //
+                    new ECDHNistP384.Factory(), //
+                    new ECDHNistP521.Factory(), //
+                    new DHG14.Factory(), //
                     new DHG1.Factory());
             
             conf.setRandomFactory(new SingletonRandomFactory(new BouncyCastleRandom.Factory()));
@@ -179,11 +198,19 @@ public class SSHClient extends SocketClient implements SessionFactory
             
         } else
         {
-            conf.setKeyExchangeFactories(new DHG1.Factory());
+            conf.setKeyExchangeFactories(new Curve25519SHA256.Factory(), //
+                    new Curve25519SHA256.FactoryLibSSH(), //
+                    new ECDHNistP256.Factory(), //
+                    new ECDHNistP384.Factory(), //
+                    new ECDHNistP521.Factory(), //
+                    new DHG1.Factory());
             conf.setRandomFactory(new SingletonRandomFactory(new JCERandom.Factory()));
         }
         
         List<Named<Cipher>> avail = new LinkedList<Named<Cipher>>(Arrays.<Named<Cipher>> asList(
+                new AES128GCM.Factory(), //
+                new AES256GCM.Factory(), //
+                new ChaCha20Poly1305.Factory(), //
                 new AES128CTR.Factory(), //
                 new AES192CTR.Factory(), //
                 new AES256CTR.Factory(), //
@@ -218,7 +245,8 @@ public class SSHClient extends SocketClient implements SessionFactory
         
         conf.setCompressionFactories(new NoneCompression.Factory());
         
-        conf.setMACFactories(new HMACSHA1.Factory(), new HMACSHA196.Factory(), new HMACMD5.Factory(),
+        conf.setMACFactories(new HMACSHA256ETM.Factory(), new HMACSHA512ETM.Factory(), new HMACSHA256.Factory(),
+                new HMACSHA512.Factory(), new HMACSHA1.Factory(), new HMACSHA196.Factory(), new HMACMD5.Factory(),
                 new HMACMD596.Factory());
         
         conf.setSignatureFactories(new SignatureRSA.Factory(), new SignatureDSA.Factory());
@@ -247,6 +275,8 @@ public class SSHClient extends SocketClient implements SessionFactory
     public SSHClient(Config config)
     {
         setDefaultPort(DEFAULT_PORT);
+        if (config.getMultiplexer() != null)
+            setSocketFactory(config.getMultiplexer().getSocketFactory());
         this.trans = new TransportProtocol(config);
         this.auth = new UserAuthProtocol(trans);
         this.conn = new ConnectionProtocol(trans);
@@ -737,6 +767,16 @@ public class SSHClient extends SocketClient implements SessionFactory
         return new SFTPClient(this);
     }
     
+    /**
+     * Returns a {@link SessionSetup} for starting a {@code session} channel with a number of requests, which are made
+     * with fewer round trips than when made one by one on the {@link #startSession() started} session.
+     */
+    public SessionSetup newSessionSetup()
+    {
+        assert isConnected() && isAuthenticated();
+        return new SessionSetup(conn);
+    }
+    
     /**
      * Does key re-exchange.
      * 
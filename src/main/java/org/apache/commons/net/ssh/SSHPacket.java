@@ -21,6 +21,7 @@ package org.apache.commons.net.ssh;
 import java.util.Arrays;
 
 import org.apache.commons.net.ssh.util.Buffer;
+import org.apache.commons.net.ssh.util.BufferPool;
 import org.apache.commons.net.ssh.util.Constants;
 import org.apache.commons.net.ssh.util.Constants.Message;
 
@@ -42,6 +43,11 @@ public class SSHPacket extends Buffer<SSHPacket>
         super(data);
     }
     
+    public SSHPacket(int size, BufferPool pool)
+    {
+        super(size, pool);
+    }
+    
     /**
      * Constructs new buffer for the specified SSH packet and reserves the needed space (5 bytes) for the packet header.
      * 
@@ -50,7 +56,21 @@ public class SSHPacket extends Buffer<SSHPacket>
      */
     public SSHPacket(Constants.Message msg)
     {
-        super();
+        this(msg, null);
+    }
+    
+    /**
+     * Constructs new buffer for the specified SSH packet, taking its storage from {@code pool}, and reserves the needed
+     * space (5 bytes) for the packet header. It should be {@link #release() released} once it has been written.
+     * 
+     * @param msg
+     *            the SSH command
+     * @param pool
+     *            the pool to take storage from, or {@code null} to allocate it
+     */
+    public SSHPacket(Constants.Message msg, BufferPool pool)
+    {
+        super(DEFAULT_SIZE, pool);
         rpos = wpos = 5;
         putMessageID(msg);
     }
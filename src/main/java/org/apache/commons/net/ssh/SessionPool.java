@@ -0,0 +1,552 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.net.ssh.connection.ConnectionException;
+import org.apache.commons.net.ssh.connection.Session;
+import org.apache.commons.net.ssh.connection.SessionChannel;
+import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands out sessions over a pool of connected and authenticated {@link SSHClient}s, so that running many short-lived
+ * commands against the same hosts does not pay for key exchange and authentication each time.
+ * <p>
+ * Connections are keyed by host, port and username, and are made by a {@link Connector} that is in charge of host key
+ * verification and authentication. Each connection carries up to {@link #setMaxChannels(int) a number} of sessions at
+ * once; when all connections for a key are at that limit and no more {@link #setMaxConnections(int) may be made},
+ * callers wait for a session to close.
+ * <p>
+ * Pooled clients send {@link org.apache.commons.net.ssh.transport.Transport#setHeartbeatInterval(int) heartbeats}, so
+ * that connections which went bad while idle are noticed and dropped. Connections with no sessions open are
+ * disconnected once they have been idle for the {@link #setIdleTimeout(int) idle timeout}.
+ * <p>
+ * Sessions obtained from the pool are given back by {@link Session#close() closing} them; the connection stays up.
+ */
+public class SessionPool
+{
+    
+    /**
+     * Makes the connections for a {@link SessionPool}.
+     */
+    public interface Connector
+    {
+        
+        /**
+         * Returns a client connected to {@code hostname} on {@code port}, and authenticated as {@code username}.
+         * 
+         * @throws IOException
+         *             if connecting or authenticating failed
+         */
+        SSHClient connect(String hostname, int port, String username) throws IOException;
+        
+    }
+    
+    private final class Pooled
+    {
+        
+        private final String key;
+        private final SSHClient client;
+        
+        /** Number of sessions leased over this connection */
+        private int leased;
+        
+        /** When the last session over this connection was given back */
+        private long idleSince = System.nanoTime();
+        
+        private Pooled(String key, SSHClient client)
+        {
+            this.key = key;
+            this.client = client;
+        }
+        
+        private boolean isAlive()
+        {
+            return client.isConnected() && client.isAuthenticated();
+        }
+        
+    }
+    
+    private final class PooledSession extends SessionChannel
+    {
+        
+        private final Pooled pooled;
+        
+        private boolean returned;
+        
+        private PooledSession(Pooled pooled)
+        {
+            super(pooled.client.getConnection());
+            this.pooled = pooled;
+        }
+        
+        @Override
+        protected void finishOff()
+        {
+            super.finishOff();
+            giveBack(this);
+        }
+        
+    }
+    
+    /** Connections to one host, port and username */
+    private final class Entry
+    {
+        
+        private final List<Pooled> conns = new LinkedList<Pooled>();
+        
+        /** Number of connections being made */
+        private int connecting;
+        
+    }
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private final Connector connector;
+    
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    
+    private int maxChannels = 10;
+    private int maxConnections = 4;
+    private int idleTimeout = 60;
+    private int heartbeatInterval = 30;
+    private int leaseTimeout = 30;
+    
+    private ScheduledFuture<?> eviction;
+    private boolean closed;
+    
+    private long leases;
+    private long hits;
+    private long waits;
+    private long waitNanos;
+    
+    public SessionPool(Connector connector)
+    {
+        this.connector = connector;
+    }
+    
+    /**
+     * Disconnect all pooled connections, including ones with sessions still open. The pool cannot be used hereafter.
+     */
+    public void close()
+    {
+        final List<Pooled> all = new ArrayList<Pooled>();
+        synchronized (this)
+        {
+            closed = true;
+            if (eviction != null)
+                eviction.cancel(false);
+            for (Entry entry : entries.values())
+                all.addAll(entry.conns);
+            entries.clear();
+            notifyAll();
+        }
+        for (Pooled pooled : all)
+            disconnect(pooled.key, pooled.client);
+    }
+    
+    /**
+     * Returns the number of connections currently in the pool.
+     */
+    public synchronized int getConnectionCount()
+    {
+        int count = 0;
+        for (Entry entry : entries.values())
+            count += entry.conns.size();
+        return count;
+    }
+    
+    /**
+     * Returns the number of sessions that have been handed out.
+     */
+    public synchronized long getLeaseCount()
+    {
+        return leases;
+    }
+    
+    /**
+     * Returns the number of sessions that were handed out over a connection that was already in the pool.
+     */
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+    
+    /**
+     * Returns the fraction of sessions that were handed out over a connection that was already in the pool.
+     */
+    public synchronized double getHitRate()
+    {
+        return leases == 0 ? 0 : (double) hits / leases;
+    }
+    
+    /**
+     * Returns the number of times a caller had to wait for a session to be given back.
+     */
+    public synchronized long getLeaseWaitCount()
+    {
+        return waits;
+    }
+    
+    /**
+     * Returns the total time in milliseconds that callers spent waiting for sessions to be given back.
+     */
+    public synchronized long getLeaseWaitTime()
+    {
+        return waitNanos / 1000000;
+    }
+    
+    public synchronized int getHeartbeatInterval()
+    {
+        return heartbeatInterval;
+    }
+    
+    public synchronized int getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+    
+    public synchronized int getLeaseTimeout()
+    {
+        return leaseTimeout;
+    }
+    
+    public synchronized int getMaxChannels()
+    {
+        return maxChannels;
+    }
+    
+    public synchronized int getMaxConnections()
+    {
+        return maxConnections;
+    }
+    
+    /**
+     * Returns a {@link SessionFactory} that starts sessions from this pool as {@code username} at {@code hostname} on
+     * {@code port}.
+     */
+    public SessionFactory getSessionFactory(final String hostname, final int port, final String username)
+    {
+        return new SessionFactory()
+        {
+            public Session startSession() throws ConnectionException, TransportException
+            {
+                return SessionPool.this.startSession(hostname, port, username);
+            }
+        };
+    }
+    
+    /**
+     * Set the interval in seconds at which pooled clients send heartbeats; {@code 0} disables them. This applies to
+     * connections made hereafter.
+     */
+    public synchronized void setHeartbeatInterval(int heartbeatInterval)
+    {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+    
+    /**
+     * Set the time in seconds after which a connection with no sessions open is disconnected.
+     */
+    public synchronized void setIdleTimeout(int idleTimeout)
+    {
+        this.idleTimeout = idleTimeout;
+    }
+    
+    /**
+     * Set the time in seconds a caller waits for a session to be given back when the pool is at its limits; {@code 0}
+     * waits indefinitely.
+     */
+    public synchronized void setLeaseTimeout(int leaseTimeout)
+    {
+        this.leaseTimeout = leaseTimeout;
+    }
+    
+    /**
+     * Set the maximum number of sessions open at once over each connection. This should not be more than the server
+     * allows, which is 10 by default for OpenSSH.
+     */
+    public synchronized void setMaxChannels(int maxChannels)
+    {
+        this.maxChannels = maxChannels;
+    }
+    
+    /**
+     * Set the maximum number of connections to each host, port and username.
+     */
+    public synchronized void setMaxConnections(int maxConnections)
+    {
+        this.maxConnections = maxConnections;
+    }
+    
+    /**
+     * Opens a {@code session} channel as {@code username} at {@code hostname} on {@code port}, over a pooled connection
+     * if one has room for it, and otherwise over a new connection. Closing the session gives it back to the pool.
+     * 
+     * @return the opened {@code session} channel
+     * @throws ConnectionException
+     *             if no session could be had within the lease timeout, or connecting failed
+     * @throws TransportException
+     *             if there is an error opening the channel
+     */
+    public Session startSession(String hostname, int port, String username) throws ConnectionException,
+            TransportException
+    {
+        final String key = username + "@" + hostname + ":" + port;
+        Pooled pooled = lease(key);
+        if (pooled == null)
+            pooled = connect(key, hostname, port, username);
+        final PooledSession sess = new PooledSession(pooled);
+        try
+        {
+            sess.open();
+        } catch (ConnectionException e)
+        {
+            giveBack(sess);
+            throw e;
+        } catch (TransportException e)
+        {
+            giveBack(sess);
+            throw e;
+        }
+        return sess;
+    }
+    
+    @Override
+    public synchronized String toString()
+    {
+        return "[connections=" + getConnectionCount() + ";leases=" + leases + ";hits=" + hits + ";waits=" + waits
+                + ";waitTime=" + getLeaseWaitTime() + "]";
+    }
+    
+    /*
+     * Take a lease on a pooled connection, waiting for one to have room if need be. Returns null if there is none but a
+     * new connection may be made, in which case it is accounted for as being made.
+     */
+    private synchronized Pooled lease(String key) throws ConnectionException
+    {
+        final long deadline = System.nanoTime() + leaseTimeout * 1000000000L;
+        long waitStart = 0;
+        final List<Pooled> dead = new ArrayList<Pooled>();
+        try
+        {
+            for (;;)
+            {
+                if (closed)
+                    throw new ConnectionException("Session pool is closed");
+                // Looked up afresh each time, since eviction may have dropped it while we waited
+                Entry entry = entries.get(key);
+                if (entry == null)
+                    entries.put(key, entry = new Entry());
+                for (Iterator<Pooled> it = entry.conns.iterator(); it.hasNext();)
+                {
+                    final Pooled pooled = it.next();
+                    if (!pooled.isAlive())
+                    {
+                        log.info("Dropping dead connection for {}", key);
+                        it.remove();
+                        dead.add(pooled);
+                    } else if (pooled.leased < maxChannels)
+                    {
+                        pooled.leased++;
+                        leases++;
+                        hits++;
+                        return pooled;
+                    }
+                }
+                if (entry.conns.size() + entry.connecting < maxConnections)
+                {
+                    entry.connecting++;
+                    return null;
+                }
+                if (waitStart == 0)
+                {
+                    waitStart = System.nanoTime();
+                    waits++;
+                }
+                final long remaining = deadline - System.nanoTime();
+                if (leaseTimeout != 0 && remaining <= 0)
+                    throw new ConnectionException("Timed out waiting for a session to " + key);
+                try
+                {
+                    if (leaseTimeout == 0)
+                        wait();
+                    else
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException ie)
+                {
+                    throw new ConnectionException(ie);
+                }
+            }
+        } finally
+        {
+            if (waitStart != 0)
+                waitNanos += System.nanoTime() - waitStart;
+            // Its transport may not have noticed yet, e.g. if only authentication was lost
+            if (!dead.isEmpty())
+                disconnectLater(dead);
+        }
+    }
+    
+    private Pooled connect(String key, String hostname, int port, String username) throws ConnectionException,
+            TransportException
+    {
+        SSHClient client = null;
+        Pooled pooled = null;
+        try
+        {
+            log.info("Connecting for {}", key);
+            client = connector.connect(hostname, port, username);
+            client.getTransport().setHeartbeatInterval(getHeartbeatInterval());
+        } catch (TransportException e)
+        {
+            throw e;
+        } catch (IOException e)
+        {
+            throw ConnectionException.chainer.chain(e);
+        } finally
+        {
+            synchronized (this)
+            {
+                final Entry entry = entries.get(key);
+                if (entry != null)
+                    entry.connecting--;
+                if (client != null && !closed)
+                {
+                    pooled = new Pooled(key, client);
+                    pooled.leased = 1;
+                    entry.conns.add(pooled);
+                    leases++;
+                    scheduleEviction();
+                }
+                notifyAll();
+            }
+        }
+        if (pooled == null)
+        {
+            disconnect(key, client);
+            throw new ConnectionException("Session pool is closed");
+        }
+        return pooled;
+    }
+    
+    private synchronized void giveBack(PooledSession sess)
+    {
+        if (sess.returned)
+            return;
+        sess.returned = true;
+        final Pooled pooled = sess.pooled;
+        if (--pooled.leased == 0)
+            pooled.idleSince = System.nanoTime();
+        notifyAll();
+    }
+    
+    /*
+     * Called with the lock held.
+     */
+    private void scheduleEviction()
+    {
+        if (eviction == null && !closed)
+            eviction = Scheduler.schedule(new Runnable()
+            {
+                public void run()
+                {
+                    evict();
+                }
+            }, Math.max(1, idleTimeout / 2), TimeUnit.SECONDS);
+    }
+    
+    /*
+     * Drop connections that have been idle too long or died, runs on the scheduler. Disconnecting waits on the server,
+     * so it is left to a worker thread.
+     */
+    private void evict()
+    {
+        final List<Pooled> victims = new ArrayList<Pooled>();
+        synchronized (this)
+        {
+            eviction = null;
+            final long now = System.nanoTime();
+            for (Iterator<Entry> entryIt = entries.values().iterator(); entryIt.hasNext();)
+            {
+                final Entry entry = entryIt.next();
+                for (Iterator<Pooled> it = entry.conns.iterator(); it.hasNext();)
+                {
+                    final Pooled pooled = it.next();
+                    if (!pooled.isAlive()
+                            || pooled.leased == 0 && now - pooled.idleSince >= idleTimeout * 1000000000L)
+                    {
+                        log.info("Evicting connection for {}", pooled.key);
+                        it.remove();
+                        victims.add(pooled);
+                    }
+                }
+                if (entry.conns.isEmpty() && entry.connecting == 0)
+                    entryIt.remove();
+            }
+            if (!entries.isEmpty())
+                scheduleEviction();
+        }
+        if (!victims.isEmpty())
+            disconnectLater(victims);
+    }
+    
+    /*
+     * Disconnect on a worker thread, as it waits on the server.
+     */
+    private void disconnectLater(final List<Pooled> conns)
+    {
+        Scheduler.execute(new Runnable()
+        {
+            public void run()
+            {
+                for (Pooled pooled : conns)
+                {
+                    log.info("Disconnecting {}", pooled.key);
+                    disconnect(pooled.key, pooled.client);
+                }
+            }
+        });
+    }
+    
+    private void disconnect(String key, SSHClient client)
+    {
+        if (client.isConnected())
+            try
+            {
+                client.disconnect();
+            } catch (IOException e)
+            {
+                log.warn("Error disconnecting {}: {}", key, e.toString());
+            }
+    }
+    
+}
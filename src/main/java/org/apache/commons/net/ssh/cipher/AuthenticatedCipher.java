@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.cipher;
+
+/**
+ * A cipher that authenticates the data it encrypts, so that no separate {@link org.apache.commons.net.ssh.mac.MAC MAC}
+ * is used. Such ciphers operate on whole packets rather than on a stream of blocks like a {@link BlockCipher}.
+ * <p>
+ * The packets passed to these methods start with the 4-byte packet length field, which is followed by
+ * {@code len - 4} bytes of padding length, payload and padding. The authentication tag takes up
+ * {@link #getAuthenticationTagSize()} bytes after that.
+ */
+public interface AuthenticatedCipher extends Cipher
+{
+    
+    /**
+     * Returns the size of the authentication tag that follows each packet.
+     */
+    int getAuthenticationTagSize();
+    
+    /**
+     * Returns the size that a packet, excluding the packet length field, is padded to a multiple of.
+     */
+    int getPaddingBlockSize();
+    
+    /**
+     * Returns the length of the packet with sequence number {@code seq} whose length field is at {@code off}. The
+     * buffer is not modified.
+     * 
+     * @param seq
+     *            sequence number of the packet
+     * @param buf
+     *            buffer holding the packet
+     * @param off
+     *            offset of the packet length field
+     */
+    int decryptLength(long seq, byte[] buf, int off);
+    
+    /**
+     * Encrypts the packet with sequence number {@code seq} in place, and writes the authentication tag after it.
+     * 
+     * @param seq
+     *            sequence number of the packet
+     * @param buf
+     *            buffer holding the packet
+     * @param off
+     *            offset of the packet length field
+     * @param len
+     *            length of the packet, including the length field
+     */
+    void encrypt(long seq, byte[] buf, int off, int len);
+    
+    /**
+     * Checks the authentication tag following the packet with sequence number {@code seq} and if it is valid, decrypts
+     * the packet in place. The packet length field is left as it is.
+     * 
+     * @param seq
+     *            sequence number of the packet
+     * @param buf
+     *            buffer holding the packet
+     * @param off
+     *            offset of the packet length field
+     * @param len
+     *            length of the packet, including the length field
+     * @return whether the authentication tag was valid
+     */
+    boolean decrypt(long seq, byte[] buf, int off, int len);
+    
+}
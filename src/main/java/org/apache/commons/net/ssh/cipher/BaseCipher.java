@@ -30,7 +30,7 @@ import org.apache.commons.net.ssh.util.SecurityUtils;
 /**
  * Base class for all Cipher implementations delegating to the JCE provider.
  */
-public class BaseCipher implements Cipher
+public class BaseCipher implements BlockCipher
 {
     
     private static final byte[] resize(byte[] data, int size)
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.cipher;
+
+/**
+ * A cipher that is applied to a stream of blocks, independently of packet boundaries. Packets are authenticated by a
+ * separate {@link org.apache.commons.net.ssh.mac.MAC MAC}.
+ */
+public interface BlockCipher extends Cipher
+{
+    
+    /**
+     * Performs in-place encryption or decryption on the given data.
+     * 
+     * @param input
+     * @param inputOffset
+     * @param inputLen
+     */
+    void update(byte[] input, int inputOffset, int inputLen);
+    
+}
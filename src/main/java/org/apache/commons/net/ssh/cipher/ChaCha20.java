@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.cipher;
+
+/**
+ * The ChaCha20 stream cipher, in its original form with a 64-bit nonce and a 64-bit block counter, as needed by
+ * {@link ChaCha20Poly1305}.
+ */
+final class ChaCha20
+{
+    
+    private static final int[] SIGMA = { 0x61707865, 0x3320646e, 0x79622d32, 0x6b206574 }; // "expand 32-byte k"
+    
+    private final int[] state = new int[16];
+    private final int[] x = new int[16];
+    private final byte[] keyStream = new byte[64];
+    
+    ChaCha20(byte[] key, int off)
+    {
+        System.arraycopy(SIGMA, 0, state, 0, 4);
+        for (int i = 0; i < 8; i++)
+            state[4 + i] = littleEndian(key, off + i * 4);
+    }
+    
+    /**
+     * XORs {@code len} bytes at {@code off} in {@code buf} with the key stream for the given nonce, starting at block
+     * {@code counter}.
+     */
+    void crypt(long nonce, long counter, byte[] buf, int off, int len)
+    {
+        state[14] = Integer.reverseBytes((int) (nonce >>> 32)); // The nonce is stored big-endian
+        state[15] = Integer.reverseBytes((int) nonce);
+        while (len > 0)
+        {
+            state[12] = (int) counter;
+            state[13] = (int) (counter >>> 32);
+            block();
+            final int n = Math.min(len, 64);
+            for (int i = 0; i < n; i++)
+                buf[off + i] ^= keyStream[i];
+            off += n;
+            len -= n;
+            counter++;
+        }
+    }
+    
+    private void block()
+    {
+        System.arraycopy(state, 0, x, 0, 16);
+        for (int i = 0; i < 10; i++)
+        {
+            quarterRound(0, 4, 8, 12);
+            quarterRound(1, 5, 9, 13);
+            quarterRound(2, 6, 10, 14);
+            quarterRound(3, 7, 11, 15);
+            quarterRound(0, 5, 10, 15);
+            quarterRound(1, 6, 11, 12);
+            quarterRound(2, 7, 8, 13);
+            quarterRound(3, 4, 9, 14);
+        }
+        for (int i = 0; i < 16; i++)
+        {
+            final int v = x[i] + state[i];
+            keyStream[i * 4] = (byte) v;
+            keyStream[i * 4 + 1] = (byte) (v >>> 8);
+            keyStream[i * 4 + 2] = (byte) (v >>> 16);
+            keyStream[i * 4 + 3] = (byte) (v >>> 24);
+        }
+    }
+    
+    private void quarterRound(int a, int b, int c, int d)
+    {
+        x[a] += x[b];
+        x[d] = Integer.rotateLeft(x[d] ^ x[a], 16);
+        x[c] += x[d];
+        x[b] = Integer.rotateLeft(x[b] ^ x[c], 12);
+        x[a] += x[b];
+        x[d] = Integer.rotateLeft(x[d] ^ x[a], 8);
+        x[c] += x[d];
+        x[b] = Integer.rotateLeft(x[b] ^ x[c], 7);
+    }
+    
+    static int littleEndian(byte[] b, int off)
+    {
+        return b[off] & 0xff | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+    }
+    
+}
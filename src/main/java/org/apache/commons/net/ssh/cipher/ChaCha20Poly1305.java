@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.cipher;
+
+/**
+ * {@code chacha20-poly1305@openssh.com} cipher, as described in OpenSSH's {@code PROTOCOL.chacha20poly1305}.
+ * <p>
+ * The 64-byte key is split into two ChaCha20 keys: the second half encrypts the packet length, and the first half
+ * encrypts the rest of the packet as well as providing the one-time Poly1305 key. The packet sequence number serves as
+ * the nonce, and the tag covers the packet as sent, including the encrypted length.
+ */
+public class ChaCha20Poly1305 implements AuthenticatedCipher
+{
+    
+    /**
+     * Named factory for ChaCha20Poly1305 Cipher
+     */
+    public static class Factory implements org.apache.commons.net.ssh.Factory.Named<Cipher>
+    {
+        public Cipher create()
+        {
+            return new ChaCha20Poly1305();
+        }
+        
+        public String getName()
+        {
+            return "chacha20-poly1305@openssh.com";
+        }
+    }
+    
+    private static final int TAG_SIZE = 16;
+    
+    private ChaCha20 main;
+    private ChaCha20 header;
+    
+    private final byte[] polyKey = new byte[32];
+    private final byte[] tag = new byte[TAG_SIZE];
+    private final byte[] lengthBuf = new byte[4];
+    
+    public int getBlockSize()
+    {
+        return 64;
+    }
+    
+    public int getIVSize()
+    {
+        return 0;
+    }
+    
+    public int getAuthenticationTagSize()
+    {
+        return TAG_SIZE;
+    }
+    
+    public int getPaddingBlockSize()
+    {
+        return 8;
+    }
+    
+    public void init(Mode mode, byte[] key, byte[] iv)
+    {
+        main = new ChaCha20(key, 0);
+        header = new ChaCha20(key, 32);
+    }
+    
+    public int decryptLength(long seq, byte[] buf, int off)
+    {
+        System.arraycopy(buf, off, lengthBuf, 0, 4);
+        header.crypt(seq, 0, lengthBuf, 0, 4);
+        return (lengthBuf[0] & 0xff) << 24 | (lengthBuf[1] & 0xff) << 16 | (lengthBuf[2] & 0xff) << 8 | lengthBuf[3]
+                & 0xff;
+    }
+    
+    public void encrypt(long seq, byte[] buf, int off, int len)
+    {
+        header.crypt(seq, 0, buf, off, 4);
+        main.crypt(seq, 1, buf, off + 4, len - 4);
+        Poly1305.mac(polyKey(seq), buf, off, len, buf, off + len);
+    }
+    
+    public boolean decrypt(long seq, byte[] buf, int off, int len)
+    {
+        Poly1305.mac(polyKey(seq), buf, off, len, tag, 0);
+        int diff = 0;
+        for (int i = 0; i < TAG_SIZE; i++)
+            diff |= tag[i] ^ buf[off + len + i];
+        if (diff != 0)
+            return false;
+        main.crypt(seq, 1, buf, off + 4, len - 4);
+        return true;
+    }
+    
+    private byte[] polyKey(long seq)
+    {
+        for (int i = 0; i < polyKey.length; i++)
+            polyKey[i] = 0;
+        main.crypt(seq, 0, polyKey, 0, polyKey.length);
+        return polyKey;
+    }
+    
+}
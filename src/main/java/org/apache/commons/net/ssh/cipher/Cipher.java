@@ -20,6 +20,9 @@ package org.apache.commons.net.ssh.cipher;
 
 /**
  * Wrapper for a cryptographic cipher, used either for encryption or decryption.
+ * <p>
+ * This covers what is needed to set up a negotiated cipher. How it is then applied to packets depends on its kind:
+ * either it is a {@link BlockCipher}, or an {@link AuthenticatedCipher}.
  */
 public interface Cipher
 {
@@ -52,13 +55,4 @@ public interface Cipher
      */
     void init(Mode mode, byte[] key, byte[] iv);
     
-    /**
-     * Performs in-place encryption or decryption on the given data.
-     * 
-     * @param input
-     * @param inputOffset
-     * @param inputLen
-     */
-    void update(byte[] input, int inputOffset, int inputLen);
-    
 }
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.cipher;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.net.ssh.SSHRuntimeException;
+import org.apache.commons.net.ssh.util.SecurityUtils;
+
+/**
+ * Base class for the AES-GCM ciphers of RFC 5647, as used by OpenSSH ({@code aes128-gcm@openssh.com} and
+ * {@code aes256-gcm@openssh.com}). The packet length is sent in the clear as additional authenticated data.
+ * <p>
+ * The 12-byte nonce consists of a fixed 4-byte field and an 8-byte invocation counter, which is incremented after each
+ * packet.
+ */
+public class GCMCipher implements AuthenticatedCipher
+{
+    
+    private static final int NONCE_SIZE = 12;
+    private static final int TAG_SIZE = 16;
+    
+    private final int bsize;
+    
+    private javax.crypto.Cipher cipher;
+    private int mode;
+    private SecretKeySpec key;
+    private final byte[] nonce = new byte[NONCE_SIZE];
+    
+    public GCMCipher(int bsize)
+    {
+        this.bsize = bsize;
+    }
+    
+    public int getBlockSize()
+    {
+        return bsize;
+    }
+    
+    public int getIVSize()
+    {
+        return NONCE_SIZE;
+    }
+    
+    public int getAuthenticationTagSize()
+    {
+        return TAG_SIZE;
+    }
+    
+    public int getPaddingBlockSize()
+    {
+        return 16;
+    }
+    
+    public void init(Mode mode, byte[] key, byte[] iv)
+    {
+        this.mode = mode == Mode.Encrypt ? javax.crypto.Cipher.ENCRYPT_MODE : javax.crypto.Cipher.DECRYPT_MODE;
+        this.key = new SecretKeySpec(key, 0, bsize, "AES");
+        System.arraycopy(iv, 0, nonce, 0, NONCE_SIZE);
+        try
+        {
+            cipher = SecurityUtils.getCipher("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e)
+        {
+            throw new SSHRuntimeException(e);
+        }
+        // Fail early if the provider cannot do it
+        reset();
+    }
+    
+    public int decryptLength(long seq, byte[] buf, int off)
+    {
+        return (buf[off] & 0xff) << 24 | (buf[off + 1] & 0xff) << 16 | (buf[off + 2] & 0xff) << 8 | buf[off + 3]
+                & 0xff;
+    }
+    
+    public void encrypt(long seq, byte[] buf, int off, int len)
+    {
+        try
+        {
+            cipher.updateAAD(buf, off, 4);
+            cipher.doFinal(buf, off + 4, len - 4, buf, off + 4);
+        } catch (GeneralSecurityException e)
+        {
+            throw new SSHRuntimeException(e);
+        }
+        next();
+    }
+    
+    public boolean decrypt(long seq, byte[] buf, int off, int len)
+    {
+        try
+        {
+            cipher.updateAAD(buf, off, 4);
+            cipher.doFinal(buf, off + 4, len - 4 + TAG_SIZE, buf, off + 4);
+            return true;
+        } catch (AEADBadTagException e)
+        {
+            return false;
+        } catch (GeneralSecurityException e)
+        {
+            throw new SSHRuntimeException(e);
+        } finally
+        {
+            next();
+        }
+    }
+    
+    /**
+     * Increment the invocation counter and re-initialize for the next packet.
+     */
+    private void next()
+    {
+        for (int i = NONCE_SIZE - 1; i >= 4; i--)
+            if (++nonce[i] != 0)
+                break;
+        reset();
+    }
+    
+    private void reset()
+    {
+        try
+        {
+            cipher.init(mode, key, new GCMParameterSpec(TAG_SIZE * 8, nonce));
+        } catch (GeneralSecurityException e)
+        {
+            throw new SSHRuntimeException(e);
+        }
+    }
+    
+}
@@ -21,7 +21,7 @@ package org.apache.commons.net.ssh.cipher;
 /**
  * Represents a no-op cipher.
  */
-public class NoneCipher implements Cipher
+public class NoneCipher implements BlockCipher
 {
     
     /**
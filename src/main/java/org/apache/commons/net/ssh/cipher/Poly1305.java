@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.cipher;
+
+/**
+ * The Poly1305 one-time authenticator, computing a 16-byte tag with a 32-byte key. Uses 26-bit limbs, after
+ * poly1305-donna.
+ */
+final class Poly1305
+{
+    
+    private static final long M26 = 0x3ffffff;
+    
+    /**
+     * Computes the tag for {@code len} bytes at {@code off} in {@code msg} using {@code key}, and writes it to
+     * {@code out} at {@code outOff}.
+     */
+    static void mac(byte[] key, byte[] msg, int off, int len, byte[] out, int outOff)
+    {
+        final long r0 = le(key, 0) & 0x3ffffff;
+        final long r1 = le(key, 3) >>> 2 & 0x3ffff03;
+        final long r2 = le(key, 6) >>> 4 & 0x3ffc0ff;
+        final long r3 = le(key, 9) >>> 6 & 0x3f03fff;
+        final long r4 = le(key, 12) >>> 8 & 0x00fffff;
+        final long s1 = r1 * 5, s2 = r2 * 5, s3 = r3 * 5, s4 = r4 * 5;
+        
+        long h0 = 0, h1 = 0, h2 = 0, h3 = 0, h4 = 0;
+        
+        final byte[] last = new byte[16];
+        while (len > 0)
+        {
+            final byte[] m;
+            final int mOff;
+            final long hibit;
+            if (len >= 16)
+            {
+                m = msg;
+                mOff = off;
+                hibit = 1 << 24;
+                off += 16;
+                len -= 16;
+            } else
+            {
+                // Final partial block is padded with a one byte followed by zeros
+                System.arraycopy(msg, off, last, 0, len);
+                last[len] = 1;
+                m = last;
+                mOff = 0;
+                hibit = 0;
+                len = 0;
+            }
+            
+            h0 += le(m, mOff) & M26;
+            h1 += le(m, mOff + 3) >>> 2 & M26;
+            h2 += le(m, mOff + 6) >>> 4 & M26;
+            h3 += le(m, mOff + 9) >>> 6 & M26;
+            h4 += le(m, mOff + 12) >>> 8 | hibit;
+            
+            final long d0 = h0 * r0 + h1 * s4 + h2 * s3 + h3 * s2 + h4 * s1;
+            long d1 = h0 * r1 + h1 * r0 + h2 * s4 + h3 * s3 + h4 * s2;
+            long d2 = h0 * r2 + h1 * r1 + h2 * r0 + h3 * s4 + h4 * s3;
+            long d3 = h0 * r3 + h1 * r2 + h2 * r1 + h3 * r0 + h4 * s4;
+            long d4 = h0 * r4 + h1 * r3 + h2 * r2 + h3 * r1 + h4 * r0;
+            
+            long c = d0 >>> 26;
+            h0 = d0 & M26;
+            d1 += c;
+            c = d1 >>> 26;
+            h1 = d1 & M26;
+            d2 += c;
+            c = d2 >>> 26;
+            h2 = d2 & M26;
+            d3 += c;
+            c = d3 >>> 26;
+            h3 = d3 & M26;
+            d4 += c;
+            c = d4 >>> 26;
+            h4 = d4 & M26;
+            h0 += c * 5;
+            c = h0 >>> 26;
+            h0 &= M26;
+            h1 += c;
+        }
+        
+        // Fully carry h
+        long c = h1 >>> 26;
+        h1 &= M26;
+        h2 += c;
+        c = h2 >>> 26;
+        h2 &= M26;
+        h3 += c;
+        c = h3 >>> 26;
+        h3 &= M26;
+        h4 += c;
+        c = h4 >>> 26;
+        h4 &= M26;
+        h0 += c * 5;
+        c = h0 >>> 26;
+        h0 &= M26;
+        h1 += c;
+        
+        // Compute h - p, and select it if h >= p
+        long g0 = h0 + 5;
+        c = g0 >>> 26;
+        g0 &= M26;
+        long g1 = h1 + c;
+        c = g1 >>> 26;
+        g1 &= M26;
+        long g2 = h2 + c;
+        c = g2 >>> 26;
+        g2 &= M26;
+        long g3 = h3 + c;
+        c = g3 >>> 26;
+        g3 &= M26;
+        final long g4 = h4 + c - (1 << 26);
+        
+        if (g4 >= 0)
+        {
+            h0 = g0;
+            h1 = g1;
+            h2 = g2;
+            h3 = g3;
+            h4 = g4;
+        }
+        
+        // h = (h + s) % 2^128
+        long f = (h0 | h1 << 26) & 0xffffffffL;
+        f += le(key, 16);
+        putLE(f, out, outOff);
+        f = (f >>> 32) + ((h1 >>> 6 | h2 << 20) & 0xffffffffL) + le(key, 20);
+        putLE(f, out, outOff + 4);
+        f = (f >>> 32) + ((h2 >>> 12 | h3 << 14) & 0xffffffffL) + le(key, 24);
+        putLE(f, out, outOff + 8);
+        f = (f >>> 32) + ((h3 >>> 18 | h4 << 8) & 0xffffffffL) + le(key, 28);
+        putLE(f, out, outOff + 12);
+    }
+    
+    private static long le(byte[] b, int off)
+    {
+        return ChaCha20.littleEndian(b, off) & 0xffffffffL;
+    }
+    
+    private static void putLE(long v, byte[] b, int off)
+    {
+        b[off] = (byte) v;
+        b[off + 1] = (byte) (v >>> 8);
+        b[off + 2] = (byte) (v >>> 16);
+        b[off + 3] = (byte) (v >>> 24);
+    }
+    
+}
@@ -29,6 +29,7 @@ import org.apache.commons.net.ssh.SSHException;
 import org.apache.commons.net.ssh.SSHPacket;
 import org.apache.commons.net.ssh.transport.Transport;
 import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.BufferPool;
 import org.apache.commons.net.ssh.util.BufferUtils;
 import org.apache.commons.net.ssh.util.Event;
 import org.apache.commons.net.ssh.util.IOUtils;
@@ -59,12 +60,22 @@ public abstract class AbstractChannel implements Channel
     
     private volatile boolean autoExpand = false;
     
+    private volatile Priority priority = Priority.NORMAL;
+    
+    /** Told whenever a message or an error comes in for this channel, if set */
+    private volatile Runnable watcher;
+    
+    /** Receives data in place of the streams, if set */
+    private volatile DataListener dataListener;
+    
     /** stdout stream */
-    private final ChannelInputStream in = new ChannelInputStream(this, lwin);
+    private final ChannelInputStream in;
     /** stdin stream */
-    private final ChannelOutputStream out = new ChannelOutputStream(this, rwin);
+    private final ChannelOutputStream out;
     
     private final Queue<Event<ConnectionException>> chanReqResponseEvents = new LinkedList<Event<ConnectionException>>();
+    /** Keeps channel requests in the order their response events are queued in */
+    private final Object requestLock = new Object();
     
     private final ReentrantLock lock = new ReentrantLock();
     /** Channel open event */
@@ -79,6 +90,7 @@ public abstract class AbstractChannel implements Channel
     /** Remote recipient ID */
     private int recipient;
     
+    private boolean eofSending;
     private boolean eofSent;
     private boolean eofGot;
     private boolean closeReqd;
@@ -93,12 +105,19 @@ public abstract class AbstractChannel implements Channel
         
         log = LoggerFactory.getLogger("chan#" + id);
         
-        lwin.init(conn.getWindowSize(), conn.getMaxPacketSize());
+        lwin.init(conn.getWindowSize(), conn.getMaxWindowSize(), conn.getMaxPacketSize());
+        in = new ChannelInputStream(this, lwin);
+        out = new ChannelOutputStream(this, rwin, conn.getOutboundScheduler());
         
         open = newEvent("open");
         close = newEvent("close");
     }
     
+    public void consumed(int len) throws TransportException
+    {
+        lwin.release(len);
+    }
+    
     public boolean getAutoExpand()
     {
         return autoExpand;
@@ -109,6 +128,11 @@ public abstract class AbstractChannel implements Channel
         return id;
     }
     
+    public Priority getPriority()
+    {
+        return priority;
+    }
+    
     public InputStream getInputStream()
     {
         return in;
@@ -124,6 +148,11 @@ public abstract class AbstractChannel implements Channel
         return lwin.getSize();
     }
     
+    public LocalWindow getLocalWindow()
+    {
+        return lwin;
+    }
+    
     public OutputStream getOutputStream()
     {
         return out;
@@ -156,44 +185,52 @@ public abstract class AbstractChannel implements Channel
     
     public void handle(Message msg, SSHPacket buf) throws ConnectionException, TransportException
     {
-        switch (msg)
+        try
         {
-        
-        case CHANNEL_DATA:
-            receiveInto(buf, in);
-            break;
-        
-        case CHANNEL_EXTENDED_DATA:
-            gotExtendedData(buf.readInt(), buf);
-            break;
-        
-        case CHANNEL_WINDOW_ADJUST:
-            gotWindowAdjustment(buf.readInt());
-            break;
-        
-        case CHANNEL_REQUEST:
-            gotChannelRequest(buf);
-            break;
-        
-        case CHANNEL_SUCCESS:
-            gotResponse(true);
-            break;
-        
-        case CHANNEL_FAILURE:
-            gotResponse(false);
-            break;
-        
-        case CHANNEL_EOF:
-            gotEOF();
-            break;
-        
-        case CHANNEL_CLOSE:
-            gotClose();
-            break;
-        
-        default:
-            gotUnknown(msg, buf);
+            switch (msg)
+            {
             
+            case CHANNEL_DATA:
+                if (!deliver(msg, buf))
+                    receiveInto(buf, in);
+                break;
+                
+            case CHANNEL_EXTENDED_DATA:
+                if (!deliver(msg, buf))
+                    gotExtendedData(buf.readInt(), buf);
+                break;
+                
+            case CHANNEL_WINDOW_ADJUST:
+                gotWindowAdjustment(buf.readInt());
+                break;
+                
+            case CHANNEL_REQUEST:
+                gotChannelRequest(buf);
+                break;
+                
+            case CHANNEL_SUCCESS:
+                gotResponse(true);
+                break;
+                
+            case CHANNEL_FAILURE:
+                gotResponse(false);
+                break;
+                
+            case CHANNEL_EOF:
+                gotEOF();
+                break;
+                
+            case CHANNEL_CLOSE:
+                gotClose();
+                break;
+                
+            default:
+                gotUnknown(msg, buf);
+                
+            }
+        } finally
+        {
+            notifyWatcher();
         }
     }
     
@@ -224,6 +261,7 @@ public abstract class AbstractChannel implements Channel
         ErrorNotifiable.Util.alertAll(error, chanReqResponseEvents.toArray(new ErrorNotifiable[chanReqResponseEvents
                 .size()]));
         finishOff();
+        notifyWatcher();
     }
     
     public void setAutoExpand(boolean autoExpand)
@@ -231,6 +269,16 @@ public abstract class AbstractChannel implements Channel
         this.autoExpand = autoExpand;
     }
     
+    public void setDataListener(DataListener listener)
+    {
+        this.dataListener = listener;
+    }
+    
+    public void setPriority(Priority priority)
+    {
+        this.priority = priority;
+    }
+    
     @Override
     public String toString()
     {
@@ -238,6 +286,44 @@ public abstract class AbstractChannel implements Channel
                 + rwin + " >";
     }
     
+    /**
+     * Set something to be run on the thread that handles incoming packets whenever a message or an error comes in for
+     * this channel, for driving I/O on it without blocking.
+     */
+    void setWatcher(Runnable watcher)
+    {
+        this.watcher = watcher;
+    }
+    
+    private void notifyWatcher()
+    {
+        final Runnable w = watcher;
+        if (w != null)
+            w.run();
+    }
+    
+    /*
+     * Hand data to the data listener, if there is one. Returns whether there was.
+     */
+    private boolean deliver(Message msg, SSHPacket buf) throws ConnectionException, TransportException
+    {
+        final DataListener listener = dataListener;
+        if (listener == null)
+            return false;
+        final int dataTypeCode = msg == Message.CHANNEL_EXTENDED_DATA ? buf.readInt() : 0;
+        final int len = buf.readInt();
+        if (len < 0 || len > getLocalMaxPacketSize() || len != buf.available())
+            throw new ConnectionException(DisconnectReason.PROTOCOL_ERROR, "Bad item length: " + len);
+        lwin.consume(len);
+        if (autoExpand)
+            lwin.check();
+        if (msg == Message.CHANNEL_EXTENDED_DATA)
+            listener.gotExtendedData(this, dataTypeCode, buf.array(), buf.rpos(), len);
+        else
+            listener.gotData(this, buf.array(), buf.rpos(), len);
+        return true;
+    }
+    
     private void gotChannelRequest(SSHPacket buf) throws ConnectionException, TransportException
     {
         String reqType = buf.readString();
@@ -279,12 +365,23 @@ public abstract class AbstractChannel implements Channel
     
     protected void handleRequest(String reqType, SSHPacket buf) throws ConnectionException, TransportException
     {
-        trans.write(newBuffer(Message.CHANNEL_FAILURE));
+        final SSHPacket packet = newBuffer(Message.CHANNEL_FAILURE);
+        try
+        {
+            trans.write(packet);
+        } finally
+        {
+            packet.release();
+        }
     }
     
+    /**
+     * Returns a packet for {@code cmd} addressed to the recipient channel. Its storage is pooled, so it should be
+     * {@link SSHPacket#release() released} once written.
+     */
     protected SSHPacket newBuffer(Message cmd)
     {
-        return new SSHPacket(cmd).putInt(recipient);
+        return new SSHPacket(cmd, BufferPool.getDefault()).putInt(recipient);
     }
     
     protected void receiveInto(SSHPacket buf, ChannelInputStream stream) throws ConnectionException, TransportException
@@ -297,21 +394,39 @@ public abstract class AbstractChannel implements Channel
         stream.receive(buf.array(), buf.rpos(), len);
     }
     
-    protected synchronized Event<ConnectionException> sendChannelRequest(String reqType, boolean wantReply,
+    /*
+     * The write may wait, e.g. for key exchange to complete, so it is not made holding this channel's monitor, which
+     * the thread handling incoming packets takes. The response event is queued first, as the response may come in as
+     * soon as the request has been written.
+     */
+    protected Event<ConnectionException> sendChannelRequest(String reqType, boolean wantReply,
             PlainBuffer reqSpecific) throws TransportException
     {
         log.info("Sending channel request for `{}`", reqType);
-        trans.write(newBuffer(Message.CHANNEL_REQUEST).putString(reqType) //
-                .putBoolean(wantReply) //
-                .putBuffer(reqSpecific));
-        
-        Event<ConnectionException> responseEvent = null;
-        if (wantReply)
+        final SSHPacket packet = newBuffer(Message.CHANNEL_REQUEST);
+        try
+        {
+            packet.putString(reqType) //
+                    .putBoolean(wantReply) //
+                    .putBuffer(reqSpecific);
+            Event<ConnectionException> responseEvent = null;
+            synchronized (requestLock)
+            {
+                if (wantReply)
+                {
+                    responseEvent = newEvent("chanreq for " + reqType);
+                    synchronized (this)
+                    {
+                        chanReqResponseEvents.add(responseEvent);
+                    }
+                }
+                trans.write(packet);
+            }
+            return responseEvent;
+        } finally
         {
-            responseEvent = newEvent("chanreq for " + reqType);
-            chanReqResponseEvents.add(responseEvent);
+            packet.release();
         }
-        return responseEvent;
     }
     
     private synchronized void gotResponse(boolean success) throws ConnectionException
@@ -328,51 +443,71 @@ public abstract class AbstractChannel implements Channel
                     "Received response to channel request when none was requested");
     }
     
-    private synchronized void gotEOF() throws TransportException
+    private void gotEOF() throws TransportException
     {
         log.info("Got EOF");
-        eofGot = true;
+        final boolean close;
+        synchronized (this)
+        {
+            eofGot = true;
+            // If our EOF is still being written, the close is left to the thread writing it
+            close = eofSent;
+        }
         eofInputStreams();
-        if (eofSent)
+        final DataListener listener = dataListener;
+        if (listener != null)
+            listener.gotEOF(this);
+        if (close)
             sendClose();
     }
     
-    public synchronized void sendEOF() throws TransportException
+    public void sendEOF() throws TransportException
     {
+        final boolean send;
+        synchronized (this)
+        {
+            send = !closeReqd && !eofSent && !eofSending;
+            eofSending |= send;
+        }
         try
         {
-            if (!closeReqd && !eofSent)
+            if (send)
             {
                 log.info("Sending EOF");
-                trans.write(newBuffer(Message.CHANNEL_EOF));
-                if (eofGot)
+                final SSHPacket packet = newBuffer(Message.CHANNEL_EOF);
+                try
+                {
+                    trans.write(packet);
+                } finally
+                {
+                    packet.release();
+                }
+                final boolean close;
+                synchronized (this)
+                {
+                    eofSent = true;
+                    close = eofGot;
+                }
+                if (close)
                     sendClose();
             }
         } finally
         {
-            eofSent = true;
             out.setClosed();
         }
     }
     
     public void close() throws ConnectionException, TransportException
     {
-        lock.lock();
         try
         {
-            try
-            {
-                sendClose();
-            } catch (TransportException e)
-            {
-                if (!close.hasError())
-                    throw e;
-            }
-            close.await(conn.getTimeout());
-        } finally
+            sendClose();
+        } catch (TransportException e)
         {
-            lock.unlock();
+            if (!close.hasError())
+                throw e;
         }
+        close.await(conn.getTimeout());
     }
     
     private void gotClose() throws TransportException
@@ -388,18 +523,22 @@ public abstract class AbstractChannel implements Channel
         }
     }
     
-    protected synchronized void sendClose() throws TransportException
+    protected void sendClose() throws TransportException
     {
+        synchronized (this)
+        {
+            if (closeReqd)
+                return;
+            closeReqd = true;
+        }
+        log.info("Sending close");
+        final SSHPacket packet = newBuffer(Message.CHANNEL_CLOSE);
         try
         {
-            if (!closeReqd)
-            {
-                log.info("Sending close");
-                trans.write(newBuffer(Message.CHANNEL_CLOSE));
-            }
+            trans.write(packet);
         } finally
         {
-            closeReqd = true;
+            packet.release();
         }
     }
     
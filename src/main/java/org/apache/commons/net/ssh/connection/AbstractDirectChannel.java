@@ -20,6 +20,7 @@ package org.apache.commons.net.ssh.connection;
 
 import org.apache.commons.net.ssh.SSHPacket;
 import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Event;
 import org.apache.commons.net.ssh.util.Constants.Message;
 
 /**
@@ -40,8 +41,24 @@ public abstract class AbstractDirectChannel extends AbstractChannel implements C
     
     public void open() throws ConnectionException, TransportException
     {
+        requestOpen();
+        open.await();
+    }
+    
+    public Event<ConnectionException> openAsync() throws TransportException
+    {
+        requestOpen();
+        return open;
+    }
+    
+    /**
+     * Send the request to open this channel without waiting for the outcome, which is signalled via the {@link #open}
+     * event.
+     */
+    protected void requestOpen() throws TransportException
+    {
+        open.expireAfter(conn.getTimeout());
         trans.write(buildOpenReq());
-        open.await(conn.getTimeout());
     }
     
     private void gotOpenConfirmation(SSHPacket buf)
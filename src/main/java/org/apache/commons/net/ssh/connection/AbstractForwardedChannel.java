@@ -18,6 +18,7 @@
  */
 package org.apache.commons.net.ssh.connection;
 
+import org.apache.commons.net.ssh.SSHPacket;
 import org.apache.commons.net.ssh.connection.OpenFailException.Reason;
 import org.apache.commons.net.ssh.transport.TransportException;
 import org.apache.commons.net.ssh.util.Constants.Message;
@@ -50,10 +51,16 @@ public abstract class AbstractForwardedChannel extends AbstractChannel implement
          * Must ensure channel is attached before confirming, data could start coming in immediately!
          */
         conn.attach(this);
-        trans.write(newBuffer(Message.CHANNEL_OPEN_CONFIRMATION) //
-                .putInt(getID()) //
-                .putInt(getLocalWinSize()) //
-                .putInt(getLocalMaxPacketSize()));
+        final SSHPacket packet = newBuffer(Message.CHANNEL_OPEN_CONFIRMATION);
+        try
+        {
+            trans.write(packet.putInt(getID()) //
+                    .putInt(getLocalWinSize()) //
+                    .putInt(getLocalMaxPacketSize()));
+        } finally
+        {
+            packet.release();
+        }
         open.set();
     }
     
@@ -30,38 +30,46 @@ public abstract class AbstractForwardedChannelOpener implements ForwardedChannel
     }
     
     /*
-     * Calls the listener with the new channel in a separate thread.
+     * Calls the listener with the new channel in a separate thread, or right away if it is asynchronous.
      */
     protected void callListener(final ConnectListener listener, final Channel.Forwarded chan)
     {
-        new Thread()
-        {
+        if (listener instanceof ConnectListener.Async)
+            notifyListener(listener, chan);
+        else
+            new Thread()
             {
-                setName("ConnectListener");
-            }
+                {
+                    setName("ConnectListener");
+                }
             
-            @Override
-            public void run()
-            {
+                @Override
+                public void run()
+                {
+                    notifyListener(listener, chan);
+                }
+            }.start();
+    }
+    
+    private void notifyListener(ConnectListener listener, Channel.Forwarded chan)
+    {
+        try
+        {
+            listener.gotConnect(chan);
+        } catch (IOException logged)
+        {
+            log.warn("In callback to {}: {}", listener, logged);
+            if (chan.isOpen())
+                IOUtils.closeQuietly(chan);
+            else
                 try
                 {
-                    listener.gotConnect(chan);
-                } catch (IOException logged)
+                    chan.reject(OpenFailException.Reason.CONNECT_FAILED, "");
+                } catch (TransportException cantdonthn)
                 {
-                    log.warn("In callback to {}: {}", listener, logged);
-                    if (chan.isOpen())
-                        IOUtils.closeQuietly(chan);
-                    else
-                        try
-                        {
-                            chan.reject(OpenFailException.Reason.CONNECT_FAILED, "");
-                        } catch (TransportException cantdonthn)
-                        {
-                            log.warn("Error rejecting {}: {}", chan, cantdonthn);
-                        }
+                    log.warn("Error rejecting {}: {}", chan, cantdonthn);
                 }
-            }
-        }.start();
+        }
     }
     
 }
\ No newline at end of file
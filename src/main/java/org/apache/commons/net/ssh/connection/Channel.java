@@ -26,6 +26,7 @@ import org.apache.commons.net.ssh.ErrorNotifiable;
 import org.apache.commons.net.ssh.PacketHandler;
 import org.apache.commons.net.ssh.transport.Transport;
 import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Event;
 
 /**
  * A channel is the basic medium for application-layer data on top of an SSH transport.
@@ -50,6 +51,46 @@ public interface Channel extends Closeable, PacketHandler, ErrorNotifiable
          */
         void open() throws OpenFailException, ConnectionException, TransportException;
         
+        /**
+         * Request opening this channel from remote end, without waiting for the outcome.
+         * 
+         * @return the event that is set once the channel is open, or errors out if the request is rejected or times
+         *         out; {@link Event#addListener listeners} may be added to it
+         * @throws TransportException
+         *             error writing packets etc.
+         */
+        Event<ConnectionException> openAsync() throws TransportException;
+        
+    }
+    
+    /**
+     * Receives a channel's data as it comes in, as an alternative to reading it from the channel's streams.
+     * <p>
+     * A listener is called on the thread that handles incoming packets, and so must not block. The data is only valid
+     * for the duration of the call. It takes up room in the local window until the listener declares it
+     * {@link Channel#consumed(int) consumed}, so that the remote end sends no more than the listener is ready to take.
+     * 
+     * @see Channel#setDataListener(DataListener)
+     */
+    interface DataListener
+    {
+        
+        /**
+         * Called with data received on {@code chan}.
+         */
+        void gotData(Channel chan, byte[] buf, int off, int len);
+        
+        /**
+         * Called with extended data of type {@code dataTypeCode}, e.g. {@code 1} for {@code stderr}, received on
+         * {@code chan}.
+         */
+        void gotExtendedData(Channel chan, int dataTypeCode, byte[] buf, int off, int len);
+        
+        /**
+         * Called when the remote end indicates it will send no more data on {@code chan}.
+         */
+        void gotEOF(Channel chan);
+        
     }
     
     /**
@@ -90,11 +131,38 @@ public interface Channel extends Closeable, PacketHandler, ErrorNotifiable
         
     }
     
+    /**
+     * Priority classes for outbound data. Data of a channel with higher priority is always sent ahead of data of
+     * channels with lower priority that is waiting to be sent.
+     * 
+     * @see OutboundScheduler
+     */
+    enum Priority
+    {
+        /** Latency-sensitive traffic, e.g. an interactive shell */
+        INTERACTIVE,
+        /** The default */
+        NORMAL,
+        /** Throughput-oriented traffic, e.g. file transfers */
+        BULK
+    }
+    
     /**
      * Close this channel.
      */
     void close() throws TransportException, ConnectionException;
     
+    /**
+     * Declare that {@code len} bytes delivered to the {@link DataListener data listener} have been dealt with, which
+     * lets the remote end send that much more.
+     * 
+     * @param len
+     *            number of bytes
+     * @throws TransportException
+     *             if there is an error sending a window adjustment
+     */
+    void consumed(int len) throws TransportException;
+    
     /**
      * Returns whether auto-expansion of local window is set.
      * 
@@ -102,6 +170,13 @@ public interface Channel extends Closeable, PacketHandler, ErrorNotifiable
      */
     boolean getAutoExpand();
     
+    /**
+     * Returns the priority with which this channel's data is sent.
+     * 
+     * @see #setPriority(Priority)
+     */
+    Priority getPriority();
+    
     /**
      * Returns the channel ID
      */
@@ -122,6 +197,11 @@ public interface Channel extends Closeable, PacketHandler, ErrorNotifiable
      */
     int getLocalWinSize();
     
+    /**
+     * Returns the local window, e.g. for its statistics.
+     */
+    LocalWindow getLocalWindow();
+    
     /**
      * Returns an {@code OutputStream} for this channel.
      */
@@ -172,4 +252,23 @@ public interface Channel extends Closeable, PacketHandler, ErrorNotifiable
      */
     void setAutoExpand(boolean autoExpand);
     
+    /**
+     * Set a listener to receive this channel's data as it comes in, instead of it being buffered for the channel's
+     * streams; or {@code null} to go back to the streams. This should be done before any data may arrive, e.g. before
+     * the channel is opened or a command started on it.
+     * 
+     * @param listener
+     *            the listener
+     */
+    void setDataListener(DataListener listener);
+    
+    /**
+     * Set the priority with which this channel's data is sent, relative to other channels of the same connection.
+     * Channels have {@link Priority#NORMAL normal} priority unless set otherwise.
+     * 
+     * @param priority
+     *            the priority
+     */
+    void setPriority(Priority priority);
+    
 }
@@ -3,41 +3,58 @@ package org.apache.commons.net.ssh.connection;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.commons.net.ssh.ErrorNotifiable;
 import org.apache.commons.net.ssh.SSHException;
 import org.apache.commons.net.ssh.transport.TransportException;
-import org.apache.commons.net.ssh.util.Buffer.PlainBuffer;
 
 /**
  * {@link InputStream} for channels. Can {@link #receive(byte[], int, int) receive} data into its buffer for serving to
  * readers.
+ * <p>
+ * The buffer is a ring that is allocated on the first data received and grows as needed, which is up to the size of the
+ * local window unless the channel {@link Channel#setAutoExpand auto-expands} it. Data is handed off from the thread
+ * receiving it to the thread reading it without locking; readers only park when there is nothing to read.
  */
 public class ChannelInputStream extends InputStream implements ErrorNotifiable
 {
     
+    private static final int MIN_SIZE = 8192;
+    
     private final Channel chan;
     private final LocalWindow win;
-    private final PlainBuffer buf;
+    
+    /** Replaced by a bigger copy when data does not fit, before {@link #head} is advanced past what the old one holds */
+    private volatile byte[] ring = new byte[0];
     private final byte[] b = new byte[1];
-    private boolean eof;
-    private SSHException error;
+    
+    /** Total number of bytes ever put into the ring, only advanced by the receiving thread */
+    private volatile long head;
+    /** Total number of bytes ever taken from the ring, only advanced by a reader holding {@link #readLock} */
+    private volatile long tail;
+    
+    /** A reader that is parked waiting for data */
+    private volatile Thread waiter;
+    
+    private final Object readLock = new Object();
+    
+    private volatile boolean eof;
+    private volatile SSHException error;
     
     public ChannelInputStream(Channel chan, LocalWindow win)
     {
         this.chan = chan;
         this.win = win;
-        
-        buf = new PlainBuffer(chan.getLocalMaxPacketSize());
     }
     
     @Override
     public int available()
     {
-        synchronized (buf)
-        {
-            return buf.available();
-        }
+        return (int) (head - tail);
     }
     
     @Override
@@ -48,17 +65,14 @@ public class ChannelInputStream extends InputStream implements ErrorNotifiable
     
     public void eof()
     {
-        synchronized (buf)
+        if (!eof)
         {
-            if (!eof)
-            {
-                eof = true;
-                buf.notifyAll();
-            }
+            eof = true;
+            wake();
         }
     }
     
-    public synchronized void notifyError(SSHException error)
+    public void notifyError(SSHException error)
     {
         this.error = error;
         eof();
@@ -69,64 +83,240 @@ public class ChannelInputStream extends InputStream implements ErrorNotifiable
     {
         synchronized (b)
         {
-            return read(b, 0, 1) == -1 ? -1 : b[0];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
         }
     }
     
     @Override
     public int read(byte[] b, int off, int len) throws IOException
     {
-        synchronized (buf)
+        synchronized (readLock)
+        {
+            final int avail = await();
+            if (avail == -1)
+                return -1;
+            if (len > avail)
+                len = avail;
+            final byte[] ring = this.ring;
+            final int pos = (int) (tail % ring.length);
+            final int first = Math.min(len, ring.length - pos);
+            System.arraycopy(ring, pos, b, off, first);
+            System.arraycopy(ring, 0, b, off + first, len - first);
+            tail += len;
+        }
+        consumed(len);
+        return len;
+    }
+    
+    /**
+     * Read data into {@code dst}, blocking until some is available.
+     * 
+     * @param dst
+     *            the buffer to read into
+     * @return the number of bytes read, or {@code -1} on EOF
+     * @throws IOException
+     *             if the channel was closed with an error, or the wait was interrupted
+     */
+    public int read(ByteBuffer dst) throws IOException
+    {
+        int len = dst.remaining();
+        synchronized (readLock)
+        {
+            final int avail = await();
+            if (avail == -1)
+                return -1;
+            if (len > avail)
+                len = avail;
+            final byte[] ring = this.ring;
+            final int pos = (int) (tail % ring.length);
+            final int first = Math.min(len, ring.length - pos);
+            dst.put(ring, pos, first);
+            dst.put(ring, 0, len - first);
+            tail += len;
+        }
+        consumed(len);
+        return len;
+    }
+    
+    /**
+     * Write all data that is received until EOF to {@code out}, straight from this stream's buffer.
+     * 
+     * @param out
+     *            the stream to write to
+     * @return the number of bytes transferred
+     * @throws IOException
+     *             if the channel was closed with an error, the wait was interrupted, or writing to {@code out} failed
+     */
+    public long transferTo(OutputStream out) throws IOException
+    {
+        return transferTo(out, false);
+    }
+    
+    /**
+     * Write all data that is received until EOF to {@code out}, straight from this stream's buffer.
+     * 
+     * @param out
+     *            the stream to write to
+     * @param flush
+     *            whether to flush {@code out} after each write, e.g. for interactive use
+     * @return the number of bytes transferred
+     * @throws IOException
+     *             if the channel was closed with an error, the wait was interrupted, or writing to {@code out} failed
+     */
+    public long transferTo(OutputStream out, boolean flush) throws IOException
+    {
+        long count = 0;
+        synchronized (readLock)
+        {
+            int avail;
+            while ((avail = await()) != -1)
+            {
+                final byte[] ring = this.ring;
+                final int pos = (int) (tail % ring.length);
+                final int len = Math.min(avail, ring.length - pos);
+                out.write(ring, pos, len);
+                tail += len;
+                count += len;
+                consumed(len);
+                if (flush)
+                    out.flush();
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Write as much of the data that is available as {@code dst} accepts, straight from this stream's buffer, without
+     * waiting for more to arrive.
+     * 
+     * @param dst
+     *            the channel to write to, typically non-blocking
+     * @return the number of bytes transferred, possibly 0, or {@code -1} on EOF
+     * @throws IOException
+     *             if the channel was closed with an error, or writing to {@code dst} failed
+     */
+    public int transferTo(WritableByteChannel dst) throws IOException
+    {
+        int count = 0;
+        synchronized (readLock)
         {
             for (;;)
             {
-                if (buf.available() > 0)
-                    break;
-                if (eof)
+                // Look at EOF first, so that no data is missed that arrived just before it
+                final boolean eof = this.eof;
+                final int avail = (int) (head - tail);
+                if (avail == 0)
+                {
+                    if (count > 0 || !eof)
+                        break;
                     if (error != null)
                         throw error;
-                    else
-                        return -1;
-                try
-                {
-                    buf.wait();
-                } catch (InterruptedException e)
-                {
-                    throw (IOException) new InterruptedIOException().initCause(e);
+                    return -1;
                 }
+                final byte[] ring = this.ring;
+                final int pos = (int) (tail % ring.length);
+                final int len = Math.min(avail, ring.length - pos);
+                final int n = dst.write(ByteBuffer.wrap(ring, pos, len));
+                tail += n;
+                count += n;
+                if (n < len)
+                    break;
             }
-            if (len > buf.available())
-                len = buf.available();
-            buf.readRawBytes(b, off, len);
-            if (buf.rpos() > win.getMaxPacketSize() && buf.available() == 0)
-                buf.clear();
         }
-        if (!chan.getAutoExpand())
-            win.check();
-        return len;
+        if (count > 0)
+            consumed(count);
+        return count;
     }
     
     public void receive(byte[] data, int offset, int len) throws ConnectionException, TransportException
     {
-        synchronized (buf)
+        if (eof)
+            throw new ConnectionException("Getting data on EOF'ed stream");
+        
+        byte[] ring = this.ring;
+        if (ring.length - (head - tail) < len)
+            ring = grow(len);
+        final int pos = (int) (head % ring.length);
+        final int first = Math.min(len, ring.length - pos);
+        System.arraycopy(data, offset, ring, pos, first);
+        System.arraycopy(data, offset + first, ring, 0, len - first);
+        head += len;
+        wake();
+        
+        win.consume(len);
+        if (chan.getAutoExpand())
+            win.check();
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "< ChannelInputStream for Channel #" + chan.getID() + " >";
+    }
+    
+    /*
+     * Replace the ring with one that has room for len more bytes. Called by the receiving thread. Readers may go on
+     * using the old ring for data up to the current head, which is left as it is.
+     */
+    private byte[] grow(int len)
+    {
+        final byte[] old = ring;
+        final long used = head - tail;
+        int size = Math.max(old.length * 2, MIN_SIZE);
+        while (size - used < len)
+            size *= 2;
+        final byte[] bigger = new byte[size];
+        long from = head - used;
+        while (from < head)
         {
-            if (eof)
-                throw new ConnectionException("Getting data on EOF'ed stream");
-            buf.putRawBytes(data, offset, len);
-            buf.notifyAll();
+            final int src = (int) (from % old.length);
+            final int dst = (int) (from % size);
+            final int n = (int) Math.min(head - from, Math.min(old.length - src, size - dst));
+            System.arraycopy(old, src, bigger, dst, n);
+            from += n;
         }
-        synchronized (win)
+        ring = bigger;
+        return bigger;
+    }
+    
+    /*
+     * Wait for data and return how much is available, or -1 on EOF. Called with readLock held.
+     */
+    private int await() throws IOException
+    {
+        for (;;)
         {
-            win.consume(len);
-            if (chan.getAutoExpand())
-                win.check();
+            final long avail = head - tail;
+            if (avail > 0)
+                return (int) avail;
+            if (eof)
+            {
+                // Data may have arrived just before EOF
+                if (head != tail)
+                    continue;
+                if (error != null)
+                    throw error;
+                return -1;
+            }
+            waiter = Thread.currentThread();
+            if (head == tail && !eof)
+                LockSupport.park(this);
+            waiter = null;
+            if (Thread.interrupted())
+                throw new InterruptedIOException();
         }
     }
     
-    @Override
-    public String toString()
+    private void wake()
     {
-        return "< ChannelInputStream for Channel #" + chan.getID() + " >";
+        final Thread w = waiter;
+        if (w != null)
+            LockSupport.unpark(w);
+    }
+    
+    private void consumed(int len) throws TransportException
+    {
+        win.release(len);
     }
     
-}
\ No newline at end of file
+}
@@ -19,32 +19,62 @@
 package org.apache.commons.net.ssh.connection;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
 
 import org.apache.commons.net.ssh.ErrorNotifiable;
 import org.apache.commons.net.ssh.SSHException;
 import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.util.Buffer;
+import org.apache.commons.net.ssh.util.BufferPool;
 import org.apache.commons.net.ssh.util.Constants.Message;
 
 /**
  * {@link OutputStream} for channels. Buffers data upto the remote window's maximum packet size. Data can also be
  * flushed via {@link #flush()} and is also flushed on {@link #close()}.
+ * <p>
+ * Data is put straight into the payload of the packet that gets encoded and sent, which has room for the packet's
+ * framing so that the transport does not need to copy it again. Besides the {@code OutputStream} methods, a
+ * {@link GatheringByteChannel} face and {@link #transferFrom(InputStream, boolean)} allow filling packets straight from
+ * the caller's buffers or from another stream. The packet's storage is pooled, and given back once the stream is
+ * closed.
  */
-public class ChannelOutputStream extends OutputStream implements ErrorNotifiable
+public class ChannelOutputStream extends OutputStream implements GatheringByteChannel, ErrorNotifiable
 {
     
+    /** Room for padding and MAC at the end of a packet */
+    private static final int TRAILER = 256;
+    
     private final Channel chan;
     private final RemoteWindow win;
-    private final SSHPacket buffer = new SSHPacket();
+    private final OutboundScheduler scheduler;
+    private final SSHPacket buffer = new SSHPacket(Buffer.DEFAULT_SIZE, BufferPool.getDefault());
     private final byte[] b = new byte[1];
     private int bufferLength;
     private boolean closed;
     private SSHException error;
     
+    /** Whether {@link #transferFrom} is reading into the packet without holding the monitor */
+    private boolean filling;
+    
     public ChannelOutputStream(Channel chan, RemoteWindow win)
+    {
+        this(chan, win, null);
+    }
+    
+    /**
+     * Create a stream whose data is sent through {@code scheduler}, or straight to the transport if it is
+     * {@code null}.
+     */
+    ChannelOutputStream(Channel chan, RemoteWindow win, OutboundScheduler scheduler)
     {
         this.chan = chan;
         this.win = win;
+        this.scheduler = scheduler;
         prepBuffer();
     }
     
@@ -65,6 +95,7 @@ public class ChannelOutputStream extends OutputStream implements ErrorNotifiable
     @Override
     public synchronized void flush() throws IOException
     {
+        awaitFill();
         checkClose();
         
         if (bufferLength <= 0) // No data to send
@@ -75,13 +106,21 @@ public class ChannelOutputStream extends OutputStream implements ErrorNotifiable
         try
         {
             win.waitAndConsume(bufferLength);
-            chan.getTransport().write(buffer);
+            if (scheduler != null)
+                scheduler.send(chan, buffer);
+            else
+                chan.getTransport().write(buffer);
         } finally
         {
             prepBuffer();
         }
     }
     
+    public boolean isOpen()
+    {
+        return !closed;
+    }
+    
     public synchronized void notifyError(SSHException error)
     {
         this.error = error;
@@ -90,6 +129,9 @@ public class ChannelOutputStream extends OutputStream implements ErrorNotifiable
     public synchronized void setClosed()
     {
         closed = true;
+        // Otherwise transferFrom() gives it back once its read returns
+        if (!filling)
+            buffer.release();
     }
     
     @Override
@@ -102,6 +144,7 @@ public class ChannelOutputStream extends OutputStream implements ErrorNotifiable
     @Override
     public synchronized void write(byte[] data, int off, int len) throws IOException
     {
+        awaitFill();
         checkClose();
         while (len > 0)
         {
@@ -111,6 +154,7 @@ public class ChannelOutputStream extends OutputStream implements ErrorNotifiable
                 flush();
                 continue;
             }
+            ensureRoom();
             buffer.putRawBytes(data, off, x);
             bufferLength += x;
             off += x;
@@ -118,6 +162,150 @@ public class ChannelOutputStream extends OutputStream implements ErrorNotifiable
         }
     }
     
+    public int write(ByteBuffer src) throws IOException
+    {
+        return (int) write(new ByteBuffer[] { src }, 0, 1);
+    }
+    
+    public long write(ByteBuffer[] srcs) throws IOException
+    {
+        return write(srcs, 0, srcs.length);
+    }
+    
+    /**
+     * Send the data remaining in {@code srcs}, in as few packets as possible. The data is flushed.
+     */
+    public synchronized long write(ByteBuffer[] srcs, int offset, int length) throws IOException
+    {
+        awaitFill();
+        checkClose();
+        long count = 0;
+        for (int i = offset; i < offset + length; i++)
+        {
+            final ByteBuffer src = srcs[i];
+            while (src.hasRemaining())
+            {
+                final int x = Math.min(src.remaining(), win.getMaxPacketSize() - bufferLength);
+                if (x <= 0)
+                {
+                    flush();
+                    continue;
+                }
+                ensureRoom();
+                src.get(buffer.array(), buffer.wpos(), x);
+                buffer.wpos(buffer.wpos() + x);
+                bufferLength += x;
+                count += x;
+            }
+        }
+        flush();
+        return count;
+    }
+    
+    /**
+     * Send all data read from {@code in} until EOF, reading it straight into packets. The stream's monitor is not held
+     * while waiting on {@code in}, so that the stream can be closed meanwhile; other writers wait.
+     * 
+     * @param in
+     *            the stream to read from
+     * @param flush
+     *            whether to send whatever was read right away, rather than when a packet is full
+     * @return the number of bytes transferred
+     * @throws IOException
+     *             if reading from {@code in} or sending fails
+     */
+    public long transferFrom(InputStream in, boolean flush) throws IOException
+    {
+        long count = 0;
+        for (;;)
+        {
+            final byte[] array;
+            final int off;
+            final int room;
+            synchronized (this)
+            {
+                awaitFill();
+                checkClose();
+                if (win.getMaxPacketSize() - bufferLength <= 0)
+                    flush();
+                room = win.getMaxPacketSize() - bufferLength;
+                ensureRoom();
+                array = buffer.array();
+                off = buffer.wpos();
+                filling = true;
+            }
+            int len = 0;
+            try
+            {
+                len = in.read(array, off, room);
+            } finally
+            {
+                synchronized (this)
+                {
+                    filling = false;
+                    notifyAll();
+                    if (closed)
+                        buffer.release();
+                    else if (len > 0)
+                    {
+                        buffer.wpos(off + len);
+                        bufferLength += len;
+                        count += len;
+                    }
+                }
+            }
+            if (len == -1)
+                break;
+            if (flush)
+                flush();
+        }
+        flush();
+        return count;
+    }
+    
+    /**
+     * Read once from {@code src} straight into a packet, and send whatever was read. This does not wait on the remote
+     * window as long as {@code max} is within its size and nothing else is buffered.
+     * 
+     * @param src
+     *            the channel to read from, typically non-blocking
+     * @param max
+     *            the most bytes to read
+     * @return the number of bytes transferred, possibly 0, or {@code -1} on EOF
+     * @throws IOException
+     *             if reading from {@code src} or sending fails
+     */
+    public synchronized int readFrom(ReadableByteChannel src, int max) throws IOException
+    {
+        awaitFill();
+        checkClose();
+        ensureRoom();
+        final int room = Math.max(Math.min(max, win.getMaxPacketSize() - bufferLength), 0);
+        final int len = src.read(ByteBuffer.wrap(buffer.array(), buffer.wpos(), room));
+        if (len > 0)
+        {
+            buffer.wpos(buffer.wpos() + len);
+            bufferLength += len;
+            flush();
+        }
+        return len;
+    }
+    
+    /*
+     * Wait while transferFrom() is reading into the packet. Called with the monitor held.
+     */
+    private void awaitFill() throws InterruptedIOException
+    {
+        while (filling)
+            try
+            {
+                wait();
+            } catch (InterruptedException ie)
+            {
+                throw (InterruptedIOException) new InterruptedIOException().initCause(ie);
+            }
+    }
+    
     private void checkClose() throws SSHException
     {
         if (closed)
@@ -127,6 +315,14 @@ public class ChannelOutputStream extends OutputStream implements ErrorNotifiable
                 throw new ConnectionException("Stream closed");
     }
     
+    /*
+     * Make sure a full packet fits without the buffer having to grow, including when it is encoded.
+     */
+    private void ensureRoom()
+    {
+        buffer.ensureCapacity(win.getMaxPacketSize() - bufferLength + TRAILER);
+    }
+    
     private void prepBuffer()
     {
         bufferLength = 0;
@@ -26,6 +26,15 @@ import java.io.IOException;
 public interface ConnectListener
 {
     
+    /**
+     * A listener whose {@link #gotConnect(Channel.Forwarded) gotConnect()} returns without blocking, confirming or
+     * rejecting the channel later on. It is called on the thread that received the request to open the channel, rather
+     * than on a thread started for each channel.
+     */
+    interface Async extends ConnectListener
+    {
+    }
+    
     /**
      * Notify this listener of a new forwarded channel. An implementation should firstly
      * {@link Channel.Forwarded#confirm() confirm} or {@link Channel.Forwarded#reject() reject} that channel.
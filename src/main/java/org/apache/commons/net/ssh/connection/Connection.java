@@ -86,12 +86,23 @@ public interface Connection
      */
     int getMaxPacketSize();
     
+    /**
+     * Get the size up to which the local window of any {@link Channel} is auto-tuned, or {@code 0} if windows have a
+     * fixed size.
+     */
+    int getMaxWindowSize();
+    
     /**
      * Get the {@code timeout} this connection uses for blocking operations and recommends to any {@link Channel other}
      * {@link ForwardedChannelOpener classes} that ask for it.
      */
     int getTimeout();
     
+    /**
+     * Get the {@link OutboundScheduler} through which channels send their data.
+     */
+    OutboundScheduler getOutboundScheduler();
+    
     /**
      * Get the associated {@link Transport}.
      */
@@ -128,6 +139,14 @@ public interface Connection
      */
     void setMaxPacketSize(int maxPacketSize);
     
+    /**
+     * Set the size up to which the local window of any {@link Channel} is auto-tuned, starting from the
+     * {@link #setWindowSize(int) window size}. This lets channels keep up with links that have a high bandwidth-delay
+     * product without every channel using a large window. A value not greater than the window size turns auto-tuning
+     * off, which is the default.
+     */
+    void setMaxWindowSize(int maxWindowSize);
+    
     /**
      * Set the {@code timeout} this connection uses for blocking operations and recommends to any {@link Channel other}
      * {@link ForwardedChannelOpener classes} that ask for it.
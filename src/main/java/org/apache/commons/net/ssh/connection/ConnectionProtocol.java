@@ -31,6 +31,7 @@ import org.apache.commons.net.ssh.SSHPacket;
 import org.apache.commons.net.ssh.connection.OpenFailException.Reason;
 import org.apache.commons.net.ssh.transport.Transport;
 import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.BufferPool;
 import org.apache.commons.net.ssh.util.Future;
 import org.apache.commons.net.ssh.util.Buffer.PlainBuffer;
 import org.apache.commons.net.ssh.util.Constants.DisconnectReason;
@@ -49,9 +50,14 @@ public class ConnectionProtocol extends AbstractService implements Connection
     private final Map<String, ForwardedChannelOpener> openers = new ConcurrentHashMap<String, ForwardedChannelOpener>();
     
     private final Queue<Future<SSHPacket, ConnectionException>> globalReqFutures = new LinkedList<Future<SSHPacket, ConnectionException>>();
+    /** Keeps global requests in the order their futures are queued in */
+    private final Object globalReqLock = new Object();
     
     private int windowSize = 2048 * 1024;
     private int maxPacketSize = 32 * 1024;
+    private int maxWindowSize;
+    
+    private final OutboundScheduler scheduler;
     
     /**
      * Create with an associated {@link Transport}.
@@ -59,6 +65,7 @@ public class ConnectionProtocol extends AbstractService implements Connection
     public ConnectionProtocol(Transport trans)
     {
         super("ssh-connection", trans);
+        scheduler = new OutboundScheduler(trans);
     }
     
     public void attach(Channel chan)
@@ -162,6 +169,21 @@ public class ConnectionProtocol extends AbstractService implements Connection
         this.maxPacketSize = maxPacketSize;
     }
     
+    public OutboundScheduler getOutboundScheduler()
+    {
+        return scheduler;
+    }
+    
+    public int getMaxWindowSize()
+    {
+        return maxWindowSize;
+    }
+    
+    public void setMaxWindowSize(int maxWindowSize)
+    {
+        this.maxWindowSize = maxWindowSize;
+    }
+    
     public int getWindowSize()
     {
         return windowSize;
@@ -183,23 +205,40 @@ public class ConnectionProtocol extends AbstractService implements Connection
         return nextID.getAndIncrement();
     }
     
-    // synchronized for mutex with gotResponse()
-    public synchronized Future<SSHPacket, ConnectionException> sendGlobalRequest(String name, boolean wantReply,
+    /*
+     * The future is queued before the request is written, since the response may come in as soon as it has been. The
+     * write is not made holding the monitor, which gotGlobalReqResponse() takes on the thread handling incoming
+     * packets.
+     */
+    public Future<SSHPacket, ConnectionException> sendGlobalRequest(String name, boolean wantReply,
             PlainBuffer specifics) throws TransportException
     {
         log.info("Making global request for `{}`", name);
-        trans.write(new SSHPacket(Message.GLOBAL_REQUEST) //
-                .putString(name) //
-                .putBoolean(wantReply) //
-                .putBuffer(specifics)); //
-        
-        Future<SSHPacket, ConnectionException> future = null;
-        if (wantReply)
+        final SSHPacket packet = new SSHPacket(Message.GLOBAL_REQUEST, BufferPool.getDefault());
+        try
+        {
+            packet.putString(name) //
+                    .putBoolean(wantReply) //
+                    .putBuffer(specifics);
+            Future<SSHPacket, ConnectionException> future = null;
+            synchronized (globalReqLock)
+            {
+                if (wantReply)
+                {
+                    future = new Future<SSHPacket, ConnectionException>("global req for " + name,
+                            ConnectionException.chainer);
+                    synchronized (this)
+                    {
+                        globalReqFutures.add(future);
+                    }
+                }
+                trans.write(packet);
+            }
+            return future;
+        } finally
         {
-            future = new Future<SSHPacket, ConnectionException>("global req for " + name, ConnectionException.chainer);
-            globalReqFutures.add(future);
+            packet.release();
         }
-        return future;
     }
     
     // synchronized for mutex with sendGlobalReq()
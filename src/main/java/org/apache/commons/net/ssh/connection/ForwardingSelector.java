@@ -0,0 +1,471 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.connection;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.net.ssh.connection.OpenFailException.Reason;
+import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.IOUtils;
+import org.apache.commons.net.ssh.util.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forwards data between the channels of a connection and non-blocking sockets, for any number of them, with a single
+ * selector thread per connection that has any being forwarded.
+ * <p>
+ * Data read from a socket goes straight into channel packets, no more than the remote window allows. Data received on
+ * a channel is written to the socket from the channel's buffer as the socket accepts it, and the local window is only
+ * adjusted once it has been. A slow peer on either side thus holds back the other side, rather than data piling up or
+ * a thread being tied up. EOF is passed along in each direction as a half-close.
+ * <p>
+ * The selector thread only waits for sockets to become ready. Moving the data is done on a {@link Scheduler} worker,
+ * since sending on the channel may block, e.g. during key exchange; the socket is not selected again until the
+ * worker is done, so nothing more is read from it meanwhile. The thread stops once it has nothing left to forward,
+ * which is the case at the latest when the connection is closed.
+ */
+final class ForwardingSelector extends Thread
+{
+    
+    /**
+     * A channel and the socket it is being forwarded to.
+     */
+    private final class Tunnel implements Runnable
+    {
+        
+        private final AbstractChannel chan;
+        private final SocketChannel sock;
+        private final ChannelInputStream in;
+        private final ChannelOutputStream out;
+        
+        /** Moves data, on a worker thread */
+        private final Runnable pump = new Runnable()
+        {
+            public void run()
+            {
+                pump();
+            }
+        };
+        
+        /** Whether a worker is moving data for this tunnel, or about to */
+        private final AtomicBoolean busy = new AtomicBoolean();
+        
+        /** Whether something happened since the worker last looked that may let data flow */
+        private volatile boolean again;
+        
+        private volatile boolean expired;
+        private volatile boolean aborted;
+        private volatile boolean done;
+        
+        /** The interest set for the selector thread to apply, or -1 if it is not to select this tunnel */
+        private volatile int ops = -1;
+        
+        /** Only used by the selector thread */
+        private SelectionKey key;
+        
+        // Only used by the worker
+        private boolean connecting;
+        private boolean started;
+        private boolean sockEOF;
+        private boolean chanEOF;
+        
+        private Tunnel(AbstractChannel chan, SocketChannel sock)
+        {
+            this.chan = chan;
+            this.sock = sock;
+            in = (ChannelInputStream) chan.getInputStream();
+            out = (ChannelOutputStream) chan.getOutputStream();
+            chan.setWatcher(this);
+            Scheduler.schedule(new Runnable()
+            {
+                public void run()
+                {
+                    expired = true;
+                    schedule();
+                }
+            }, chan.conn.getTimeout() + 1, TimeUnit.SECONDS);
+        }
+        
+        /*
+         * Called whenever something comes in for the channel, which may let data flow again.
+         */
+        public void run()
+        {
+            schedule();
+        }
+        
+        @Override
+        public String toString()
+        {
+            return "< Tunnel for " + chan + " to " + sock.socket().getRemoteSocketAddress() + " >";
+        }
+        
+        /*
+         * Have a worker move data, unless one is already at it; it then looks again once done.
+         */
+        private void schedule()
+        {
+            again = true;
+            if (busy.compareAndSet(false, true))
+                Scheduler.execute(pump);
+        }
+        
+        private void abort()
+        {
+            aborted = true;
+            schedule();
+        }
+        
+        private void pump()
+        {
+            do
+            {
+                again = false;
+                int ops;
+                try
+                {
+                    ops = process();
+                } catch (IOException e)
+                {
+                    fail(e);
+                    ops = -1;
+                }
+                if (ops != -1)
+                {
+                    this.ops = ops;
+                    post();
+                }
+                busy.set(false);
+            } while (again && busy.compareAndSet(false, true));
+        }
+        
+        /*
+         * Have the selector thread apply the interest set.
+         */
+        private void post()
+        {
+            updates.add(this);
+            if (stopped)
+                abort();
+            else
+                selector.wakeup();
+        }
+        
+        /*
+         * Selector thread: register the socket if needed and select it for what may let more data flow.
+         */
+        private void update() throws IOException
+        {
+            if (done)
+                return;
+            try
+            {
+                if (key == null)
+                    key = sock.register(selector, ops, this);
+                else
+                    key.interestOps(ops);
+            } catch (ClosedChannelException e)
+            {
+                // Finished meanwhile
+            } catch (CancelledKeyException e)
+            {
+                // Finished meanwhile
+            }
+        }
+        
+        /*
+         * Worker: move data whichever way it can flow, and return the interest set that may let more flow; -1 when
+         * finished.
+         */
+        private int process() throws IOException
+        {
+            if (done)
+                return -1;
+            if (aborted)
+                throw new IOException("Forwarding stopped");
+            
+            if (connecting)
+            {
+                if (!sock.finishConnect())
+                {
+                    if (expired)
+                        throw new SocketTimeoutException("Timed out connecting");
+                    return SelectionKey.OP_CONNECT;
+                }
+                connecting = false;
+                ((Channel.Forwarded) chan).confirm();
+            }
+            
+            if (!started)
+            {
+                if (!chan.open.isSet())
+                {
+                    if (chan.open.hasError() || expired)
+                    {
+                        finish();
+                        return -1;
+                    }
+                    return 0;
+                }
+                sock.socket().setSendBufferSize(chan.getLocalMaxPacketSize());
+                sock.socket().setReceiveBufferSize(chan.getRemoteMaxPacketSize());
+                started = true;
+            }
+            
+            // Channel to socket
+            if (!chanEOF && in.transferTo(sock) == -1)
+            {
+                chanEOF = true;
+                sock.socket().shutdownOutput();
+            }
+            
+            // Socket to channel, as much as the remote window takes
+            final boolean chanOpen = chan.isOpen();
+            if (chanOpen && !sockEOF)
+            {
+                final int win = chan.rwin.getSize();
+                if (win > 0 && out.readFrom(sock, win) == -1)
+                {
+                    sockEOF = true;
+                    out.close();
+                }
+            }
+            
+            if (chanEOF && (sockEOF || !chanOpen))
+            {
+                finish();
+                return -1;
+            }
+            
+            int ops = 0;
+            if (chanOpen && !sockEOF && chan.rwin.getSize() > 0)
+                ops |= SelectionKey.OP_READ;
+            if (!chanEOF && in.available() > 0)
+                ops |= SelectionKey.OP_WRITE;
+            return ops;
+        }
+        
+        private void fail(IOException e)
+        {
+            log.warn("Error in {}: {}", this, e.toString());
+            if (connecting)
+                try
+                {
+                    ((Channel.Forwarded) chan).reject(Reason.CONNECT_FAILED, e.toString());
+                } catch (TransportException te)
+                {
+                    log.warn("Error rejecting {}: {}", chan, te.toString());
+                }
+            connecting = false;
+            finish();
+        }
+        
+        private void finish()
+        {
+            if (done)
+                return;
+            done = true;
+            log.info("Done with {}", this);
+            chan.setWatcher(null);
+            // Cancels the key, if the socket was registered
+            IOUtils.closeQuietly(sock);
+            if (chan.open.isSet())
+                try
+                {
+                    chan.sendClose();
+                } catch (TransportException e)
+                {
+                    log.warn("Error closing {}: {}", chan, e.toString());
+                }
+            release(ForwardingSelector.this);
+        }
+        
+    }
+    
+    /** The selector threads of connections that have something being forwarded, and how many tunnels each has */
+    private static final Map<Connection, ForwardingSelector> instances = new HashMap<Connection, ForwardingSelector>();
+    
+    /**
+     * Forward between {@code chan} and {@code sock}, once the channel is open. If it does not open in time, the socket
+     * is closed.
+     * 
+     * @param chan
+     *            the channel, which may be waiting to be opened
+     * @param sock
+     *            a connected socket
+     * @throws IOException
+     *             if the socket could not be made non-blocking
+     */
+    static void forward(AbstractChannel chan, SocketChannel sock) throws IOException
+    {
+        sock.configureBlocking(false);
+        acquire(chan.conn).new Tunnel(chan, sock).schedule();
+    }
+    
+    /**
+     * Connect to {@code addr} and then confirm {@code chan} and forward between them, or reject the channel if the
+     * connection fails.
+     * 
+     * @param chan
+     *            the forwarded channel, which is neither confirmed nor rejected yet
+     * @param addr
+     *            where to connect to
+     * @throws IOException
+     *             if a socket could not be set up
+     */
+    static <C extends AbstractChannel & Channel.Forwarded> void connect(C chan, SocketAddress addr) throws IOException
+    {
+        final SocketChannel sock = SocketChannel.open();
+        final Tunnel tunnel;
+        try
+        {
+            sock.configureBlocking(false);
+            tunnel = acquire(chan.conn).new Tunnel(chan, sock);
+        } catch (IOException e)
+        {
+            IOUtils.closeQuietly(sock);
+            throw e;
+        }
+        try
+        {
+            tunnel.connecting = !sock.connect(addr);
+            if (!tunnel.connecting)
+                chan.confirm();
+        } catch (IOException e)
+        {
+            tunnel.finish();
+            throw e;
+        }
+        tunnel.schedule();
+    }
+    
+    /*
+     * Returns the selector thread for conn, starting one if needed, and counts a tunnel for it.
+     */
+    private static synchronized ForwardingSelector acquire(Connection conn) throws IOException
+    {
+        ForwardingSelector instance = instances.get(conn);
+        if (instance == null)
+        {
+            instance = new ForwardingSelector(conn);
+            instances.put(conn, instance);
+            instance.start();
+        }
+        instance.tunnels++;
+        return instance;
+    }
+    
+    /*
+     * A tunnel is done; the thread stops with the last one.
+     */
+    private static synchronized void release(ForwardingSelector instance)
+    {
+        if (--instance.tunnels == 0 && !instance.stopped)
+        {
+            instances.remove(instance.conn);
+            instance.stopped = true;
+            instance.selector.wakeup();
+        }
+    }
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private final Connection conn;
+    
+    private final Selector selector;
+    
+    /** Tunnels whose interest set is to be updated */
+    private final Queue<Tunnel> updates = new ConcurrentLinkedQueue<Tunnel>();
+    
+    /** Guarded by the class monitor */
+    private int tunnels;
+    
+    private volatile boolean stopped;
+    
+    private ForwardingSelector(Connection conn) throws IOException
+    {
+        this.conn = conn;
+        selector = Selector.open();
+        setName("forwarding-selector");
+        setDaemon(true);
+    }
+    
+    @Override
+    public void run()
+    {
+        try
+        {
+            while (!stopped)
+            {
+                selector.select();
+                Tunnel tunnel;
+                while ((tunnel = updates.poll()) != null)
+                    tunnel.update();
+                final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext())
+                {
+                    final SelectionKey key = it.next();
+                    it.remove();
+                    try
+                    {
+                        key.interestOps(0);
+                        ((Tunnel) key.attachment()).schedule();
+                    } catch (CancelledKeyException e)
+                    {
+                        // Finished meanwhile
+                    }
+                }
+            }
+        } catch (IOException e)
+        {
+            log.error("Selector failed, stopping: {}", e.toString());
+        } finally
+        {
+            synchronized (ForwardingSelector.class)
+            {
+                if (instances.get(conn) == this)
+                    instances.remove(conn);
+                stopped = true;
+            }
+            // Tunnels still going are finished by their workers
+            for (SelectionKey key : selector.keys())
+                ((Tunnel) key.attachment()).abort();
+            Tunnel tunnel;
+            while ((tunnel = updates.poll()) != null)
+                tunnel.abort();
+            IOUtils.closeQuietly(selector);
+        }
+    }
+    
+}
@@ -19,48 +19,34 @@
 package org.apache.commons.net.ssh.connection;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 import org.apache.commons.net.ssh.SSHPacket;
-import org.apache.commons.net.ssh.util.StreamCopier;
-import org.apache.commons.net.ssh.util.StreamCopier.ErrorCallback;
+import org.apache.commons.net.ssh.util.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Forwards connections accepted on a local port to a host and port reachable from the SSH server, each over a
+ * {@code direct-tcpip} channel.
+ * <p>
+ * Only accepting connections takes up the thread that calls {@link #listen()}. Forwarded connections are served
+ * without blocking by a selector thread shared by all forwarders on the connection, with the channel windows
+ * providing backpressure; see {@link ForwardingSelector}. A channel is opened without waiting for the server to confirm it, so a
+ * slow open does not hold up accepting other connections.
+ */
 public class LocalPortForwarder
 {
     
     private class DirectTCPIPChannel extends AbstractDirectChannel
     {
         
-        private final Socket sock;
-        
-        private DirectTCPIPChannel(Connection conn, Socket sock)
+        private DirectTCPIPChannel(Connection conn)
         {
             super("direct-tcpip", conn);
-            this.sock = sock;
-        }
-        
-        private void start() throws IOException
-        {
-            sock.setSendBufferSize(getLocalMaxPacketSize());
-            sock.setReceiveBufferSize(getRemoteMaxPacketSize());
-            
-            final ErrorCallback chanCloser = StreamCopier.closeOnErrorCallback(this);
-            
-            new StreamCopier("chan2soc", getInputStream(), sock.getOutputStream()) //
-                    .bufSize(getLocalMaxPacketSize()) //
-                    .errorCallback(chanCloser) //
-                    .daemon(true) //
-                    .start();
-            
-            new StreamCopier("soc2chan", sock.getInputStream(), getOutputStream()) //
-                    .bufSize(getRemoteMaxPacketSize()) //
-                    .errorCallback(chanCloser) //
-                    .daemon(true) //
-                    .start();
         }
         
         @Override
@@ -69,8 +55,8 @@ public class LocalPortForwarder
             return super.buildOpenReq() //
                     .putString(host) //
                     .putInt(port) //
-                    .putString(ss.getInetAddress().getHostAddress()) //
-                    .putInt(ss.getLocalPort());
+                    .putString(ssc.socket().getInetAddress().getHostAddress()) //
+                    .putInt(ssc.socket().getLocalPort());
         }
         
     }
@@ -78,7 +64,7 @@ public class LocalPortForwarder
     private final Logger log = LoggerFactory.getLogger(getClass());
     
     private final Connection conn;
-    private final ServerSocket ss;
+    private final ServerSocketChannel ssc;
     private final String host;
     private final int port;
     
@@ -103,31 +89,53 @@ public class LocalPortForwarder
         this.conn = conn;
         this.host = host;
         this.port = port;
-        this.ss = new ServerSocket();
-        ss.setReceiveBufferSize(conn.getMaxPacketSize());
-        ss.bind(listeningAddr);
+        this.ssc = ServerSocketChannel.open();
+        ssc.socket().setReceiveBufferSize(conn.getMaxPacketSize());
+        ssc.socket().bind(listeningAddr);
     }
     
     public SocketAddress getListeningAddress()
     {
-        return ss.getLocalSocketAddress();
+        return ssc.socket().getLocalSocketAddress();
     }
     
     /**
-     * Start listening for incoming connections and forward to remote host as a channel.
+     * Start listening for incoming connections and forward to remote host as a channel. Returns once the forwarder is
+     * {@link #close() closed}; connections being forwarded at that point carry on.
      */
     public void listen() throws IOException
     {
-        log.info("Listening on {}", ss.getLocalSocketAddress());
-        Socket sock;
+        log.info("Listening on {}", getListeningAddress());
+        SocketChannel sock;
         while (true)
         {
-            sock = ss.accept();
-            log.info("Got connection from {}", sock.getRemoteSocketAddress());
-            DirectTCPIPChannel chan = new DirectTCPIPChannel(conn, sock);
-            chan.open();
-            chan.start();
+            try
+            {
+                sock = ssc.accept();
+            } catch (ClosedChannelException closed)
+            {
+                return;
+            }
+            log.info("Got connection from {}", sock.socket().getRemoteSocketAddress());
+            final DirectTCPIPChannel chan = new DirectTCPIPChannel(conn);
+            try
+            {
+                ForwardingSelector.forward(chan, sock);
+                chan.requestOpen();
+            } catch (IOException e)
+            {
+                IOUtils.closeQuietly(sock);
+                throw e;
+            }
         }
     }
     
-}
\ No newline at end of file
+    /**
+     * Stop listening, which makes {@link #listen()} return.
+     */
+    public void close() throws IOException
+    {
+        ssc.close();
+    }
+    
+}
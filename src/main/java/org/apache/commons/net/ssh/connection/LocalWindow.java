@@ -20,26 +20,58 @@ package org.apache.commons.net.ssh.connection;
 
 import org.apache.commons.net.ssh.SSHPacket;
 import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.BufferPool;
 import org.apache.commons.net.ssh.util.Constants.Message;
 
 /**
  * Controls how much data remote end can send before an adjustment notification from us is required.
+ * <p>
+ * By default the window is kept at a fixed size. If a {@link Connection#setMaxWindowSize(int) maximum window size} is
+ * set, the window is auto-tuned between the initial and the maximum size: it is grown when the remote end runs out of
+ * window before we get around to adjusting it, to at least twice the bandwidth-delay product as estimated from the rate
+ * at which data is received and the round-trip time; and it is shrunk when the application falls behind in reading
+ * data that was already received. Unless the channel {@link Channel#setAutoExpand(boolean) auto-expands} its window,
+ * data that was received but not yet read then counts against the window.
  */
 public class LocalWindow extends Window
 {
     int initSize;
     int threshold;
     
+    /** Ceiling for auto-tuning, or 0 if the window has a fixed size */
+    private int maxSize;
+    /** Size the window is currently kept at */
+    private int targetSize;
+    /** Data that was received but not yet read by the application */
+    private int backlog;
+    
+    private long lastAdjust;
+    private long receivedSinceAdjust;
+    /** Whether the remote end ran out of window since the last adjustment */
+    private boolean stalled;
+    /** When an adjustment was sent while the remote end had run out of window, if awaiting the data it unblocks */
+    private long rttProbe;
+    
+    // statistics
+    private long rtt;
+    private long rate;
+    private long adjustments;
+    private long stalls;
+    
     LocalWindow(Channel chan)
     {
         super(chan, true);
     }
     
-    public synchronized void check() throws TransportException
+    /**
+     * Adjusts the window if it has fallen below the threshold. The adjustment is sent without holding the lock on this
+     * window, which the thread handling incoming data needs while the write may wait for key exchange to complete.
+     */
+    public void check() throws TransportException
     {
-        int diff = size - threshold;
-        if (diff <= 0)
-            growBy(initSize - size);
+        final int inc = adjustment();
+        if (inc > 0)
+            sendWindowAdjust(inc);
     }
     
     // public synchronized void check(int max) throws TransportException
@@ -50,26 +82,196 @@ public class LocalWindow extends Window
     // growBy(diff);
     // }
     
+    @Override
+    public synchronized void consume(int dec)
+    {
+        super.consume(dec);
+        backlog += dec;
+        receivedSinceAdjust += dec;
+        if (rttProbe != 0)
+        {
+            final long sample = System.nanoTime() - rttProbe;
+            rtt = rtt == 0 ? sample : (7 * rtt + sample) / 8;
+            rttProbe = 0;
+        }
+        if (size < maxPacketSize && !stalled)
+        {
+            stalled = true;
+            stalls++;
+        }
+    }
+    
     @Override
     public void init(int initialWinSize, int maxPacketSize)
     {
-        initSize = initialWinSize;
-        threshold = Math.min(maxPacketSize * 20, initialWinSize / 4);
+        init(initialWinSize, 0, maxPacketSize);
+    }
+    
+    /**
+     * Initialize this window.
+     * 
+     * @param initialWinSize
+     *            initial size
+     * @param maxWinSize
+     *            the size up to which the window may be auto-tuned; if not greater than {@code initialWinSize} the
+     *            window size is fixed
+     * @param maxPacketSize
+     *            maximum packet size
+     */
+    public synchronized void init(int initialWinSize, int maxWinSize, int maxPacketSize)
+    {
+        initSize = targetSize = initialWinSize;
+        if (maxWinSize > initialWinSize)
+        {
+            maxSize = maxWinSize;
+            threshold = initialWinSize / 2;
+        } else
+        {
+            maxSize = 0;
+            threshold = Math.min(maxPacketSize * 20, initialWinSize / 4);
+        }
         super.init(initialWinSize, maxPacketSize);
     }
     
-    private synchronized void growBy(int inc) throws TransportException
+    /**
+     * Called when the application has read {@code len} bytes of data that was received. Adjusts the window if that
+     * makes room, i.e. when the window is tuned or not auto-expanded regardless of reading.
+     */
+    public void release(int len) throws TransportException
+    {
+        final boolean check;
+        synchronized (this)
+        {
+            backlog -= len;
+            check = maxSize != 0 || !chan.getAutoExpand();
+        }
+        if (check)
+            check();
+    }
+    
+    /**
+     * Returns the number of bytes that were received but not yet read by the application.
+     */
+    public synchronized int getBacklog()
+    {
+        return backlog;
+    }
+    
+    /**
+     * Returns the maximum size up to which this window is auto-tuned, or {@code 0} if it has a fixed size.
+     */
+    public synchronized int getMaxSize()
+    {
+        return maxSize;
+    }
+    
+    /**
+     * Returns the rate at which data was received in between the last two window adjustments, in bytes per second.
+     */
+    public synchronized long getReceiveRate()
+    {
+        return rate;
+    }
+    
+    /**
+     * Returns the smoothed round-trip time in milliseconds, as measured from sending a window adjustment to the remote
+     * end that had run out of window, to receiving data again. Returns {@code 0} if not yet measured.
+     */
+    public synchronized long getRTT()
+    {
+        return rtt / 1000000;
+    }
+    
+    /**
+     * Returns the number of times the remote end ran out of window before it was adjusted.
+     */
+    public synchronized long getStallCount()
+    {
+        return stalls;
+    }
+    
+    /**
+     * Returns the size at which this window is currently kept, i.e. the sum of the window and the backlog after an
+     * adjustment.
+     */
+    public synchronized int getTargetSize()
+    {
+        return targetSize;
+    }
+    
+    /**
+     * Returns the number of window adjustments sent.
+     */
+    public synchronized long getAdjustmentCount()
+    {
+        return adjustments;
+    }
+    
+    @Override
+    public synchronized String toString()
+    {
+        return "[size=" + size + ";maxPacket=" + maxPacketSize + ";target=" + targetSize + ";backlog=" + backlog
+                + ";rtt=" + getRTT() + ";rate=" + rate + ";adjustments=" + adjustments + ";stalls=" + stalls + "]";
+    }
+    
+    private synchronized void tune()
+    {
+        final long now = System.nanoTime();
+        if (lastAdjust != 0 && now > lastAdjust)
+            rate = receivedSinceAdjust * 1000000000L / (now - lastAdjust);
+        
+        if (!chan.getAutoExpand() && backlog > targetSize / 2)
+            // The application is not keeping up, letting the remote end send more only adds to the backlog
+            targetSize = Math.max(initSize, targetSize / 2);
+        else if (stalled)
+        {
+            final long bdp = rate * rtt / 1000000000L;
+            targetSize = (int) Math.min(maxSize, Math.max(2L * targetSize, 2 * bdp));
+        }
+        threshold = targetSize / 2;
+    }
+    
+    /*
+     * Returns by how much the window is to be adjusted, and accounts for it as adjusted; or 0 if it is not due.
+     */
+    private synchronized int adjustment()
     {
-        sendWindowAdjust(inc);
+        if (size > threshold)
+            return 0;
+        if (maxSize != 0)
+            tune();
+        /*
+         * When tuning, data not yet read counts against the window unless auto-expanding. A fixed window is refilled
+         * regardless, as stdout and stderr share it and a caller may well read only one of them.
+         */
+        final int inc = targetSize - size - (maxSize == 0 || chan.getAutoExpand() ? 0 : backlog);
+        if (inc < threshold)
+            return 0;
+        
+        final long now = System.nanoTime();
+        if (size < maxPacketSize && rttProbe == 0)
+            // The remote end is waiting on this adjustment, so the next data arrives a round trip from now
+            rttProbe = now;
+        lastAdjust = now;
+        receivedSinceAdjust = 0;
+        stalled = false;
+        adjustments++;
         expand(inc);
+        return inc;
     }
     
-    private synchronized void sendWindowAdjust(int inc) throws TransportException
+    private void sendWindowAdjust(int inc) throws TransportException
     {
         log.info("Sending SSH_MSG_CHANNEL_WINDOW_ADJUST to #{} for {} bytes", chan.getRecipient(), inc);
-        chan.getTransport().write(new SSHPacket(Message.CHANNEL_WINDOW_ADJUST) //
-                .putInt(chan.getRecipient()) //
-                .putInt(inc));
+        final SSHPacket packet = new SSHPacket(Message.CHANNEL_WINDOW_ADJUST, BufferPool.getDefault());
+        try
+        {
+            chan.getTransport().write(packet.putInt(chan.getRecipient()) //
+                    .putInt(inc));
+        } finally
+        {
+            packet.release();
+        }
     }
     
 }
\ No newline at end of file
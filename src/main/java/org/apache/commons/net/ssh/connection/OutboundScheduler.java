@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.connection;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.transport.Transport;
+import org.apache.commons.net.ssh.transport.TransportException;
+
+/**
+ * Schedules outbound channel data of a {@link Connection}, so that which channel gets to send next does not depend on
+ * which thread happens to grab the transport's write lock.
+ * <p>
+ * Data packets are queued by {@link Channel.Priority priority}. A higher priority class is always served before a lower
+ * one, and channels of the same priority are served in turn. Only one thread at a time writes queued packets to the
+ * transport, on behalf of all senders; it hands off to another sender once its own packet is out. Each sender waits
+ * until its packet has been written, since the packet's buffer is reused afterwards.
+ * <p>
+ * As the other senders never reach the transport themselves, the writing thread tells it whether more packets are
+ * queued, so that they are coalesced as they would be if each sender wrote its own.
+ */
+public final class OutboundScheduler
+{
+    
+    private static final class Entry
+    {
+        
+        private final SSHPacket packet;
+        
+        private boolean done;
+        private TransportException error;
+        
+        private Entry(SSHPacket packet)
+        {
+            this.packet = packet;
+        }
+        
+    }
+    
+    private final Transport trans;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition sent = lock.newCondition();
+    
+    private final Queue<Entry>[] queues;
+    
+    /** Whether some thread is currently writing queued packets */
+    private boolean draining;
+    
+    private final long[] packets = new long[Channel.Priority.values().length];
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    OutboundScheduler(Transport trans)
+    {
+        this.trans = trans;
+        queues = new Queue[Channel.Priority.values().length];
+        for (int i = 0; i < queues.length; i++)
+            queues[i] = new LinkedList<Entry>();
+    }
+    
+    /**
+     * Returns the number of data packets sent with the given priority.
+     */
+    public long getPacketsSent(Channel.Priority priority)
+    {
+        lock.lock();
+        try
+        {
+            return packets[priority.ordinal()];
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Send the data {@code packet} of {@code chan} when its turn comes, and wait until it has been written.
+     */
+    void send(Channel chan, SSHPacket packet) throws TransportException
+    {
+        final Entry entry = new Entry(packet);
+        lock.lock();
+        try
+        {
+            queues[chan.getPriority().ordinal()].add(entry);
+            while (!entry.done)
+                if (!draining)
+                    drain(entry);
+                else
+                    sent.awaitUninterruptibly();
+            if (entry.error != null)
+                throw entry.error;
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /*
+     * Write queued packets until ours is out. Called with the lock held, which is released while writing. Whoever
+     * drains next writes the packets that remain queued, so the transport may hold back the last one written.
+     */
+    private void drain(Entry ours)
+    {
+        draining = true;
+        try
+        {
+            while (!ours.done)
+            {
+                final Entry next = poll();
+                final boolean more = !isEmpty();
+                lock.unlock();
+                try
+                {
+                    trans.write(next.packet, more);
+                } catch (TransportException e)
+                {
+                    next.error = e;
+                } finally
+                {
+                    lock.lock();
+                }
+                next.done = true;
+                sent.signalAll();
+            }
+        } finally
+        {
+            draining = false;
+            sent.signalAll();
+        }
+    }
+    
+    private boolean isEmpty()
+    {
+        for (Queue<Entry> queue : queues)
+            if (!queue.isEmpty())
+                return false;
+        return true;
+    }
+    
+    private Entry poll()
+    {
+        for (int i = 0; i < queues.length; i++)
+        {
+            final Entry entry = queues[i].poll();
+            if (entry != null)
+            {
+                packets[i]++;
+                return entry;
+            }
+        }
+        throw new IllegalStateException("Nothing queued");
+    }
+    
+}
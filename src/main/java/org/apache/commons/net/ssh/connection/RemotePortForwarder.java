@@ -232,7 +232,8 @@ public class RemotePortForwarder extends AbstractForwardedChannelOpener
     
     /**
      * Internal API. Creates a {@link ForwardedTCPIPChannel} from the {@code CHANNEL_OPEN} request and calls associated
-     * {@code ConnectListener} for that forward in a separate thread.
+     * {@code ConnectListener} for that forward, in a separate thread unless it is {@link ConnectListener.Async
+     * asynchronous}.
      */
     public void handleOpen(SSHPacket buf) throws ConnectionException, TransportException
     {
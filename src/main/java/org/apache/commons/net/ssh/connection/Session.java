@@ -23,6 +23,8 @@ import java.io.InputStream;
 import java.util.Map;
 
 import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Event;
+import org.apache.commons.net.ssh.util.Future;
 
 /**
  * A {@code session} channel provides for execution of a remote {@link Command command}, {@link Shell shell} or
@@ -78,6 +80,13 @@ public interface Session extends Channel
          */
         Integer getExitStatus();
         
+        /**
+         * Returns a future for the exit status of the command, which is set once it is received, or errors out if the
+         * command exits with a signal or the channel closes without one. {@link Future#addListener Listeners} may be
+         * added to it.
+         */
+        Future<Integer, ConnectionException> getExitStatusFuture();
+        
         /**
          * If the command exit violently {@link #getExitSignal() with a signal}, information about whether a core dump
          * took place would have been received and can be retrieved via this method. Otherwise, this method will return
@@ -171,6 +180,9 @@ public interface Session extends Channel
      * Allocate a psuedo-terminal for this session.
      * <p>
      * {@code 0} dimension parameters will be ignored by the server.
+     * <p>
+     * The session's {@link Channel#setPriority(Channel.Priority) priority} becomes
+     * {@link Channel.Priority#INTERACTIVE interactive}.
      * 
      * @param term
      *            {@code TERM} environment variable value (e.g., {@code vt100})
@@ -201,6 +213,18 @@ public interface Session extends Channel
      */
     Command exec(String command) throws ConnectionException, TransportException;
     
+    /**
+     * Request execution of a remote command, without waiting for the reply. Once the returned event is set, this
+     * session may be used as a {@link Command}.
+     * 
+     * @param command
+     * @return the event that is set once the command has been started, or errors out if the request failed or timed
+     *         out; {@link Event#addListener listeners} may be added to it
+     * @throws TransportException
+     *             if there is an error sending the request
+     */
+    Event<ConnectionException> execAsync(String command) throws TransportException;
+    
     /**
      * Request X11 forwarding.
      * 
@@ -25,6 +25,8 @@ import java.util.Map;
 
 import org.apache.commons.net.ssh.SSHPacket;
 import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Event;
+import org.apache.commons.net.ssh.util.Future;
 import org.apache.commons.net.ssh.util.IOUtils;
 import org.apache.commons.net.ssh.util.Buffer.PlainBuffer;
 
@@ -45,12 +47,16 @@ public class SessionChannel extends AbstractDirectChannel implements Session, Se
     
     private final ChannelInputStream err = new ChannelInputStream(this, lwin);
     
+    private final Future<Integer, ConnectionException> exitStatusFuture;
+    
     public SessionChannel(Connection conn)
     {
         super("session", conn);
+        exitStatusFuture = new Future<Integer, ConnectionException>("chan#" + getID() + " / exit status",
+                ConnectionException.chainer);
     }
     
-    public void allocateDefaultPTY() throws ConnectionException, TransportException
+    static Map<PTYMode, Integer> defaultPTYModes()
     {
         /*
          * FIXME (maybe?): These modes were originally copied from what SSHD was doing; and then the echo modes were set
@@ -64,21 +70,39 @@ public class SessionChannel extends AbstractDirectChannel implements Session, Se
         modes.put(PTYMode.ECHOK, 0);
         modes.put(PTYMode.ECHONL, 0);
         modes.put(PTYMode.NOFLSH, 0);
-        allocatePTY("vt100", 0, 0, 0, 0, modes);
+        return modes;
+    }
+    
+    static PlainBuffer ptyRequest(String term, int cols, int rows, int width, int height, Map<PTYMode, Integer> modes)
+    {
+        return new PlainBuffer().putString(term) //
+                .putInt(cols) //
+                .putInt(rows) //
+                .putInt(width) //
+                .putInt(height) //
+                .putBytes(PTYMode.encode(modes));
+    }
+    
+    static PlainBuffer x11Request(String authProto, String authCookie, int screen)
+    {
+        return new PlainBuffer() //
+                .putBoolean(false).putString(authProto) //
+                .putString(authCookie) //
+                .putInt(screen);
+    }
+    
+    public void allocateDefaultPTY() throws ConnectionException, TransportException
+    {
+        allocatePTY("vt100", 0, 0, 0, 0, defaultPTYModes());
     }
     
     public void allocatePTY(String term, int cols, int rows, int width, int height, Map<PTYMode, Integer> modes)
             throws ConnectionException, TransportException
     {
-        sendChannelRequest("pty-req", //
-                true, // 
-                new PlainBuffer().putString(term) //
-                        .putInt(cols) //
-                        .putInt(rows) //
-                        .putInt(width) //
-                        .putInt(height) //
-                        .putBytes(PTYMode.encode(modes)) //
-        ).await(conn.getTimeout()); // wait for reply
+        sendChannelRequest("pty-req", true, ptyRequest(term, cols, rows, width, height, modes)) //
+                .await(conn.getTimeout()); // wait for reply
+        // Whatever is typed into a terminal should not wait behind bulk data
+        setPriority(Priority.INTERACTIVE);
     }
     
     public Boolean canDoFlowControl()
@@ -103,6 +127,15 @@ public class SessionChannel extends AbstractDirectChannel implements Session, Se
         return this;
     }
     
+    public Event<ConnectionException> execAsync(String command) throws TransportException
+    {
+        log.info("Will request to exec `{}`", command);
+        final Event<ConnectionException> started = sendChannelRequest("exec", true, new PlainBuffer()
+                .putString(command));
+        started.expireAfter(conn.getTimeout());
+        return started;
+    }
+    
     public String getErrorAsString() throws IOException
     {
         return getStreamAsString(err);
@@ -128,6 +161,11 @@ public class SessionChannel extends AbstractDirectChannel implements Session, Se
         return exitStatus;
     }
     
+    public Future<Integer, ConnectionException> getExitStatusFuture()
+    {
+        return exitStatusFuture;
+    }
+    
     public String getOutputAsString() throws IOException
     {
         return getStreamAsString(getInputStream());
@@ -148,12 +186,15 @@ public class SessionChannel extends AbstractDirectChannel implements Session, Se
         if ("xon-xoff".equals(req))
             canDoFlowControl = buf.readBoolean();
         else if ("exit-status".equals(req))
+        {
             exitStatus = buf.readInt();
-        else if ("exit-signal".equals(req))
+            exitStatusFuture.set(exitStatus);
+        } else if ("exit-signal".equals(req))
         {
             exitSignal = Signal.fromString(buf.readString());
             wasCoreDumped = buf.readBoolean(); // core dumped
             exitErrMsg = buf.readString();
+            noExitStatus("Exited with signal " + exitSignal);
             sendClose();
         } else
             super.handleRequest(req, buf);
@@ -162,11 +203,7 @@ public class SessionChannel extends AbstractDirectChannel implements Session, Se
     public void reqX11Forwarding(String authProto, String authCookie, int screen) throws ConnectionException,
             TransportException
     {
-        sendChannelRequest("x11-req", true, //
-                new PlainBuffer() //
-                        .putBoolean(false).putString(authProto) //
-                        .putString(authCookie) //
-                        .putInt(screen)).await(conn.getTimeout());
+        sendChannelRequest("x11-req", true, x11Request(authProto, authCookie, screen)).await(conn.getTimeout());
     }
     
     public void setEnvVar(String name, String value) throws ConnectionException, TransportException
@@ -211,6 +248,13 @@ public class SessionChannel extends AbstractDirectChannel implements Session, Se
         super.eofInputStreams();
     }
     
+    @Override
+    protected void finishOff()
+    {
+        noExitStatus("Closed without an exit status");
+        super.finishOff();
+    }
+    
     @Override
     protected void gotExtendedData(int dataTypeCode, SSHPacket buf) throws ConnectionException, TransportException
     {
@@ -220,4 +264,9 @@ public class SessionChannel extends AbstractDirectChannel implements Session, Se
             super.gotExtendedData(dataTypeCode, buf);
     }
     
+    private void noExitStatus(String why)
+    {
+        exitStatusFuture.errorIfUnset(new Future.FutureException(why));
+    }
+    
 }
\ No newline at end of file
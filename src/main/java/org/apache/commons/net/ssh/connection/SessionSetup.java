@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.connection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Event;
+import org.apache.commons.net.ssh.util.IOUtils;
+import org.apache.commons.net.ssh.util.Buffer.PlainBuffer;
+
+/**
+ * Builds up a {@code session} channel's requests, such as for a PTY or environment variables, and then opens the
+ * channel and makes them all together.
+ * <p>
+ * Setting up a {@link Session} one request at a time costs a round trip per request, since each waits for the reply
+ * before the next one is sent. Here, once the channel is open, all requests up to and including the one that starts a
+ * command, shell or subsystem are sent back-to-back and only then are the replies awaited. The server handles a
+ * channel's requests in order, so the command does not start before the earlier requests have been dealt with.
+ * <p>
+ * <em>Example:</em>
+ * 
+ * <pre>
+ * Session.Command cmd = client.newSessionSetup() //
+ *         .allocateDefaultPTY() //
+ *         .setEnvVar(&quot;LANG&quot;, &quot;C&quot;) //
+ *         .exec(&quot;make&quot;);
+ * </pre>
+ */
+public class SessionSetup
+{
+    
+    private static final class Request
+    {
+        
+        private final String type;
+        private final PlainBuffer data;
+        
+        private Request(String type, PlainBuffer data)
+        {
+            this.type = type;
+            this.data = data;
+        }
+        
+    }
+    
+    private final Connection conn;
+    private final List<Request> requests = new ArrayList<Request>();
+    
+    private boolean pty;
+    
+    public SessionSetup(Connection conn)
+    {
+        this.conn = conn;
+    }
+    
+    /**
+     * Request a default PTY, as for {@link Session#allocateDefaultPTY()}.
+     */
+    public SessionSetup allocateDefaultPTY()
+    {
+        return allocatePTY("vt100", 0, 0, 0, 0, SessionChannel.defaultPTYModes());
+    }
+    
+    /**
+     * Request a PTY, as for {@link Session#allocatePTY(String, int, int, int, int, Map)}.
+     */
+    public SessionSetup allocatePTY(String term, int cols, int rows, int width, int height, Map<PTYMode, Integer> modes)
+    {
+        pty = true;
+        return add("pty-req", SessionChannel.ptyRequest(term, cols, rows, width, height, modes));
+    }
+    
+    /**
+     * Request X11 forwarding, as for {@link Session#reqX11Forwarding(String, String, int)}.
+     */
+    public SessionSetup reqX11Forwarding(String authProto, String authCookie, int screen)
+    {
+        return add("x11-req", SessionChannel.x11Request(authProto, authCookie, screen));
+    }
+    
+    /**
+     * Set an environment variable, as for {@link Session#setEnvVar(String, String)}.
+     */
+    public SessionSetup setEnvVar(String name, String value)
+    {
+        return add("env", new PlainBuffer().putString(name).putString(value));
+    }
+    
+    /**
+     * Open the session, make the requests that were added and execute {@code command}.
+     * 
+     * @param command
+     *            the command
+     * @return the {@link Session.Command}
+     * @throws ConnectionException
+     *             if opening the channel or any of the requests failed, in which case the channel is closed
+     * @throws TransportException
+     *             if there is an error sending a request
+     */
+    public Session.Command exec(String command) throws ConnectionException, TransportException
+    {
+        return start(new Request("exec", new PlainBuffer().putString(command)));
+    }
+    
+    /**
+     * Open the session and make the requests that were added, without starting anything.
+     * 
+     * @return the {@link Session}
+     * @throws ConnectionException
+     *             if opening the channel or any of the requests failed, in which case the channel is closed
+     * @throws TransportException
+     *             if there is an error sending a request
+     */
+    public Session open() throws ConnectionException, TransportException
+    {
+        return start(null);
+    }
+    
+    /**
+     * Open the session, make the requests that were added and start a shell.
+     * 
+     * @return the {@link Session.Shell}
+     * @throws ConnectionException
+     *             if opening the channel or any of the requests failed, in which case the channel is closed
+     * @throws TransportException
+     *             if there is an error sending a request
+     */
+    public Session.Shell startShell() throws ConnectionException, TransportException
+    {
+        return start(new Request("shell", null));
+    }
+    
+    /**
+     * Open the session, make the requests that were added and start subsystem {@code name}.
+     * 
+     * @param name
+     *            the subsystem
+     * @return the {@link Session.Subsystem}
+     * @throws ConnectionException
+     *             if opening the channel or any of the requests failed, in which case the channel is closed
+     * @throws TransportException
+     *             if there is an error sending a request
+     */
+    public Session.Subsystem startSubsystem(String name) throws ConnectionException, TransportException
+    {
+        return start(new Request("subsystem", new PlainBuffer().putString(name)));
+    }
+    
+    private SessionSetup add(String type, PlainBuffer data)
+    {
+        requests.add(new Request(type, data));
+        return this;
+    }
+    
+    private SessionChannel start(Request last) throws ConnectionException, TransportException
+    {
+        // Leave this setup as it was, so that it can be used again
+        final List<Request> requests = new ArrayList<Request>(this.requests);
+        if (last != null)
+            requests.add(last);
+        final SessionChannel chan = new SessionChannel(conn);
+        chan.open();
+        try
+        {
+            final List<Event<ConnectionException>> replies = new ArrayList<Event<ConnectionException>>(
+                    requests.size());
+            for (Request req : requests)
+                replies.add(chan.sendChannelRequest(req.type, true, req.data));
+            for (Event<ConnectionException> reply : replies)
+                reply.await(conn.getTimeout());
+        } catch (ConnectionException e)
+        {
+            IOUtils.closeQuietly(chan);
+            throw e;
+        } catch (TransportException e)
+        {
+            IOUtils.closeQuietly(chan);
+            throw e;
+        }
+        if (pty)
+            // Whatever is typed into a terminal should not wait behind bulk data
+            chan.setPriority(Channel.Priority.INTERACTIVE);
+        return chan;
+    }
+    
+}
@@ -19,18 +19,19 @@
 package org.apache.commons.net.ssh.connection;
 
 import java.io.IOException;
-import java.net.Socket;
 import java.net.SocketAddress;
 
-import org.apache.commons.net.ssh.util.StreamCopier;
-import org.apache.commons.net.ssh.util.StreamCopier.ErrorCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A {@link ConnectListener} that forwards what is received over the channel to a socket and vice-versa.
+ * <p>
+ * It does not block: the socket is connected asynchronously, and the channel confirmed once the connection is made or
+ * rejected if it fails. Data is then forwarded by the connection's selector thread, shared with local port
+ * forwarding, so that any number of forwarded channels can be served without a thread for each.
  */
-public class SocketForwardingConnectListener implements ConnectListener
+public class SocketForwardingConnectListener implements ConnectListener.Async
 {
     
     protected final Logger log = LoggerFactory.getLogger(getClass());
@@ -46,34 +47,13 @@ public class SocketForwardingConnectListener implements ConnectListener
     }
     
     /**
-     * On connect, confirm the channel and start forwarding.
+     * On connect, start connecting to the socket address. The channel is confirmed and forwarding starts once
+     * connected.
      */
     public void gotConnect(Channel.Forwarded chan) throws IOException
     {
         log.info("New connection from " + chan.getOriginatorIP() + ":" + chan.getOriginatorPort());
-        
-        final Socket sock = new Socket();
-        sock.setSendBufferSize(chan.getLocalMaxPacketSize());
-        sock.setReceiveBufferSize(chan.getRemoteMaxPacketSize());
-        
-        sock.connect(addr);
-        
-        // ok so far -- could connect, let's confirm the channel
-        chan.confirm();
-        
-        final ErrorCallback chanCloser = StreamCopier.closeOnErrorCallback(chan);
-        
-        new StreamCopier("soc2chan", sock.getInputStream(), chan.getOutputStream()) //
-                .bufSize(chan.getRemoteMaxPacketSize()) //
-                .errorCallback(chanCloser) //
-                .daemon(true) //
-                .start();
-        
-        new StreamCopier("chan2soc", chan.getInputStream(), sock.getOutputStream()) //
-                .bufSize(chan.getLocalMaxPacketSize()) //
-                .errorCallback(chanCloser) //
-                .daemon(true) //
-                .start();
+        ForwardingSelector.connect((AbstractForwardedChannel) chan, addr);
     }
     
-}
\ No newline at end of file
+}
@@ -63,6 +63,7 @@ public class BaseDigest implements Digest
     {
         try
         {
+            // Callers may spread updates over several calls, so the instance cannot be shared with the thread
             md = SecurityUtils.getMessageDigest(algorithm);
         } catch (GeneralSecurityException e)
         {
@@ -87,6 +87,9 @@ public abstract class AbstractDHG implements KeyExchange
         sha.init();
         dh = new DH();
         initDH(dh);
+        final KeyPairPool pool = trans.getConfig().getKeyPairPool();
+        if (pool != null)
+            dh.setKeyPair(pool.take(dh.getKeyPairFactory()));
         e = dh.getE();
         
         log.info("Sending SSH_MSG_KEXDH_INIT");
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.kex;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+
+import org.apache.commons.net.ssh.Factory;
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.digest.Digest;
+import org.apache.commons.net.ssh.signature.Signature;
+import org.apache.commons.net.ssh.transport.Transport;
+import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Buffer.PlainBuffer;
+import org.apache.commons.net.ssh.util.Constants.DisconnectReason;
+import org.apache.commons.net.ssh.util.Constants.KeyType;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class for elliptic curve Diffie-Hellman key exchange algorithms, per RFC 5656 and RFC 8731. The ephemeral public
+ * keys are exchanged as opaque strings rather than as {@code mpint}s; implementations only have to generate and encode
+ * key pairs and compute the shared secret.
+ */
+public abstract class AbstractECDH implements KeyExchange
+{
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private Transport trans;
+    private byte[] V_S;
+    private byte[] V_C;
+    private byte[] I_S;
+    private byte[] I_C;
+    private Digest hash;
+    private KeyPair keyPair;
+    private byte[] Q_C;
+    private byte[] K;
+    private byte[] H;
+    private PublicKey hostKey;
+    
+    public byte[] getH()
+    {
+        return H;
+    }
+    
+    public Digest getHash()
+    {
+        return hash;
+    }
+    
+    public PublicKey getHostKey()
+    {
+        return hostKey;
+    }
+    
+    public byte[] getK()
+    {
+        return K;
+    }
+    
+    public void init(Transport trans, byte[] V_S, byte[] V_C, byte[] I_S, byte[] I_C) throws TransportException
+    {
+        this.trans = trans;
+        this.V_S = V_S;
+        this.V_C = V_C;
+        this.I_S = I_S;
+        this.I_C = I_C;
+        hash = createHash();
+        hash.init();
+        final KeyPairPool pool = trans.getConfig().getKeyPairPool();
+        keyPair = pool != null ? pool.take(getKeyPairFactory()) : getKeyPairFactory().create();
+        Q_C = encode(keyPair.getPublic());
+        
+        log.info("Sending SSH_MSG_KEX_ECDH_INIT");
+        trans.write(new SSHPacket(Message.KEXDH_INIT).putString(Q_C));
+    }
+    
+    public boolean next(SSHPacket buffer) throws TransportException
+    {
+        Message msg = buffer.readMessageID();
+        if (msg != Message.KEXDH_31)
+            throw new TransportException(DisconnectReason.KEY_EXCHANGE_FAILED, "Unxpected packet: " + msg);
+        
+        log.info("Received SSH_MSG_KEX_ECDH_REPLY");
+        byte[] K_S = buffer.readBytes();
+        byte[] Q_S = buffer.readBytes();
+        byte[] sig = buffer.readBytes(); // signature sent by server
+        try
+        {
+            K = new BigInteger(1, computeSecret(keyPair, Q_S)).toByteArray();
+        } catch (GeneralSecurityException e)
+        {
+            throw new TransportException(DisconnectReason.KEY_EXCHANGE_FAILED, e);
+        }
+        
+        hostKey = new PlainBuffer(K_S).readPublicKey();
+        
+        PlainBuffer buf = new PlainBuffer() // our hash
+                .putString(V_C) // 
+                .putString(V_S) // 
+                .putString(I_C) //
+                .putString(I_S) //
+                .putString(K_S) //
+                .putString(Q_C) //
+                .putString(Q_S) //
+                .putMPInt(K); //
+        hash.update(buf.array(), 0, buf.available());
+        H = hash.digest();
+        
+        Signature verif = Factory.Named.Util.create(trans.getConfig().getSignatureFactories(), // 
+                KeyType.fromKey(hostKey).toString());
+        verif.init(hostKey, null);
+        verif.update(H, 0, H.length);
+        if (!verif.verify(sig))
+            throw new TransportException(DisconnectReason.KEY_EXCHANGE_FAILED,
+                    "KeyExchange signature verification failed");
+        return true;
+    }
+    
+    /**
+     * Returns a new instance of the hash algorithm used by this key exchange.
+     */
+    protected abstract Digest createHash();
+    
+    /**
+     * Returns a factory of the ephemeral key pairs used by this key exchange.
+     */
+    protected abstract Factory.Named<KeyPair> getKeyPairFactory();
+    
+    /**
+     * Returns the encoding of the ephemeral public key {@code key}, to be sent to the server.
+     */
+    protected abstract byte[] encode(PublicKey key);
+    
+    /**
+     * Computes the shared secret from our ephemeral key pair {@code kp} and the server's encoded ephemeral public key
+     * {@code Q_S}. The secret is returned as an unsigned big-endian number.
+     */
+    protected abstract byte[] computeSecret(KeyPair kp, byte[] Q_S) throws GeneralSecurityException;
+    
+}
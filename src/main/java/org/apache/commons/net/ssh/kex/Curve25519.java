@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.kex;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+/**
+ * The X25519 function of RFC 7748, for {@link Curve25519SHA256}. Field elements are held in 16 limbs of 16 bits, after
+ * TweetNaCl.
+ */
+final class Curve25519
+{
+    
+    /**
+     * A public or private key, as the raw 32 bytes.
+     */
+    static final class RawKey implements PublicKey, PrivateKey
+    {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final byte[] key;
+        
+        RawKey(byte[] key)
+        {
+            this.key = key;
+        }
+        
+        public String getAlgorithm()
+        {
+            return "X25519";
+        }
+        
+        public String getFormat()
+        {
+            return "RAW";
+        }
+        
+        public byte[] getEncoded()
+        {
+            return key.clone();
+        }
+        
+    }
+    
+    static final int KEY_SIZE = 32;
+    
+    private static final byte[] BASE_POINT = new byte[KEY_SIZE];
+    
+    private static final long[] A24 = { 0xdb41, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 }; // 121665
+    
+    static
+    {
+        BASE_POINT[0] = 9;
+    }
+    
+    private Curve25519()
+    {
+    }
+    
+    /**
+     * Returns the public key for {@code privateKey}.
+     */
+    static byte[] publicKey(byte[] privateKey)
+    {
+        return scalarMult(privateKey, BASE_POINT);
+    }
+    
+    /**
+     * Returns the X25519 of scalar {@code n} and u-coordinate {@code p}, both 32 bytes little-endian.
+     */
+    static byte[] scalarMult(byte[] n, byte[] p)
+    {
+        final byte[] z = new byte[KEY_SIZE];
+        System.arraycopy(n, 0, z, 0, KEY_SIZE);
+        z[31] = (byte) (n[31] & 127 | 64);
+        z[0] &= 248;
+        
+        final long[] x = unpack(p);
+        final long[] a = new long[16], b = new long[16], c = new long[16], d = new long[16];
+        final long[] e = new long[16], f = new long[16];
+        System.arraycopy(x, 0, b, 0, 16);
+        a[0] = d[0] = 1;
+        
+        for (int i = 254; i >= 0; --i)
+        {
+            final int r = z[i >>> 3] >>> (i & 7) & 1;
+            select(a, b, r);
+            select(c, d, r);
+            add(e, a, c);
+            sub(a, a, c);
+            add(c, b, d);
+            sub(b, b, d);
+            mul(d, e, e);
+            mul(f, a, a);
+            mul(a, c, a);
+            mul(c, b, e);
+            add(e, a, c);
+            sub(a, a, c);
+            mul(b, a, a);
+            sub(c, d, f);
+            mul(a, c, A24);
+            add(a, a, d);
+            mul(c, c, a);
+            mul(a, d, f);
+            mul(d, b, x);
+            mul(b, e, e);
+            select(a, b, r);
+            select(c, d, r);
+        }
+        
+        invert(c, c);
+        mul(a, a, c);
+        return pack(a);
+    }
+    
+    private static long[] unpack(byte[] n)
+    {
+        final long[] o = new long[16];
+        for (int i = 0; i < 16; i++)
+            o[i] = (n[2 * i] & 0xff) + ((long) (n[2 * i + 1] & 0xff) << 8);
+        o[15] &= 0x7fff;
+        return o;
+    }
+    
+    private static byte[] pack(long[] n)
+    {
+        final long[] m = new long[16];
+        final long[] t = new long[16];
+        System.arraycopy(n, 0, t, 0, 16);
+        carry(t);
+        carry(t);
+        carry(t);
+        for (int j = 0; j < 2; j++)
+        {
+            m[0] = t[0] - 0xffed;
+            for (int i = 1; i < 15; i++)
+            {
+                m[i] = t[i] - 0xffff - (m[i - 1] >> 16 & 1);
+                m[i - 1] &= 0xffff;
+            }
+            m[15] = t[15] - 0x7fff - (m[14] >> 16 & 1);
+            final int b = (int) (m[15] >> 16 & 1);
+            m[14] &= 0xffff;
+            select(t, m, 1 - b);
+        }
+        final byte[] o = new byte[KEY_SIZE];
+        for (int i = 0; i < 16; i++)
+        {
+            o[2 * i] = (byte) t[i];
+            o[2 * i + 1] = (byte) (t[i] >> 8);
+        }
+        return o;
+    }
+    
+    private static void carry(long[] o)
+    {
+        for (int i = 0; i < 16; i++)
+        {
+            o[i] += 1L << 16;
+            final long c = o[i] >> 16;
+            if (i < 15)
+                o[i + 1] += c - 1;
+            else
+                o[0] += 38 * (c - 1);
+            o[i] -= c << 16;
+        }
+    }
+    
+    /**
+     * Swaps {@code p} and {@code q} if {@code b} is 1, in constant time.
+     */
+    private static void select(long[] p, long[] q, int b)
+    {
+        final long c = ~(b - 1);
+        for (int i = 0; i < 16; i++)
+        {
+            final long t = c & (p[i] ^ q[i]);
+            p[i] ^= t;
+            q[i] ^= t;
+        }
+    }
+    
+    private static void add(long[] o, long[] a, long[] b)
+    {
+        for (int i = 0; i < 16; i++)
+            o[i] = a[i] + b[i];
+    }
+    
+    private static void sub(long[] o, long[] a, long[] b)
+    {
+        for (int i = 0; i < 16; i++)
+            o[i] = a[i] - b[i];
+    }
+    
+    private static void mul(long[] o, long[] a, long[] b)
+    {
+        final long[] t = new long[31];
+        for (int i = 0; i < 16; i++)
+            for (int j = 0; j < 16; j++)
+                t[i + j] += a[i] * b[j];
+        for (int i = 0; i < 15; i++)
+            t[i] += 38 * t[i + 16];
+        System.arraycopy(t, 0, o, 0, 16);
+        carry(o);
+        carry(o);
+    }
+    
+    private static void invert(long[] o, long[] i)
+    {
+        final long[] c = new long[16];
+        System.arraycopy(i, 0, c, 0, 16);
+        for (int a = 253; a >= 0; a--)
+        {
+            mul(c, c, c);
+            if (a != 2 && a != 4)
+                mul(c, c, i);
+        }
+        System.arraycopy(c, 0, o, 0, 16);
+    }
+    
+}
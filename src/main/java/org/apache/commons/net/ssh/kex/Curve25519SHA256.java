@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.kex;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+
+import org.apache.commons.net.ssh.Factory;
+import org.apache.commons.net.ssh.digest.Digest;
+import org.apache.commons.net.ssh.digest.SHA256;
+
+/**
+ * {@code curve25519-sha256} key exchange, per RFC 8731. Also known by its earlier name of
+ * {@code curve25519-sha256@libssh.org}.
+ */
+public class Curve25519SHA256 extends AbstractECDH
+{
+    
+    /**
+     * Named factory for Curve25519SHA256 key exchange
+     */
+    public static class Factory implements org.apache.commons.net.ssh.Factory.Named<KeyExchange>
+    {
+        
+        public KeyExchange create()
+        {
+            return new Curve25519SHA256();
+        }
+        
+        public String getName()
+        {
+            return "curve25519-sha256";
+        }
+        
+    }
+    
+    /**
+     * Named factory for Curve25519SHA256 key exchange, under the name used by servers predating RFC 8731
+     */
+    public static class FactoryLibSSH implements org.apache.commons.net.ssh.Factory.Named<KeyExchange>
+    {
+        
+        public KeyExchange create()
+        {
+            return new Curve25519SHA256();
+        }
+        
+        public String getName()
+        {
+            return "curve25519-sha256@libssh.org";
+        }
+        
+    }
+    
+    private static final Factory.Named<KeyPair> keyPairFactory = new Factory.Named<KeyPair>()
+    {
+        private final SecureRandom random = new SecureRandom();
+        
+        public KeyPair create()
+        {
+            final byte[] priv = new byte[Curve25519.KEY_SIZE];
+            random.nextBytes(priv);
+            return new KeyPair(new Curve25519.RawKey(Curve25519.publicKey(priv)), new Curve25519.RawKey(priv));
+        }
+        
+        public String getName()
+        {
+            return "X25519";
+        }
+    };
+    
+    @Override
+    protected Digest createHash()
+    {
+        return new SHA256();
+    }
+    
+    @Override
+    protected Factory.Named<KeyPair> getKeyPairFactory()
+    {
+        return keyPairFactory;
+    }
+    
+    @Override
+    protected byte[] encode(PublicKey key)
+    {
+        return key.getEncoded();
+    }
+    
+    @Override
+    protected byte[] computeSecret(KeyPair kp, byte[] Q_S) throws GeneralSecurityException
+    {
+        if (Q_S.length != Curve25519.KEY_SIZE)
+            throw new GeneralSecurityException("Invalid Curve25519 public key length: " + Q_S.length);
+        final byte[] secret = Curve25519.scalarMult(kp.getPrivate().getEncoded(), Q_S);
+        int acc = 0;
+        for (byte b : secret)
+            acc |= b;
+        if (acc == 0)
+            // A small-order point was sent to us
+            throw new GeneralSecurityException("Invalid Curve25519 shared secret");
+        return secret;
+    }
+    
+}
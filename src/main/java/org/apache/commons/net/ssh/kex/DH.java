@@ -29,6 +29,7 @@ import javax.crypto.KeyAgreement;
 import javax.crypto.spec.DHParameterSpec;
 import javax.crypto.spec.DHPublicKeySpec;
 
+import org.apache.commons.net.ssh.Factory;
 import org.apache.commons.net.ssh.SSHRuntimeException;
 import org.apache.commons.net.ssh.util.SecurityUtils;
 
@@ -47,6 +48,7 @@ public class DH
     private byte[] K_array;
     private final KeyPairGenerator myKpairGen;
     private final KeyAgreement myKeyAgree;
+    private KeyPair myKpair;
     
     public DH()
     {
@@ -65,12 +67,13 @@ public class DH
     {
         if (e == null)
         {
-            DHParameterSpec dhSkipParamSpec = new DHParameterSpec(p, g);
-            KeyPair myKpair;
             try
             {
-                myKpairGen.initialize(dhSkipParamSpec);
-                myKpair = myKpairGen.generateKeyPair();
+                if (myKpair == null)
+                {
+                    myKpairGen.initialize(new DHParameterSpec(p, g));
+                    myKpair = myKpairGen.generateKeyPair();
+                }
                 myKeyAgree.init(myKpair.getPrivate());
             } catch (GeneralSecurityException e)
             {
@@ -103,6 +106,47 @@ public class DH
         return K_array;
     }
     
+    /**
+     * Returns a factory of key pairs for the group set on this instance, which may be used to generate a key pair ahead
+     * of time.
+     * 
+     * @see #setKeyPair(KeyPair)
+     */
+    public Factory.Named<KeyPair> getKeyPairFactory()
+    {
+        final DHParameterSpec spec = new DHParameterSpec(p, g);
+        final String name = "DH-" + p.bitLength() + "-" + Integer.toHexString(p.hashCode());
+        return new Factory.Named<KeyPair>()
+        {
+            public KeyPair create()
+            {
+                try
+                {
+                    final KeyPairGenerator gen = SecurityUtils.getKeyPairGenerator("DH");
+                    gen.initialize(spec);
+                    return gen.generateKeyPair();
+                } catch (GeneralSecurityException e)
+                {
+                    throw new SSHRuntimeException(e);
+                }
+            }
+            
+            public String getName()
+            {
+                return name;
+            }
+        };
+    }
+    
+    /**
+     * Use {@code kp}, which must be for the group set on this instance and must not have been used before, rather than
+     * generating a key pair.
+     */
+    public void setKeyPair(KeyPair kp)
+    {
+        this.myKpair = kp;
+    }
+    
     public void setF(byte[] f)
     {
         setF(new BigInteger(f));
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.kex;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+
+import javax.crypto.KeyAgreement;
+
+import org.apache.commons.net.ssh.Factory;
+import org.apache.commons.net.ssh.SSHRuntimeException;
+import org.apache.commons.net.ssh.util.SecurityUtils;
+
+/**
+ * Base class for the {@code ecdh-sha2-nistp*} key exchange algorithms of RFC 5656, delegating to the JCE provider.
+ * Public keys are exchanged as uncompressed points.
+ */
+public abstract class ECDHNistP extends AbstractECDH
+{
+    
+    private final Factory.Named<KeyPair> keyPairFactory;
+    
+    /**
+     * @param curve
+     *            the standard name of the curve, e.g. {@code "secp256r1"}
+     */
+    protected ECDHNistP(final String curve)
+    {
+        keyPairFactory = new Factory.Named<KeyPair>()
+        {
+            public KeyPair create()
+            {
+                try
+                {
+                    final KeyPairGenerator generator = SecurityUtils.getKeyPairGenerator("EC");
+                    generator.initialize(new ECGenParameterSpec(curve));
+                    return generator.generateKeyPair();
+                } catch (GeneralSecurityException e)
+                {
+                    throw new SSHRuntimeException(e);
+                }
+            }
+            
+            public String getName()
+            {
+                return curve;
+            }
+        };
+    }
+    
+    @Override
+    protected Factory.Named<KeyPair> getKeyPairFactory()
+    {
+        return keyPairFactory;
+    }
+    
+    @Override
+    protected byte[] encode(PublicKey key)
+    {
+        final ECPublicKey pub = (ECPublicKey) key;
+        return encode(pub.getW(), pub.getParams());
+    }
+    
+    @Override
+    protected byte[] computeSecret(KeyPair kp, byte[] Q_S) throws GeneralSecurityException
+    {
+        final ECParameterSpec params = ((ECPublicKey) kp.getPublic()).getParams();
+        final ECPoint point = decode(Q_S, params);
+        final KeyAgreement agreement = SecurityUtils.getKeyAgreement("ECDH");
+        agreement.init(kp.getPrivate());
+        agreement.doPhase(SecurityUtils.getKeyFactory("EC").generatePublic(new ECPublicKeySpec(point, params)), true);
+        return agreement.generateSecret();
+    }
+    
+    private static int fieldSize(ECParameterSpec params)
+    {
+        return (params.getCurve().getField().getFieldSize() + 7) / 8;
+    }
+    
+    private static byte[] encode(ECPoint point, ECParameterSpec params)
+    {
+        final int size = fieldSize(params);
+        final byte[] encoded = new byte[1 + 2 * size];
+        encoded[0] = 0x04; // Uncompressed
+        putUnsigned(point.getAffineX(), encoded, 1, size);
+        putUnsigned(point.getAffineY(), encoded, 1 + size, size);
+        return encoded;
+    }
+    
+    private static ECPoint decode(byte[] encoded, ECParameterSpec params) throws GeneralSecurityException
+    {
+        final int size = fieldSize(params);
+        if (encoded.length != 1 + 2 * size || encoded[0] != 0x04)
+            throw new GeneralSecurityException("Invalid or unsupported EC point encoding");
+        final byte[] x = new byte[size];
+        final byte[] y = new byte[size];
+        System.arraycopy(encoded, 1, x, 0, size);
+        System.arraycopy(encoded, 1 + size, y, 0, size);
+        return new ECPoint(new BigInteger(1, x), new BigInteger(1, y));
+    }
+    
+    private static void putUnsigned(BigInteger n, byte[] dest, int off, int size)
+    {
+        final byte[] b = n.toByteArray();
+        if (b.length > size)
+            // Leading sign byte
+            System.arraycopy(b, b.length - size, dest, off, size);
+        else
+            System.arraycopy(b, 0, dest, off + size - b.length, b.length);
+    }
+    
+}
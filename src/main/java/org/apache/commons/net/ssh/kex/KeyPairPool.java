@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.kex;
+
+import java.security.KeyPair;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.net.ssh.Factory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of ephemeral key pairs for key exchange, generated ahead of time by low-priority background threads
+ * so that generating one is taken off the critical path of the handshake. Set it on the
+ * {@link org.apache.commons.net.ssh.Config Config} with
+ * {@link org.apache.commons.net.ssh.Config#setKeyPairPool(KeyPairPool) setKeyPairPool()}.
+ * <p>
+ * Key pairs are kept apart by the {@link Factory.Named#getName() name} of the factory that generates them, and the
+ * first request for a name starts keeping key pairs of that kind in stock. A key pair is handed out at most once. When
+ * none is in stock, one is generated on the calling thread, which counts as a miss.
+ */
+public final class KeyPairPool
+{
+    
+    private final class Stock
+    {
+        
+        private final Factory.Named<KeyPair> factory;
+        
+        private final Queue<KeyPair> pairs = new ConcurrentLinkedQueue<KeyPair>();
+        
+        /** Number of key pairs in {@link #pairs}, tracked separately as the queue's size() is not constant-time */
+        private final AtomicInteger count = new AtomicInteger();
+        
+        private final AtomicBoolean refilling = new AtomicBoolean();
+        
+        private final Runnable refill = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    while (count.get() < size)
+                    {
+                        pairs.add(factory.create());
+                        count.incrementAndGet();
+                        generated.incrementAndGet();
+                    }
+                } catch (RuntimeException e)
+                {
+                    log.warn("Could not generate {} key pair: {}", factory.getName(), e.toString());
+                } finally
+                {
+                    refilling.set(false);
+                }
+            }
+        };
+        
+        private Stock(Factory.Named<KeyPair> factory)
+        {
+            this.factory = factory;
+        }
+        
+        private KeyPair poll()
+        {
+            final KeyPair pair = pairs.poll();
+            if (pair != null)
+                count.decrementAndGet();
+            return pair;
+        }
+        
+        private void refill()
+        {
+            if (refilling.compareAndSet(false, true))
+                try
+                {
+                    executor.execute(refill);
+                } catch (RejectedExecutionException shutdown)
+                {
+                    refilling.set(false);
+                }
+        }
+        
+    }
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private final int size;
+    
+    private final ExecutorService executor;
+    
+    private final ConcurrentMap<String, Stock> stocks = new ConcurrentHashMap<String, Stock>();
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong generated = new AtomicLong();
+    
+    /**
+     * Create a pool.
+     * 
+     * @param size
+     *            number of key pairs of each kind to keep in stock
+     * @param threads
+     *            number of background threads generating key pairs
+     */
+    public KeyPairPool(int size, int threads)
+    {
+        this.size = size;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private final AtomicInteger n = new AtomicInteger();
+            
+            public Thread newThread(Runnable r)
+            {
+                final Thread t = new Thread(r, "kex-keygen-" + n.getAndIncrement());
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+    }
+    
+    /**
+     * Take a key pair of the kind generated by {@code factory}, generating one right away if there are none in stock.
+     * 
+     * @param factory
+     *            generates key pairs of the desired kind
+     * @return a key pair that has not been handed out before
+     */
+    public KeyPair take(Factory.Named<KeyPair> factory)
+    {
+        Stock stock = stocks.get(factory.getName());
+        if (stock == null)
+        {
+            final Stock newStock = new Stock(factory);
+            stock = stocks.putIfAbsent(factory.getName(), newStock);
+            if (stock == null)
+                stock = newStock;
+        }
+        
+        KeyPair pair = stock.poll();
+        if (pair != null)
+            hits.incrementAndGet();
+        else
+        {
+            misses.incrementAndGet();
+            pair = factory.create();
+        }
+        stock.refill();
+        return pair;
+    }
+    
+    /**
+     * Returns the number of times a key pair was handed out from stock.
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+    
+    /**
+     * Returns the number of times no key pair was in stock and one had to be generated on the spot.
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+    
+    /**
+     * Returns the number of key pairs generated in the background.
+     */
+    public long getGenerated()
+    {
+        return generated.get();
+    }
+    
+    /**
+     * Returns the number of key pairs of the kind named {@code name} currently in stock.
+     */
+    public int getAvailable(String name)
+    {
+        final Stock stock = stocks.get(name);
+        return stock == null ? 0 : stock.count.get();
+    }
+    
+    /**
+     * Stops generating key pairs in the background. Key pairs are still handed out, and generated on the spot once
+     * stock runs out.
+     */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "KeyPairPool[hits=" + hits + ";misses=" + misses + ";generated=" + generated + "]";
+    }
+    
+}
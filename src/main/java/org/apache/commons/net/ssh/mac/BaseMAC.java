@@ -35,14 +35,21 @@ public class BaseMAC implements MAC
     private final String algorithm;
     private final int defbsize;
     private final int bsize;
+    private final boolean etm;
     private final byte[] tmp;
     private javax.crypto.Mac mac;
     
     public BaseMAC(String algorithm, int bsize, int defbsize)
+    {
+        this(algorithm, bsize, defbsize, false);
+    }
+    
+    public BaseMAC(String algorithm, int bsize, int defbsize, boolean etm)
     {
         this.algorithm = algorithm;
         this.bsize = bsize;
         this.defbsize = defbsize;
+        this.etm = etm;
         tmp = new byte[defbsize];
     }
     
@@ -77,6 +84,16 @@ public class BaseMAC implements MAC
         return bsize;
     }
     
+    public int getKeySize()
+    {
+        return defbsize;
+    }
+    
+    public boolean isEncryptThenMAC()
+    {
+        return etm;
+    }
+    
     public void init(byte[] key)
     {
         if (key.length > defbsize)
@@ -89,6 +106,10 @@ public class BaseMAC implements MAC
         SecretKeySpec skey = new SecretKeySpec(key, algorithm);
         try
         {
+            /*
+             * Not the thread-local instance: this one stays keyed for as long as the transport uses it, while a
+             * selector thread may be encoding and decoding for many transports.
+             */
             mac = SecurityUtils.getMAC(algorithm);
             mac.init(skey);
         } catch (GeneralSecurityException e)
@@ -32,6 +32,17 @@ public interface MAC
     
     int getBlockSize();
     
+    /**
+     * Returns the size of the key this MAC should be initialized with.
+     */
+    int getKeySize();
+    
+    /**
+     * Whether this is an encrypt-then-MAC ({@code -etm@openssh.com}) algorithm. Such a MAC is computed over the
+     * encrypted packet, and the packet length is sent unencrypted so that the MAC can be checked before any decryption.
+     */
+    boolean isEncryptThenMAC();
+    
     void init(byte[] key);
     
     void update(byte[] foo);
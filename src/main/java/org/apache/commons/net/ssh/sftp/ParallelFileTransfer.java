@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.sftp;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.net.ssh.xfer.AbstractFileTransfer;
+import org.apache.commons.net.ssh.xfer.FileTransfer;
+
+/**
+ * Transfers directory trees with a number of files in flight at once, for trees of many small files where the round
+ * trips of transferring one file after another dominate.
+ * <p>
+ * The tree is walked on the calling thread, which creates directories in order, parents before children, and hands
+ * each file to a bounded pool of worker threads. Files are spread over the given {@link SFTPEngine}s, which may be
+ * over different channels or connections to the same server; a single engine already lets the requests of concurrent
+ * files interleave. Progress can be followed through {@link #getStats()}.
+ * <p>
+ * If a file fails, no more are started and the first error is thrown once those in flight are done.
+ */
+public class ParallelFileTransfer extends AbstractFileTransfer implements FileTransfer
+{
+    
+    /*
+     * Transfers one file, returning its size.
+     */
+    private interface Task
+    {
+        long run(SFTPFileTransfer xfer) throws IOException;
+    }
+    
+    /*
+     * The files of one transfer.
+     */
+    private final class Batch
+    {
+        
+        private final ExecutorService executor;
+        private final Semaphore slots;
+        private final TransferStats stats = new TransferStats();
+        
+        private volatile IOException error;
+        private int next;
+        
+        private Batch()
+        {
+            final int threads = parallelism;
+            executor = Executors.newFixedThreadPool(threads, threadFactory);
+            // Keep the walk a little ahead of the workers, but no more
+            slots = new Semaphore(threads * 2);
+        }
+        
+        private void submit(final Task task) throws IOException
+        {
+            checkError();
+            try
+            {
+                slots.acquire();
+            } catch (InterruptedException ie)
+            {
+                throw (IOException) new InterruptedIOException().initCause(ie);
+            }
+            stats.queued();
+            final SFTPFileTransfer xfer = transfers[next++ % transfers.length];
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        if (error == null)
+                            stats.transferred(task.run(xfer));
+                    } catch (IOException e)
+                    {
+                        failed(e);
+                    } finally
+                    {
+                        slots.release();
+                    }
+                }
+            });
+        }
+        
+        private void failed(IOException e)
+        {
+            synchronized (this)
+            {
+                if (error == null)
+                {
+                    error = e;
+                    return;
+                }
+            }
+            log.warn("Transfer also failed: {}", e.toString());
+        }
+        
+        private void checkError() throws IOException
+        {
+            if (error != null)
+                throw error;
+        }
+        
+        /*
+         * Wait for the files in flight, whether or not the walk completed.
+         */
+        private void finish() throws IOException
+        {
+            executor.shutdown();
+            try
+            {
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS))
+                    log.debug("Transfer progress: {}", stats);
+            } catch (InterruptedException ie)
+            {
+                executor.shutdownNow();
+                throw (IOException) new InterruptedIOException().initCause(ie);
+            } finally
+            {
+                stats.finished();
+            }
+            log.info("Transfer done: {}", stats);
+            checkError();
+        }
+        
+    }
+    
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    
+    private static final ThreadFactory threadFactory = new ThreadFactory()
+    {
+        public Thread newThread(Runnable r)
+        {
+            final Thread t = new Thread(r, "sftp-transfer-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    };
+    
+    private final SFTPEngine sftp;
+    private final SFTPFileTransfer[] transfers;
+    private final PathUtil pathUtil;
+    
+    private volatile int parallelism = 8;
+    private volatile FileFilter uploadFilter;
+    private volatile RemoteResourceFilter downloadFilter;
+    
+    private volatile TransferStats stats;
+    
+    /**
+     * @param engines
+     *            the engines to spread files over, at least one; directories are walked using the first
+     */
+    public ParallelFileTransfer(SFTPEngine... engines)
+    {
+        if (engines.length == 0)
+            throw new IllegalArgumentException("No SFTP engine given");
+        sftp = engines[0];
+        transfers = new SFTPFileTransfer[engines.length];
+        for (int i = 0; i < engines.length; i++)
+            transfers[i] = new SFTPFileTransfer(engines[i]);
+        pathUtil = new PathUtil(sftp);
+    }
+    
+    public void upload(String source, String dest) throws IOException
+    {
+        final Batch batch = begin();
+        try
+        {
+            upload(new File(source), dest, batch);
+        } finally
+        {
+            batch.finish();
+        }
+    }
+    
+    public void download(String source, String dest) throws IOException
+    {
+        final PathComponents src = pathUtil.getComponents(source);
+        final RemoteResourceInfo remote = new RemoteResourceInfo(src.getParent(), src.getName(), sftp.stat(source));
+        final Batch batch = begin();
+        try
+        {
+            download(remote, new File(dest), batch);
+        } finally
+        {
+            batch.finish();
+        }
+    }
+    
+    public RemoteResourceFilter getDownloadFilter()
+    {
+        return downloadFilter;
+    }
+    
+    /**
+     * Returns the number of files transferred at once.
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+    
+    /**
+     * Returns the progress of the transfer under way, or of the last one; {@code null} if there has been none.
+     */
+    public TransferStats getStats()
+    {
+        return stats;
+    }
+    
+    public FileFilter getUploadFilter()
+    {
+        return uploadFilter;
+    }
+    
+    public void setDownloadFilter(RemoteResourceFilter downloadFilter)
+    {
+        this.downloadFilter = downloadFilter;
+    }
+    
+    /**
+     * Set the number of files transferred at once, i.e. the number of worker threads.
+     */
+    public void setParallelism(int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+    
+    public void setUploadFilter(FileFilter uploadFilter)
+    {
+        this.uploadFilter = uploadFilter;
+    }
+    
+    private Batch begin()
+    {
+        for (SFTPFileTransfer xfer : transfers)
+        {
+            xfer.setModeGetter(getModeGetter());
+            xfer.setModeSetter(getModeSetter());
+        }
+        final Batch batch = new Batch();
+        stats = batch.stats;
+        return batch;
+    }
+    
+    private void upload(final File local, final String remote, Batch batch) throws IOException
+    {
+        if (local.isDirectory())
+        {
+            log.info("Uploading [{}] to [{}]", local, remote);
+            final String adjusted = transfers[0].prepareUploadDir(local, remote);
+            for (File f : local.listFiles(uploadFilter))
+                upload(f, adjusted, batch);
+        } else if (local.isFile())
+            batch.submit(new Task()
+            {
+                public long run(SFTPFileTransfer xfer) throws IOException
+                {
+                    xfer.uploadFile(local, remote);
+                    return local.length();
+                }
+            });
+        else
+            throw new IOException(local + " is not a file or directory");
+    }
+    
+    private void download(final RemoteResourceInfo remote, final File local, Batch batch) throws IOException
+    {
+        if (remote.isDirectory())
+        {
+            log.info("Downloading [{}] to [{}]", remote, local);
+            final File adjusted = transfers[0].prepareDownloadDir(remote, local);
+            final RemoteDir rd = sftp.openDir(remote.getPath());
+            try
+            {
+                final RemoteDirIterator it = rd.iterator(downloadFilter);
+                while (it.hasNext())
+                {
+                    final RemoteResourceInfo rri = it.next();
+                    download(rri, new File(adjusted.getPath(), rri.getName()), batch);
+                }
+            } finally
+            {
+                rd.close();
+            }
+        } else if (remote.isRegularFile())
+            batch.submit(new Task()
+            {
+                public long run(SFTPFileTransfer xfer) throws IOException
+                {
+                    xfer.downloadFile(remote, local);
+                    return remote.getAttributes().getSize();
+                }
+            });
+        else
+            throw new IOException(remote + " is not a regular file or directory");
+    }
+    
+}
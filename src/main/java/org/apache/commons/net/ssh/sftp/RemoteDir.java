@@ -22,47 +22,65 @@ import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 
-import org.apache.commons.net.ssh.sftp.Response.StatusCode;
-
 public class RemoteDir extends RemoteResource
 {
     
+    /** Default number of {@code READDIR} requests kept outstanding while iterating */
+    public static final int DEFAULT_PREFETCH = 2;
+    
     RemoteDir(SFTPEngine sftp, String path, String handle)
     {
         super(sftp, path, handle);
     }
     
+    /**
+     * Returns an iterator over the entries of this directory, excluding {@code .} and {@code ..}, that fetches them in
+     * batches as it goes, with {@link #DEFAULT_PREFETCH} requests kept outstanding.
+     * 
+     * @param filter
+     *            entries not accepted by this filter are skipped; may be {@code null}
+     */
+    public RemoteDirIterator iterator(RemoteResourceFilter filter)
+    {
+        return iterator(filter, DEFAULT_PREFETCH);
+    }
+    
+    /**
+     * Returns an iterator over the entries of this directory, excluding {@code .} and {@code ..}, that fetches them in
+     * batches as it goes.
+     * 
+     * @param filter
+     *            entries not accepted by this filter are skipped; may be {@code null}
+     * @param prefetch
+     *            number of {@code READDIR} requests to keep outstanding
+     */
+    public RemoteDirIterator iterator(RemoteResourceFilter filter, int prefetch)
+    {
+        return new RemoteDirIterator(this, filter, prefetch);
+    }
+    
+    /**
+     * Returns all entries of this directory, excluding {@code .} and {@code ..}. For large directories, consider
+     * {@link #iterator(RemoteResourceFilter)} instead.
+     * 
+     * @param filter
+     *            entries not accepted by this filter are left out; may be {@code null}
+     */
     public List<RemoteResourceInfo> scan(RemoteResourceFilter filter) throws IOException
     {
-        List<RemoteResourceInfo> rri = new LinkedList<RemoteResourceInfo>();
-        loop: for (;;)
-        {
-            Response res = sftp.make(newRequest(PacketType.READDIR));
-            switch (res.getType())
-            {
-            
-            case NAME:
-                final int count = res.readInt();
-                for (int i = 0; i < count; i++)
-                {
-                    final String name = res.readString();
-                    res.readString(); // long name - IGNORED - shdve never been in the protocol
-                    final FileAttributes attrs = res.readFileAttributes();
-                    RemoteResourceInfo inf = new RemoteResourceInfo(path, name, attrs);
-                    if (!(name.equals(".") || name.equals("..")) && (filter == null || filter.accept(inf)))
-                        rri.add(inf);
-                }
-                break loop;
-            
-            case STATUS:
-                res.ensureStatus(StatusCode.EOF);
-                break loop;
-            
-            default:
-                throw new SFTPException("Unexpected packet: " + res.getType());
-            }
-        }
+        final List<RemoteResourceInfo> rri = new LinkedList<RemoteResourceInfo>();
+        final RemoteDirIterator it = iterator(filter);
+        while (it.hasNext())
+            rri.add(it.next());
         return rri;
     }
     
+    /**
+     * Send a {@code READDIR} request without waiting for the response.
+     */
+    Request asyncReadDir() throws IOException
+    {
+        return sftp.send(newRequest(PacketType.READDIR));
+    }
+    
 }
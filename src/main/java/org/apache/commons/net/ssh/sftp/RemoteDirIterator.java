@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.sftp;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+import org.apache.commons.net.ssh.sftp.Response.StatusCode;
+
+/**
+ * Enumerates the entries of a {@link RemoteDir} as they arrive, rather than all at once.
+ * <p>
+ * Entries are decoded from one {@code NAME} response at a time while further {@code READDIR} requests are kept
+ * outstanding, so the server is already sending the next batch while the caller is busy with the current one. Memory
+ * use does not grow with the size of the directory. The filter, if any, is applied as entries are decoded.
+ * <p>
+ * The methods throw {@link IOException}, which is why this is not a {@link java.util.Iterator}. It is not thread-safe.
+ */
+public class RemoteDirIterator
+{
+    
+    private final RemoteDir dir;
+    private final RemoteResourceFilter filter;
+    private final int prefetch;
+    
+    /** {@code READDIR} requests that have been sent and not yet looked at, in the order they were sent */
+    private final Queue<Request> outstanding = new LinkedList<Request>();
+    
+    /** The {@code NAME} response entries are being decoded from */
+    private Response res;
+    /** Number of entries left to decode from {@link #res} */
+    private int remaining;
+    
+    private RemoteResourceInfo next;
+    private boolean eof;
+    
+    RemoteDirIterator(RemoteDir dir, RemoteResourceFilter filter, int prefetch)
+    {
+        this.dir = dir;
+        this.filter = filter;
+        this.prefetch = Math.max(1, prefetch);
+    }
+    
+    /**
+     * Returns whether there is another entry, waiting for the server if need be.
+     * 
+     * @throws SFTPException
+     *             if the server replied with an error
+     * @throws IOException
+     *             if the request could not be made
+     */
+    public boolean hasNext() throws IOException
+    {
+        while (next == null && !eof)
+        {
+            if (remaining > 0)
+            {
+                remaining--;
+                final String name = res.readString();
+                res.readString(); // long name - IGNORED - shdve never been in the protocol
+                final FileAttributes attrs = res.readFileAttributes();
+                final RemoteResourceInfo inf = new RemoteResourceInfo(dir.getPath(), name, attrs);
+                if (!(name.equals(".") || name.equals("..")) && (filter == null || filter.accept(inf)))
+                    next = inf;
+            } else
+                nextResponse();
+        }
+        return next != null;
+    }
+    
+    /**
+     * Returns the next entry.
+     * 
+     * @throws NoSuchElementException
+     *             if there are no more entries
+     * @throws IOException
+     *             as for {@link #hasNext()}
+     */
+    public RemoteResourceInfo next() throws IOException
+    {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        final RemoteResourceInfo inf = next;
+        next = null;
+        return inf;
+    }
+    
+    private void nextResponse() throws IOException
+    {
+        res = null;
+        while (outstanding.size() < prefetch)
+            outstanding.add(dir.asyncReadDir());
+        final Response res = outstanding.remove().getFuture().get();
+        switch (res.getType())
+        {
+        
+        case NAME:
+            this.res = res;
+            remaining = res.readInt();
+            break;
+        
+        case STATUS:
+            res.ensureStatus(StatusCode.EOF);
+            // Requests sent after this one get EOF as well
+            eof = true;
+            outstanding.clear();
+            break;
+        
+        default:
+            throw new SFTPException("Unexpected packet: " + res.getType());
+        }
+    }
+    
+}
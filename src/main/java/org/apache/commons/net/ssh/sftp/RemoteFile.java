@@ -40,6 +40,11 @@ public class RemoteFile extends RemoteResource
         return new RemoteFileOutputStream(this);
     }
     
+    public RemoteFileOutputStream getOutputStream(int maxUnconfirmedWrites)
+    {
+        return new RemoteFileOutputStream(this, 0, maxUnconfirmedWrites);
+    }
+    
     public FileAttributes fetchAttributes() throws IOException
     {
         return sftp.make(newRequest(PacketType.FSTAT)) //
@@ -57,15 +62,42 @@ public class RemoteFile extends RemoteResource
         setAttributes(new FileAttributes.Builder().withSize(len).build());
     }
     
+    public RemoteFileInputStream getInputStream(int maxUnconfirmedReads)
+    {
+        return new RemoteFileInputStream(this, 0, maxUnconfirmedReads);
+    }
+    
     public int read(long fileOffset, byte[] to, int offset, int len) throws IOException
     {
-        Response res = sftp.make(newRequest(PacketType.READ).putUINT64(fileOffset).putInt(len));
+        final Response res = sftp.make(newRequest(PacketType.READ).putUINT64(fileOffset).putInt(len));
+        final int recvLen = readDataLength(res);
+        if (recvLen != -1)
+            System.arraycopy(res.array(), res.rpos(), to, offset, recvLen);
+        return recvLen;
+    }
+    
+    /**
+     * Request {@code len} bytes at {@code fileOffset} without waiting for them. The response can be had from the
+     * returned request's {@link Request#getFuture() future}, and is to be looked at with {@link #readDataLength}.
+     */
+    public Request asyncRead(long fileOffset, int len) throws IOException
+    {
+        return sftp.send(newRequest(PacketType.READ).putUINT64(fileOffset).putInt(len));
+    }
+    
+    /**
+     * Returns the length of the data in {@code res}, a response to a {@code READ}, which is then positioned at the
+     * data; or {@code -1} on EOF.
+     * 
+     * @throws SFTPException
+     *             if the response is an error
+     */
+    public static int readDataLength(Response res) throws SFTPException
+    {
         switch (res.getType())
         {
         case DATA:
-            int recvLen = res.readInt();
-            System.arraycopy(res.array(), res.rpos(), to, offset, recvLen);
-            return recvLen;
+            return res.readInt();
             
         case STATUS:
             res.ensureStatus(StatusCode.EOF);
@@ -78,12 +110,17 @@ public class RemoteFile extends RemoteResource
     
     public void write(long fileOffset, byte[] data, int off, int len) throws IOException
     {
-        sftp.make( //
-                newRequest(PacketType.WRITE) //
-                        .putUINT64(fileOffset) //
-                        .putInt(len - off) //
-                        .putRawBytes(data, off, len) //
-                ).ensureStatusOK();
+        sftp.make(newWriteRequest(fileOffset, data, off, len)).ensureStatusOK();
+    }
+    
+    /**
+     * Write {@code len} bytes at {@code fileOffset} without waiting for the outcome. The response can be had from the
+     * returned request's {@link Request#getFuture() future}, and its status should be checked. The data is copied
+     * before this method returns.
+     */
+    public Request asyncWrite(long fileOffset, byte[] data, int off, int len) throws IOException
+    {
+        return sftp.send(newWriteRequest(fileOffset, data, off, len));
     }
     
     public void setAttributes(FileAttributes attrs) throws IOException
@@ -91,6 +128,14 @@ public class RemoteFile extends RemoteResource
         sftp.make(newRequest(PacketType.FSETSTAT).putFileAttributes(attrs)).ensureStatusOK();
     }
     
+    private Request newWriteRequest(long fileOffset, byte[] data, int off, int len)
+    {
+        return newRequest(PacketType.WRITE) //
+                .putUINT64(fileOffset) //
+                .putInt(len) //
+                .putRawBytes(data, off, len);
+    }
+    
     public int getOutgoingPacketOverhead()
     {
         return 1 + // packet type
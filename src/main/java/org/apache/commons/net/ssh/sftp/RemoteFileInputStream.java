@@ -20,10 +20,41 @@ package org.apache.commons.net.ssh.sftp;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Deque;
+import java.util.LinkedList;
 
+/**
+ * {@link InputStream} for a {@link RemoteFile}.
+ * <p>
+ * By default each read is a {@code READ} request that is waited upon, so throughput is bounded by the amount read at a
+ * time divided by the round trip time. With read-ahead, up to a given number of {@code READ} requests of
+ * {@link #READ_AHEAD_SIZE} bytes are kept outstanding ahead of the reader, and their responses are served in order.
+ * The number starts at one and grows with each full response, so that small files are not asked for far past their
+ * end. When a response is short, the rest of its range is asked for again; only once short responses keep coming at
+ * the same length, as when the server caps what it sends at a time, are later reads made that size.
+ */
 public class RemoteFileInputStream extends InputStream
 {
     
+    /** Number of bytes asked for by each {@code READ} when reading ahead, unless the server returns less */
+    public static final int READ_AHEAD_SIZE = 32 * 1024;
+    
+    private static final class UnconfirmedRead
+    {
+        
+        private final long offset;
+        private final int len;
+        private final Request req;
+        
+        private UnconfirmedRead(long offset, int len, Request req)
+        {
+            this.offset = offset;
+            this.len = len;
+            this.req = req;
+        }
+        
+    }
+    
     private final byte[] b = new byte[1];
     
     private final RemoteFile rf;
@@ -32,15 +63,55 @@ public class RemoteFileInputStream extends InputStream
     private long markPos;
     private long readLimit;
     
+    private final int maxUnconfirmedReads;
+    private int window = 1;
+    /** Offset beyond which nothing is requested when reading ahead */
+    private final long limit;
+    private final Deque<UnconfirmedRead> unconfirmed = new LinkedList<UnconfirmedRead>();
+    private int chunkSize = READ_AHEAD_SIZE;
+    /** Length of the last short response */
+    private int shortLen;
+    /** Offset of the next {@code READ} to send when reading ahead */
+    private long requestOffset;
+    private boolean eof;
+    
+    /** Response whose data is being served */
+    private Response current;
+    private int currentLeft;
+    
     public RemoteFileInputStream(RemoteFile rf)
     {
         this(rf, 0);
     }
     
     public RemoteFileInputStream(RemoteFile rf, int fileOffset)
+    {
+        this(rf, fileOffset, 0);
+    }
+    
+    /**
+     * @param rf
+     *            the file
+     * @param fileOffset
+     *            offset to start reading at
+     * @param maxUnconfirmedReads
+     *            the number of {@code READ} requests to keep outstanding, or {@code 0} to not read ahead
+     */
+    public RemoteFileInputStream(RemoteFile rf, long fileOffset, int maxUnconfirmedReads)
+    {
+        this(rf, fileOffset, Long.MAX_VALUE, maxUnconfirmedReads);
+    }
+    
+    /*
+     * For reading a segment of the file: when reading ahead, nothing at or beyond limit is requested, and the stream
+     * ends there.
+     */
+    RemoteFileInputStream(RemoteFile rf, long fileOffset, long limit, int maxUnconfirmedReads)
     {
         this.rf = rf;
-        this.fileOffset = fileOffset;
+        this.fileOffset = requestOffset = fileOffset;
+        this.limit = limit;
+        this.maxUnconfirmedReads = maxUnconfirmedReads;
     }
     
     @Override
@@ -60,12 +131,15 @@ public class RemoteFileInputStream extends InputStream
     public void reset() throws IOException
     {
         fileOffset = markPos;
+        discardReadAhead();
     }
     
     @Override
     public long skip(long n) throws IOException
     {
-        return (this.fileOffset = Math.min(fileOffset + n, rf.length()));
+        this.fileOffset = Math.min(fileOffset + n, rf.length());
+        discardReadAhead();
+        return fileOffset;
     }
     
     @Override
@@ -77,7 +151,18 @@ public class RemoteFileInputStream extends InputStream
     @Override
     public int read(byte[] into, int off, int len) throws IOException
     {
-        int read = rf.read(fileOffset, into, off, len);
+        int read;
+        if (maxUnconfirmedReads == 0)
+            read = rf.read(fileOffset, into, off, len);
+        else if (currentLeft == 0 && !fetch())
+            read = -1;
+        else
+        {
+            read = Math.min(len, currentLeft);
+            System.arraycopy(current.array(), current.rpos(), into, off, read);
+            current.rpos(current.rpos() + read);
+            currentLeft -= read;
+        }
         if (read != -1)
         {
             fileOffset += read;
@@ -87,4 +172,54 @@ public class RemoteFileInputStream extends InputStream
         return read;
     }
     
+    /*
+     * Make the next response in file order the current one, topping up the outstanding reads first. Returns false on
+     * EOF.
+     */
+    private boolean fetch() throws IOException
+    {
+        while (!eof && unconfirmed.size() < window && requestOffset < limit)
+        {
+            final int len = (int) Math.min(chunkSize, limit - requestOffset);
+            unconfirmed.add(new UnconfirmedRead(requestOffset, len, rf.asyncRead(requestOffset, len)));
+            requestOffset += len;
+        }
+        
+        final UnconfirmedRead read = unconfirmed.poll();
+        if (read == null)
+            return false;
+        final Response res = read.req.getFuture().get();
+        final int len = RemoteFile.readDataLength(res);
+        if (len <= 0)
+        {
+            // Everything before this offset has been served, so this is the end
+            eof = true;
+            unconfirmed.clear();
+            return false;
+        }
+        if (len < read.len)
+        {
+            // Fill the gap before the reads already sent; it is served next
+            final long gap = read.offset + len;
+            unconfirmed.addFirst(new UnconfirmedRead(gap, read.len - len, rf.asyncRead(gap, read.len - len)));
+            // Twice the same length looks like the most the server sends at a time
+            if (len == shortLen)
+                chunkSize = len;
+            shortLen = len;
+        } else if (window < maxUnconfirmedReads)
+            window++;
+        current = res;
+        currentLeft = len;
+        return true;
+    }
+    
+    private void discardReadAhead()
+    {
+        unconfirmed.clear();
+        current = null;
+        currentLeft = 0;
+        eof = false;
+        requestOffset = fileOffset;
+    }
+    
 }
@@ -19,26 +19,100 @@
 package org.apache.commons.net.ssh.sftp;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 
+import org.apache.commons.net.ssh.util.Future;
+
+/**
+ * {@link OutputStream} for a {@link RemoteFile}.
+ * <p>
+ * By default each write is a {@code WRITE} request whose status is waited upon. With write-behind, a write returns once
+ * its request has been sent and statuses are checked as they come in. The first failure is thrown from the next
+ * {@link #write}, {@link #flush()} or {@link #close()}; the latter two wait for all outstanding writes to be confirmed.
+ * <p>
+ * The number of writes kept outstanding adapts to the round trip time, so that there are enough to cover it at the
+ * rate data is being written, up to the given limit.
+ */
 public class RemoteFileOutputStream extends OutputStream
 {
     
+    /*
+     * Told of the outcome of a WRITE on the SFTP reader thread.
+     */
+    private final class Ack implements Future.Listener<Response, SFTPException>
+    {
+        
+        private final long sentAt;
+        
+        private Ack(long sentAt)
+        {
+            this.sentAt = sentAt;
+        }
+        
+        public void completed(Response res)
+        {
+            SFTPException error = null;
+            try
+            {
+                res.ensureStatusOK();
+            } catch (SFTPException e)
+            {
+                error = e;
+            }
+            confirmed(sentAt, error);
+        }
+        
+        public void failed(SFTPException error)
+        {
+            confirmed(sentAt, error);
+        }
+        
+    }
+    
     private final RemoteFile rf;
     
     private final byte[] b = new byte[1];
     
     private long fileOffset;
     
+    private final int maxUnconfirmedWrites;
+    
+    /** Writes sent but not yet confirmed */
+    private int unconfirmed;
+    /** The first write that failed */
+    private SFTPException error;
+    
+    /** Smoothed time from sending a write to its confirmation, in nanoseconds */
+    private long rtt;
+    /** Smoothed time taken by the writer between writes, including sending them, in nanoseconds */
+    private long interval;
+    /** When the last write returned */
+    private long lastWrite;
+    
     public RemoteFileOutputStream(RemoteFile rf)
     {
         this(rf, 0);
     }
     
     public RemoteFileOutputStream(RemoteFile rf, long fileOffset)
+    {
+        this(rf, fileOffset, 0);
+    }
+    
+    /**
+     * @param rf
+     *            the file
+     * @param fileOffset
+     *            offset to start writing at
+     * @param maxUnconfirmedWrites
+     *            the most {@code WRITE} requests to keep outstanding, or {@code 0} to wait for each
+     */
+    public RemoteFileOutputStream(RemoteFile rf, long fileOffset, int maxUnconfirmedWrites)
     {
         this.rf = rf;
         this.fileOffset = fileOffset;
+        this.maxUnconfirmedWrites = maxUnconfirmedWrites;
     }
     
     @Override
@@ -51,8 +125,108 @@ public class RemoteFileOutputStream extends OutputStream
     @Override
     public void write(byte[] buf, int off, int len) throws IOException
     {
-        rf.write(fileOffset, buf, off, len);
+        if (maxUnconfirmedWrites == 0)
+            rf.write(fileOffset, buf, off, len);
+        else
+        {
+            final long start = System.nanoTime();
+            synchronized (this)
+            {
+                while (unconfirmed >= getWindow())
+                    await();
+                checkError();
+                unconfirmed++;
+            }
+            final long sendStart = System.nanoTime();
+            final Request req;
+            try
+            {
+                req = rf.asyncWrite(fileOffset, buf, off, len);
+            } catch (IOException e)
+            {
+                synchronized (this)
+                {
+                    unconfirmed--;
+                }
+                throw e;
+            }
+            req.getFuture().addListener(new Ack(sendStart));
+            
+            final long now = System.nanoTime();
+            synchronized (this)
+            {
+                // Time spent waiting for confirmations does not count, or the window would shrink for being too small
+                final long sample = (lastWrite == 0 ? 0 : start - lastWrite) + now - sendStart;
+                interval = interval == 0 ? sample : (7 * interval + sample) / 8;
+                lastWrite = now;
+            }
+        }
         fileOffset += len;
     }
     
+    /**
+     * Wait for all outstanding writes to be confirmed.
+     * 
+     * @throws IOException
+     *             if a write failed, or the wait was interrupted
+     */
+    @Override
+    public synchronized void flush() throws IOException
+    {
+        while (unconfirmed > 0)
+            await();
+        checkError();
+    }
+    
+    @Override
+    public void close() throws IOException
+    {
+        flush();
+    }
+    
+    /**
+     * Returns the number of writes currently allowed to be outstanding.
+     */
+    public synchronized int getWindow()
+    {
+        if (rtt == 0 || interval == 0)
+            return maxUnconfirmedWrites;
+        final long needed = (rtt + interval - 1) / interval + 1;
+        return (int) Math.max(1, Math.min(needed, maxUnconfirmedWrites));
+    }
+    
+    private synchronized void confirmed(long sentAt, SFTPException e)
+    {
+        unconfirmed--;
+        if (error == null)
+            error = e;
+        final long sample = System.nanoTime() - sentAt;
+        rtt = rtt == 0 ? sample : (7 * rtt + sample) / 8;
+        notifyAll();
+    }
+    
+    /*
+     * Called with the lock held.
+     */
+    private void await() throws IOException
+    {
+        checkError();
+        try
+        {
+            wait();
+        } catch (InterruptedException ie)
+        {
+            throw (IOException) new InterruptedIOException().initCause(ie);
+        }
+    }
+    
+    /*
+     * Called with the lock held.
+     */
+    private void checkError() throws SFTPException
+    {
+        if (error != null)
+            throw error;
+    }
+    
 }
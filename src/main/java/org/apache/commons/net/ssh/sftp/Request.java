@@ -18,6 +18,7 @@
  */
 package org.apache.commons.net.ssh.sftp;
 
+import org.apache.commons.net.ssh.util.BufferPool;
 import org.apache.commons.net.ssh.util.Future;
 
 public class Request extends SFTPPacket<Request>
@@ -29,7 +30,15 @@ public class Request extends SFTPPacket<Request>
     
     public Request(PacketType type, long reqID)
     {
-        super();
+        this(type, reqID, null);
+    }
+    
+    /**
+     * Create a request whose storage is taken from {@code pool}, or allocated if it is {@code null}.
+     */
+    public Request(PacketType type, long reqID, BufferPool pool)
+    {
+        super(pool);
         this.reqID = reqID;
         this.type = type;
         future = new Future<Response, SFTPException>("sftp / " + reqID, SFTPException.chainer);
@@ -30,6 +30,7 @@ import org.apache.commons.net.ssh.connection.ConnectionException;
 import org.apache.commons.net.ssh.connection.Session.Subsystem;
 import org.apache.commons.net.ssh.sftp.Response.StatusCode;
 import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.BufferPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -94,7 +95,7 @@ public class SFTPEngine
     
     public synchronized Request newRequest(PacketType type)
     {
-        return new Request(type, reqID = reqID + 1 & 0xffffffffL);
+        return new Request(type, reqID = reqID + 1 & 0xffffffffL, BufferPool.getDefault());
     }
     
     private synchronized void transmit(SFTPPacket<Request> payload) throws IOException
@@ -108,12 +109,35 @@ public class SFTPEngine
         out.flush();
     }
     
+    /**
+     * Send {@code req} and wait for the response. The request's storage is {@link Request#release() released} once it
+     * has been sent, so its contents must not be used afterwards.
+     */
     public Response make(Request req) throws IOException
+    {
+        return send(req).getFuture().get();
+    }
+    
+    /**
+     * Send {@code req} without waiting for the response, which can be had from its {@link Request#getFuture() future}
+     * and errors out if it does not arrive within the timeout. Any number of requests may be outstanding at once. The
+     * request's storage is {@link Request#release() released} once it has been sent.
+     * 
+     * @return {@code req}
+     */
+    public Request send(Request req) throws IOException
     {
         reader.expectResponseTo(req);
         log.debug("Sending {}", req);
-        transmit(req);
-        return req.getFuture().get(timeout);
+        req.getFuture().expireAfter(timeout);
+        try
+        {
+            transmit(req);
+        } finally
+        {
+            req.release();
+        }
+        return req;
     }
     
     public RemoteFile open(String path, Set<OpenMode> modes, FileAttributes fa) throws IOException
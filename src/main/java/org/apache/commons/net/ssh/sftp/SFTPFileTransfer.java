@@ -43,6 +43,9 @@ public class SFTPFileTransfer extends AbstractFileTransfer implements FileTransf
     private volatile FileFilter uploadFilter = defaultLocalFilter;
     private volatile RemoteResourceFilter downloadFilter = defaultRemoteFilter;
     
+    private volatile int maxUnconfirmedReads = 64;
+    private volatile int maxUnconfirmedWrites = 64;
+    
     private static final FileFilter defaultLocalFilter = new FileFilter()
     {
         public boolean accept(File pathname)
@@ -97,6 +100,65 @@ public class SFTPFileTransfer extends AbstractFileTransfer implements FileTransf
         return downloadFilter;
     }
     
+    /**
+     * Returns the number of {@code READ} requests that are kept outstanding when downloading a file.
+     */
+    public int getMaxUnconfirmedReads()
+    {
+        return maxUnconfirmedReads;
+    }
+    
+    /**
+     * Returns the most {@code WRITE} requests that are kept outstanding when uploading a file.
+     */
+    public int getMaxUnconfirmedWrites()
+    {
+        return maxUnconfirmedWrites;
+    }
+    
+    /**
+     * Set the most {@code WRITE} requests that are kept outstanding when uploading a file, so that throughput is not
+     * bounded by the round trip time; {@code 0} waits for each write to be confirmed.
+     */
+    public void setMaxUnconfirmedWrites(int maxUnconfirmedWrites)
+    {
+        this.maxUnconfirmedWrites = maxUnconfirmedWrites;
+    }
+    
+    /**
+     * Set the number of {@code READ} requests that are kept outstanding when downloading a file, so that throughput is
+     * not bounded by the round trip time; {@code 0} reads one request at a time.
+     */
+    public void setMaxUnconfirmedReads(int maxUnconfirmedReads)
+    {
+        this.maxUnconfirmedReads = maxUnconfirmedReads;
+    }
+    
+    /*
+     * The steps of a transfer, for ParallelFileTransfer to spread over threads and engines. Directories are prepared
+     * before anything goes into them.
+     */
+    
+    File prepareDownloadDir(RemoteResourceInfo remote, File local) throws IOException
+    {
+        return new Downloader(getModeSetter(), getDownloadFilter()).prepareDir(remote, local);
+    }
+    
+    void downloadFile(RemoteResourceInfo remote, File local) throws IOException
+    {
+        new Downloader(getModeSetter(), getDownloadFilter()).downloadFile(remote, local);
+    }
+    
+    String prepareUploadDir(File local, String remote) throws IOException
+    {
+        return new Uploader(getModeGetter(), getUploadFilter()).prepareDir(local, remote);
+    }
+    
+    void uploadFile(File local, String remote) throws IOException
+    {
+        new Uploader(getModeGetter(), getUploadFilter()).uploadFile(local, remote);
+    }
+    
     private class Downloader
     {
         
@@ -125,19 +187,41 @@ public class SFTPFileTransfer extends AbstractFileTransfer implements FileTransf
             local = FileTransferUtil.getTargetFile(local, remote.getName());
             setAttributes(remote, local);
             RemoteFile rf = sftp.open(remote.getPath());
-            StreamCopier.copy(rf.getInputStream(), new FileOutputStream(local), sftp.getSubsystem()
-                    .getLocalMaxPacketSize(), false);
+            final FileOutputStream out = new FileOutputStream(local);
+            try
+            {
+                StreamCopier.copy(rf.getInputStream(maxUnconfirmedReads), out, RemoteFileInputStream.READ_AHEAD_SIZE,
+                        false);
+            } finally
+            {
+                IOUtils.closeQuietly(out);
+            }
             rf.close();
         }
         
-        private void downloadDir(RemoteResourceInfo remote, File local) throws IOException
+        private File prepareDir(RemoteResourceInfo remote, File local) throws IOException
         {
             local = FileTransferUtil.getTargetDirectory(local, remote.getName());
             setAttributes(remote, local);
-            RemoteDir rd = sftp.openDir(remote.getPath());
-            for (RemoteResourceInfo rri : rd.scan(filter))
-                download(rri, new File(local.getPath(), rri.getName()));
-            rd.close();
+            return local;
+        }
+        
+        private void downloadDir(RemoteResourceInfo remote, File local) throws IOException
+        {
+            final File adjusted = prepareDir(remote, local);
+            final RemoteDir rd = sftp.openDir(remote.getPath());
+            try
+            {
+                final RemoteDirIterator it = rd.iterator(filter);
+                while (it.hasNext())
+                {
+                    final RemoteResourceInfo rri = it.next();
+                    download(rri, new File(adjusted.getPath(), rri.getName()));
+                }
+            } finally
+            {
+                rd.close();
+            }
         }
         
         void download(RemoteResourceInfo remote, File local) throws IOException
@@ -257,14 +341,16 @@ public class SFTPFileTransfer extends AbstractFileTransfer implements FileTransf
             final String adjusted = prepareFile(local, remote);
             RemoteFile rf = sftp.open(adjusted, EnumSet.of(OpenMode.WRITE, OpenMode.CREAT, OpenMode.TRUNC),
                     getAttributes(local));
+            final FileInputStream in = new FileInputStream(local);
             try
             {
-                StreamCopier.copy(new FileInputStream(local), //
-                        rf.getOutputStream(), sftp.getSubsystem().getRemoteMaxPacketSize()
-                                - rf.getOutgoingPacketOverhead(), false);
+                final RemoteFileOutputStream out = rf.getOutputStream(maxUnconfirmedWrites);
+                StreamCopier.copy(in, out, sftp.getSubsystem().getRemoteMaxPacketSize()
+                        - rf.getOutgoingPacketOverhead(), false);
+                out.close(); // waits for the writes to be confirmed
             } finally
             {
-                IOUtils.closeQuietly(rf);
+                IOUtils.closeQuietly(in, rf);
             }
         }
         
@@ -19,6 +19,7 @@
 package org.apache.commons.net.ssh.sftp;
 
 import org.apache.commons.net.ssh.util.Buffer;
+import org.apache.commons.net.ssh.util.BufferPool;
 
 public class SFTPPacket<T extends SFTPPacket<T>> extends Buffer<T>
 {
@@ -33,6 +34,11 @@ public class SFTPPacket<T extends SFTPPacket<T>> extends Buffer<T>
         super(buf);
     }
     
+    public SFTPPacket(BufferPool pool)
+    {
+        super(DEFAULT_SIZE, pool);
+    }
+    
     public SFTPPacket(PacketType pt)
     {
         super();
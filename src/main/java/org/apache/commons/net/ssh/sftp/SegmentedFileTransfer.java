@@ -0,0 +1,383 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.sftp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.EnumSet;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.net.ssh.util.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Transfers a single large file in segments that go in parallel over several {@link SFTPEngine}s, for when one engine is
+ * held back by its channel's window or by encryption on one thread. The engines should be over separate channels,
+ * ideally on separate connections.
+ * <p>
+ * Each engine has a worker thread that opens the file and takes segments in turn, reading or writing them at their
+ * offsets in the local file. A segment that fails is retried on its own, by whichever worker takes it next, up to
+ * {@link #setMaxAttempts(int) a number of attempts}. A worker whose engine fails to reopen the file drops out, leaving
+ * the segments to the others.
+ */
+public class SegmentedFileTransfer
+{
+    
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+    
+    private static final class Segment
+    {
+        
+        private final long start;
+        private final long end;
+        
+        private int attempts;
+        
+        private Segment(long start, long end)
+        {
+            this.start = start;
+            this.end = end;
+        }
+        
+        @Override
+        public String toString()
+        {
+            return "[" + start + ", " + end + ")";
+        }
+        
+    }
+    
+    /*
+     * The segments of one file.
+     */
+    private final class Batch
+    {
+        
+        private final String path;
+        private final boolean download;
+        private final FileChannel local;
+        private final int maxAttempts = SegmentedFileTransfer.this.maxAttempts;
+        private final TransferStats stats = new TransferStats();
+        
+        private final Queue<Segment> pending = new LinkedList<Segment>();
+        private int inFlight;
+        private int workers;
+        private IOException error;
+        
+        private Batch(String path, boolean download, FileChannel local, long size)
+        {
+            this.path = path;
+            this.download = download;
+            this.local = local;
+            final long segSize = segmentSize;
+            for (long start = 0; start < size; start += segSize)
+            {
+                pending.add(new Segment(start, Math.min(size, start + segSize)));
+                stats.queued();
+            }
+        }
+        
+        /*
+         * Returns the next segment to transfer, waiting while there is none but some may yet fail; or null if there
+         * is nothing more to do.
+         */
+        private synchronized Segment take() throws InterruptedIOException
+        {
+            while (error == null && pending.isEmpty() && inFlight > 0)
+                try
+                {
+                    wait();
+                } catch (InterruptedException ie)
+                {
+                    throw (InterruptedIOException) new InterruptedIOException().initCause(ie);
+                }
+            if (error != null || pending.isEmpty())
+                return null;
+            inFlight++;
+            return pending.poll();
+        }
+        
+        private synchronized void done(Segment seg)
+        {
+            inFlight--;
+            stats.transferred(seg.end - seg.start);
+            notifyAll();
+        }
+        
+        private synchronized void failed(Segment seg, IOException e)
+        {
+            inFlight--;
+            if (++seg.attempts < maxAttempts)
+            {
+                log.warn("Segment {} of `{}` failed, will retry: {}", new Object[] { seg, path, e.toString() });
+                pending.add(seg);
+            } else if (error == null)
+                error = e;
+            notifyAll();
+        }
+        
+        private synchronized void workerExited(IOException e)
+        {
+            if (--workers == 0 && error == null && !pending.isEmpty())
+                error = e != null ? e : new SFTPException("No engine left to transfer `" + path + "`");
+            notifyAll();
+        }
+        
+        private synchronized void await() throws IOException
+        {
+            try
+            {
+                while (workers > 0)
+                    wait();
+            } catch (InterruptedException ie)
+            {
+                error = new InterruptedIOException();
+                notifyAll();
+                throw (IOException) new InterruptedIOException().initCause(ie);
+            } finally
+            {
+                stats.finished();
+            }
+            if (error != null)
+                throw error;
+            log.info("Transferred `{}`: {}", path, stats);
+        }
+        
+    }
+    
+    private final class Worker extends Thread
+    {
+        
+        private final Batch batch;
+        private final SFTPEngine engine;
+        
+        private Worker(Batch batch, SFTPEngine engine)
+        {
+            this.batch = batch;
+            this.engine = engine;
+            setName("sftp-segment-" + threadCount.incrementAndGet());
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run()
+        {
+            final Set<OpenMode> modes = batch.download ? EnumSet.of(OpenMode.READ) : EnumSet.of(OpenMode.WRITE);
+            RemoteFile rf = null;
+            IOException error = null;
+            try
+            {
+                Segment seg;
+                while ((seg = batch.take()) != null)
+                {
+                    try
+                    {
+                        if (rf == null)
+                            rf = engine.open(batch.path, modes);
+                    } catch (IOException e)
+                    {
+                        batch.failed(seg, e);
+                        throw e;
+                    }
+                    try
+                    {
+                        if (batch.download)
+                            download(rf, seg);
+                        else
+                            upload(rf, seg);
+                        batch.done(seg);
+                    } catch (IOException e)
+                    {
+                        batch.failed(seg, e);
+                        // Start afresh with the next segment, in case the handle is what went bad
+                        IOUtils.closeQuietly(rf);
+                        rf = null;
+                    }
+                }
+            } catch (IOException e)
+            {
+                log.warn("Giving up on `{}` over {}: {}", new Object[] { batch.path, engine, e.toString() });
+                error = e;
+            } finally
+            {
+                IOUtils.closeQuietly(rf);
+                batch.workerExited(error);
+            }
+        }
+        
+        private void download(RemoteFile rf, Segment seg) throws IOException
+        {
+            final RemoteFileInputStream in = new RemoteFileInputStream(rf, seg.start, seg.end, maxUnconfirmedRequests);
+            final byte[] buf = new byte[RemoteFileInputStream.READ_AHEAD_SIZE];
+            long pos = seg.start;
+            while (pos < seg.end)
+            {
+                final int len = in.read(buf, 0, (int) Math.min(buf.length, seg.end - pos));
+                if (len == -1)
+                    throw new SFTPException("Unexpected EOF at " + pos + " in `" + batch.path + "`");
+                final ByteBuffer data = ByteBuffer.wrap(buf, 0, len);
+                while (data.hasRemaining())
+                    pos += batch.local.write(data, pos);
+            }
+        }
+        
+        private void upload(RemoteFile rf, Segment seg) throws IOException
+        {
+            final RemoteFileOutputStream out = new RemoteFileOutputStream(rf, seg.start, maxUnconfirmedRequests);
+            final byte[] buf = new byte[engine.getSubsystem().getRemoteMaxPacketSize()
+                    - rf.getOutgoingPacketOverhead()];
+            final ByteBuffer data = ByteBuffer.wrap(buf);
+            long pos = seg.start;
+            while (pos < seg.end)
+            {
+                data.clear();
+                data.limit((int) Math.min(buf.length, seg.end - pos));
+                final int len = batch.local.read(data, pos);
+                if (len == -1)
+                    throw new IOException("Unexpected EOF at " + pos + " in local file");
+                out.write(buf, 0, len);
+                pos += len;
+            }
+            out.close(); // waits for the writes to be confirmed
+        }
+        
+    }
+    
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private final SFTPEngine[] engines;
+    
+    private volatile long segmentSize = DEFAULT_SEGMENT_SIZE;
+    private volatile int maxAttempts = 3;
+    private volatile int maxUnconfirmedRequests = 64;
+    
+    private volatile TransferStats stats;
+    
+    /**
+     * @param engines
+     *            the engines to spread segments over, at least one
+     */
+    public SegmentedFileTransfer(SFTPEngine... engines)
+    {
+        if (engines.length == 0)
+            throw new IllegalArgumentException("No SFTP engine given");
+        this.engines = engines;
+    }
+    
+    /**
+     * Download the remote file at {@code remotePath} to the local file {@code localPath}, which is created or
+     * overwritten.
+     */
+    public void download(String remotePath, String localPath) throws IOException
+    {
+        final long size = engines[0].stat(remotePath).getSize();
+        final RandomAccessFile raf = new RandomAccessFile(localPath, "rw");
+        try
+        {
+            raf.setLength(size);
+            run(new Batch(remotePath, true, raf.getChannel(), size));
+        } finally
+        {
+            raf.close();
+        }
+    }
+    
+    /**
+     * Upload the local file at {@code localPath} to the remote file {@code remotePath}, which is created or truncated.
+     */
+    public void upload(String localPath, String remotePath) throws IOException
+    {
+        final RandomAccessFile raf = new RandomAccessFile(localPath, "r");
+        try
+        {
+            final long size = raf.length();
+            engines[0].open(remotePath, EnumSet.of(OpenMode.WRITE, OpenMode.CREAT, OpenMode.TRUNC)).close();
+            run(new Batch(remotePath, false, raf.getChannel(), size));
+        } finally
+        {
+            raf.close();
+        }
+    }
+    
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+    
+    public int getMaxUnconfirmedRequests()
+    {
+        return maxUnconfirmedRequests;
+    }
+    
+    public long getSegmentSize()
+    {
+        return segmentSize;
+    }
+    
+    /**
+     * Returns the progress of the transfer under way, or of the last one; {@code null} if there has been none.
+     */
+    public TransferStats getStats()
+    {
+        return stats;
+    }
+    
+    /**
+     * Set the number of times a segment is tried before the transfer fails.
+     */
+    public void setMaxAttempts(int maxAttempts)
+    {
+        this.maxAttempts = maxAttempts;
+    }
+    
+    /**
+     * Set the number of {@code READ} or {@code WRITE} requests that each worker keeps outstanding.
+     */
+    public void setMaxUnconfirmedRequests(int maxUnconfirmedRequests)
+    {
+        this.maxUnconfirmedRequests = maxUnconfirmedRequests;
+    }
+    
+    /**
+     * Set the size of the segments a file is split into.
+     */
+    public void setSegmentSize(long segmentSize)
+    {
+        this.segmentSize = segmentSize;
+    }
+    
+    private void run(Batch batch) throws IOException
+    {
+        stats = batch.stats;
+        batch.workers = engines.length;
+        for (SFTPEngine engine : engines)
+            new Worker(batch, engine).start();
+        batch.await();
+    }
+    
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.sftp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a {@link ParallelFileTransfer} or a {@link SegmentedFileTransfer}, where each segment counts as a file.
+ * The values are updated by the threads doing the transfer and may be read from any thread.
+ */
+public final class TransferStats
+{
+    
+    private final long started = System.nanoTime();
+    private volatile long finished;
+    
+    private final AtomicLong filesQueued = new AtomicLong();
+    private final AtomicLong filesTransferred = new AtomicLong();
+    private final AtomicLong bytesTransferred = new AtomicLong();
+    
+    TransferStats()
+    {
+    }
+    
+    /**
+     * Returns the number of bytes in files that have been transferred.
+     */
+    public long getBytesTransferred()
+    {
+        return bytesTransferred.get();
+    }
+    
+    /**
+     * Returns the time in milliseconds since the transfer started, or that it took if it is over.
+     */
+    public long getElapsedTime()
+    {
+        final long end = finished;
+        return ((end == 0 ? System.nanoTime() : end) - started) / 1000000;
+    }
+    
+    /**
+     * Returns the number of files that have been found to transfer so far, including those that are done.
+     */
+    public long getFilesQueued()
+    {
+        return filesQueued.get();
+    }
+    
+    /**
+     * Returns the number of files that have been transferred.
+     */
+    public long getFilesTransferred()
+    {
+        return filesTransferred.get();
+    }
+    
+    /**
+     * Returns the average throughput so far in bytes per second.
+     */
+    public long getThroughput()
+    {
+        final long elapsed = getElapsedTime();
+        return elapsed == 0 ? 0 : getBytesTransferred() * 1000 / elapsed;
+    }
+    
+    /**
+     * Returns whether the transfer is over.
+     */
+    public boolean isFinished()
+    {
+        return finished != 0;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "[files=" + getFilesTransferred() + "/" + getFilesQueued() + ";bytes=" + getBytesTransferred()
+                + ";elapsed=" + getElapsedTime() + ";throughput=" + getThroughput() + "]";
+    }
+    
+    void queued()
+    {
+        filesQueued.incrementAndGet();
+    }
+    
+    void transferred(long bytes)
+    {
+        filesTransferred.incrementAndGet();
+        bytesTransferred.addAndGet(bytes);
+    }
+    
+    void finished()
+    {
+        finished = System.nanoTime();
+    }
+    
+}
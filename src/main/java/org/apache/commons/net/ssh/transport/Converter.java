@@ -18,6 +18,8 @@
  */
 package org.apache.commons.net.ssh.transport;
 
+import org.apache.commons.net.ssh.cipher.AuthenticatedCipher;
+import org.apache.commons.net.ssh.cipher.BlockCipher;
 import org.apache.commons.net.ssh.cipher.Cipher;
 import org.apache.commons.net.ssh.cipher.NoneCipher;
 import org.apache.commons.net.ssh.compression.Compression;
@@ -41,9 +43,14 @@ import org.apache.commons.net.ssh.mac.MAC;
 class Converter
 {
     
-    protected Cipher cipher = new NoneCipher();
+    /** The cipher unless it is an {@link AuthenticatedCipher}, in which case this is {@code null} */
+    protected BlockCipher cipher = new NoneCipher();
     protected MAC mac = null;
     protected Compression compression = null;
+    /** The cipher if it is an {@link AuthenticatedCipher}, in which case there is no {@link #mac} */
+    protected AuthenticatedCipher authCipher = null;
+    /** Whether {@link #mac} is encrypt-then-MAC, in which case the packet length is not encrypted */
+    protected boolean encryptThenMAC;
     
     protected int cipherSize = 8;
     protected long seq = -1;
@@ -56,10 +63,32 @@ class Converter
     
     void setAlgorithms(Cipher cipher, MAC mac, Compression compression)
     {
-        this.cipher = cipher;
-        this.mac = mac;
         this.compression = compression;
-        this.cipherSize = cipher.getIVSize();
+        if (cipher instanceof AuthenticatedCipher)
+        {
+            this.cipher = null;
+            this.authCipher = (AuthenticatedCipher) cipher;
+            this.mac = null;
+            this.cipherSize = authCipher.getPaddingBlockSize();
+        } else
+        {
+            this.cipher = (BlockCipher) cipher;
+            this.authCipher = null;
+            this.mac = mac;
+            this.cipherSize = cipher.getIVSize();
+        }
+        this.encryptThenMAC = this.mac != null && this.mac.isEncryptThenMAC();
+    }
+    
+    /**
+     * Returns the number of bytes following each packet for authenticating it.
+     */
+    int getAuthSize()
+    {
+        if (authCipher != null)
+            return authCipher.getAuthenticationTagSize();
+        else
+            return mac != null ? mac.getBlockSize() : 0;
     }
     
     void setAuthenticated()
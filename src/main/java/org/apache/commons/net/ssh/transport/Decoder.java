@@ -18,6 +18,11 @@
  */
 package org.apache.commons.net.ssh.transport;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
 import org.apache.commons.net.ssh.PacketHandler;
 import org.apache.commons.net.ssh.SSHException;
 import org.apache.commons.net.ssh.SSHPacket;
@@ -41,6 +46,8 @@ final class Decoder extends Converter
     
     /** What we pass decoded packets to */
     private final PacketHandler packetHandler;
+    /** Where we account for incoming bytes */
+    private final TransportStats stats;
     /** Buffer where as-yet undecoded data lives */
     private final SSHPacket inputBuffer = new SSHPacket();
     /** Used in case compression is active to store the uncompressed data */
@@ -57,9 +64,10 @@ final class Decoder extends Converter
      */
     private int needed = 8;
     
-    Decoder(PacketHandler packetHandler)
+    Decoder(PacketHandler packetHandler, TransportStats stats)
     {
         this.packetHandler = packetHandler;
+        this.stats = stats;
     }
     
     private void checkMAC(final byte[] data) throws TransportException
@@ -93,7 +101,7 @@ final class Decoder extends Converter
                 
                 assert inputBuffer.rpos() == 0 : "buffer cleared";
                 
-                need = cipherSize - inputBuffer.available();
+                need = getLengthSize() - inputBuffer.available();
                 if (need <= 0)
                     packetLength = decryptLength();
                 else
@@ -105,15 +113,26 @@ final class Decoder extends Converter
                 
                 assert inputBuffer.rpos() == 4 : "packet length read";
                 
-                need = packetLength + (mac != null ? mac.getBlockSize() : 0) - inputBuffer.available();
+                need = packetLength + getAuthSize() - inputBuffer.available();
                 if (need <= 0)
                 {
                     
-                    decryptPayload(inputBuffer.array());
-                    
                     seq = seq + 1 & 0xffffffffL;
                     
-                    checkMAC(inputBuffer.array());
+                    if (authCipher != null)
+                    {
+                        if (!authCipher.decrypt(seq, inputBuffer.array(), 0, packetLength + 4))
+                            throw new TransportException(DisconnectReason.MAC_ERROR, "MAC Error");
+                    } else if (encryptThenMAC)
+                    {
+                        // Reject a bad packet before spending any effort on decrypting it
+                        checkMAC(inputBuffer.array());
+                        cipher.update(inputBuffer.array(), 4, packetLength);
+                    } else
+                    {
+                        decryptPayload(inputBuffer.array());
+                        checkMAC(inputBuffer.array());
+                    }
                     
                     // Exclude the padding & MAC
                     inputBuffer.wpos(packetLength + 4 - inputBuffer.readByte());
@@ -127,7 +146,7 @@ final class Decoder extends Converter
                     
                     inputBuffer.clear();
                     packetLength = -1;
-                    need = cipherSize;
+                    need = getLengthSize();
                     
                 } else
                     // Need more data
@@ -143,6 +162,7 @@ final class Decoder extends Converter
         {
             uncompressBuffer.clear();
             compression.uncompress(inputBuffer, uncompressBuffer);
+            stats.copiedIn(uncompressBuffer.available());
             return uncompressBuffer;
         } else
             return inputBuffer;
@@ -150,9 +170,18 @@ final class Decoder extends Converter
     
     private int decryptLength() throws TransportException
     {
-        cipher.update(inputBuffer.array(), 0, cipherSize);
-        
-        final int len = inputBuffer.readInt(); // Read packet length
+        final int len;
+        if (authCipher != null)
+        {
+            len = authCipher.decryptLength(seq + 1 & 0xffffffffL, inputBuffer.array(), 0);
+            inputBuffer.rpos(4);
+        } else if (encryptThenMAC)
+            len = inputBuffer.readInt();
+        else
+        {
+            cipher.update(inputBuffer.array(), 0, cipherSize);
+            len = inputBuffer.readInt(); // Read packet length
+        }
         
         if (len < 5 || len > MAX_PACKET_LEN)
         { // Check packet length validity
@@ -163,6 +192,14 @@ final class Decoder extends Converter
         return len;
     }
     
+    /**
+     * Returns the number of bytes needed from the start of a packet in order to decrypt its length.
+     */
+    private int getLengthSize()
+    {
+        return authCipher != null || encryptThenMAC ? 4 : cipherSize;
+    }
+    
     private void decryptPayload(final byte[] data)
     {
         cipher.update(data, cipherSize, packetLength + 4 - cipherSize);
@@ -174,10 +211,69 @@ final class Decoder extends Converter
      * <p>
      * Returns the number of bytes expected in the next call in order to decode the packet length, and if the packet
      * length has already been decoded; to decode the payload. This number is accurate and should be taken to heart.
+     * <p>
+     * This costs a copy of the data; {@link #receive(InputStream)} and {@link #receive(ReadableByteChannel)} avoid it.
      */
     int received(byte[] b, int len) throws SSHException
     {
-        inputBuffer.putRawBytes(b, 0, len);
+        return received(b, 0, len);
+    }
+    
+    /**
+     * Adds {@code len} bytes from {@code b} starting at {@code off} to the decoder buffer.
+     * 
+     * @see #received(byte[], int)
+     */
+    int received(byte[] b, int off, int len) throws SSHException
+    {
+        inputBuffer.putRawBytes(b, off, len);
+        stats.copiedIn(len);
+        return advance(len);
+    }
+    
+    /**
+     * Reads at most as many bytes as are needed for the next decoding step from {@code in}, straight into the decoder
+     * buffer. Decrypting and checking the MAC happen in place, and the decoded packet is passed on to the
+     * {@link PacketHandler} without being copied.
+     * 
+     * @return the number of bytes read, or {@code -1} if the end of the stream has been reached
+     * @throws IOException
+     *             if there is an error reading from {@code in} or decoding
+     */
+    int receive(InputStream in) throws IOException
+    {
+        inputBuffer.ensureCapacity(needed);
+        final int n = in.read(inputBuffer.array(), inputBuffer.wpos(), needed);
+        if (n > 0)
+        {
+            inputBuffer.wpos(inputBuffer.wpos() + n);
+            advance(n);
+        }
+        return n;
+    }
+    
+    /**
+     * Like {@link #receive(InputStream)}, for a channel which may be in non-blocking mode.
+     * 
+     * @return the number of bytes read, possibly zero, or {@code -1} if the end of the stream has been reached
+     * @throws IOException
+     *             if there is an error reading from {@code chan} or decoding
+     */
+    int receive(ReadableByteChannel chan) throws IOException
+    {
+        inputBuffer.ensureCapacity(needed);
+        final int n = chan.read(ByteBuffer.wrap(inputBuffer.array(), inputBuffer.wpos(), needed));
+        if (n > 0)
+        {
+            inputBuffer.wpos(inputBuffer.wpos() + n);
+            advance(n);
+        }
+        return n;
+    }
+    
+    private int advance(int len) throws SSHException
+    {
+        stats.read(len);
         if (needed <= len)
             needed = decode();
         else
@@ -189,14 +285,10 @@ final class Decoder extends Converter
     void setAlgorithms(Cipher cipher, MAC mac, Compression compression)
     {
         super.setAlgorithms(cipher, mac, compression);
-        macResult = new byte[mac.getBlockSize()];
+        if (this.mac != null)
+            macResult = new byte[this.mac.getBlockSize()];
         if (compression != null)
             compression.init(Compression.Type.Inflater, -1);
     }
     
-    int getMaxPacketLength()
-    {
-        return MAX_PACKET_LEN;
-    }
-    
 }
\ No newline at end of file
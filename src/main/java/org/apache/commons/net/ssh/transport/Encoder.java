@@ -102,9 +102,19 @@ final class Encoder extends Converter
             final int payloadSize = buffer.available();
             
             // Compute padding length
-            int padLen = -(payloadSize + 5) & cipherSize - 1;
-            if (padLen < cipherSize)
-                padLen += cipherSize;
+            int padLen;
+            if (authCipher != null || encryptThenMAC)
+            {
+                // The length field is not part of what gets padded, and padding must be at least 4 bytes
+                padLen = -(payloadSize + 1) & cipherSize - 1;
+                if (padLen < 4)
+                    padLen += cipherSize;
+            } else
+            {
+                padLen = -(payloadSize + 5) & cipherSize - 1;
+                if (padLen < cipherSize)
+                    padLen += cipherSize;
+            }
             
             final int startOfPacket = buffer.rpos() - 5;
             final int packetLen = payloadSize + 1 + padLen;
@@ -121,9 +131,19 @@ final class Encoder extends Converter
             
             seq = seq + 1 & 0xffffffffL;
             
-            putMAC(buffer, startOfPacket, buffer.wpos());
-            
-            cipher.update(buffer.array(), startOfPacket, 4 + packetLen);
+            if (authCipher != null)
+            {
+                buffer.wpos(buffer.wpos() + authCipher.getAuthenticationTagSize());
+                authCipher.encrypt(seq, buffer.array(), startOfPacket, 4 + packetLen);
+            } else if (encryptThenMAC)
+            {
+                cipher.update(buffer.array(), startOfPacket + 4, packetLen);
+                putMAC(buffer, startOfPacket, buffer.wpos());
+            } else
+            {
+                putMAC(buffer, startOfPacket, buffer.wpos());
+                cipher.update(buffer.array(), startOfPacket, 4 + packetLen);
+            }
             
             buffer.rpos(startOfPacket); // Make ready-to-read
             
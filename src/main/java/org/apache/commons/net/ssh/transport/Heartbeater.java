@@ -1,36 +1,113 @@
 package org.apache.commons.net.ssh.transport;
 
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.util.BufferPool;
+import org.apache.commons.net.ssh.util.Scheduler;
 import org.apache.commons.net.ssh.util.Constants.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-final class Heartbeater extends Thread
+/**
+ * Sends {@code SSH_MSG_IGNORE} when nothing has been written for the heartbeat interval. Runs on the shared
+ * {@link Scheduler}, waking up once per interval of idleness rather than once per interval. The heartbeat itself is
+ * written on a worker thread, as writing may block.
+ */
+final class Heartbeater
 {
     
+    private final class Beat implements Runnable
+    {
+        
+        private final long intervalNanos;
+        
+        private ScheduledFuture<?> scheduled;
+        
+        /** Whether a heartbeat is being written by a worker thread */
+        private final AtomicBoolean sending = new AtomicBoolean();
+        
+        private Beat(int interval)
+        {
+            this.intervalNanos = interval * 1000000000L;
+        }
+        
+        public void run()
+        {
+            long delay = intervalNanos - (System.nanoTime() - trans.getStats().getLastWriteTime());
+            if (delay <= 0)
+            {
+                delay = intervalNanos;
+                if (!trans.isRunning())
+                    return;
+                // Writing may block, which the scheduler thread must not. Skip if the last heartbeat is still stuck.
+                if (sending.compareAndSet(false, true))
+                    Scheduler.execute(new Runnable()
+                    {
+                        public void run()
+                        {
+                            send();
+                        }
+                    });
+            }
+            schedule(delay);
+        }
+        
+        private void send()
+        {
+            final SSHPacket packet = new SSHPacket(Message.IGNORE, BufferPool.getDefault());
+            try
+            {
+                log.info("Sending heartbeat since {} seconds elapsed", intervalNanos / 1000000000L);
+                trans.write(packet);
+            } catch (TransportException e)
+            {
+                trans.die(e);
+            } finally
+            {
+                packet.release();
+                sending.set(false);
+            }
+        }
+        
+        private void schedule(long delay)
+        {
+            synchronized (Heartbeater.this)
+            {
+                if (beat == this)
+                    scheduled = Scheduler.schedule(this, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+        
+    }
+    
     private final Logger log = LoggerFactory.getLogger(getClass());
     
     private final TransportProtocol trans;
     
     private int interval;
     
-    private boolean started;
+    /** The currently scheduled beat, or {@code null} if heartbeats are off */
+    private Beat beat;
     
     Heartbeater(TransportProtocol trans)
     {
         this.trans = trans;
-        setName("heartbeater");
     }
     
     synchronized void setInterval(int interval)
     {
         this.interval = interval;
+        if (beat != null)
+            beat.scheduled.cancel(false);
         if (interval != 0)
         {
-            if (!started)
-                start();
-            notify();
-        }
+            beat = new Beat(interval);
+            beat.schedule(beat.intervalNanos);
+        } else
+            beat = null;
     }
     
     synchronized int getInterval()
@@ -38,37 +115,9 @@ final class Heartbeater extends Thread
         return interval;
     }
     
-    @Override
-    public void run()
+    void stop()
     {
-        try
-        {
-            while (!Thread.currentThread().isInterrupted())
-            {
-                int hi;
-                synchronized (this)
-                {
-                    while ((hi = interval) == 0)
-                        wait();
-                }
-                if (!started)
-                    started = true;
-                else if (trans.isRunning())
-                {
-                    log.info("Sending heartbeat since {} seconds elapsed", hi);
-                    trans.write(new SSHPacket(Message.IGNORE));
-                }
-                Thread.sleep(hi * 1000);
-            }
-        } catch (Exception e)
-        {
-            if (Thread.currentThread().isInterrupted())
-            {
-                // We are meant to shut up and draw to a close if interrupted
-            } else
-                trans.die(e);
-        }
-        
-        log.debug("Stopping");
+        setInterval(0);
     }
+    
 }
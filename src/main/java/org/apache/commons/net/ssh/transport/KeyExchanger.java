@@ -25,12 +25,14 @@ import java.util.LinkedList;
 import java.util.Queue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.apache.commons.net.ssh.Config;
 import org.apache.commons.net.ssh.ErrorNotifiable;
 import org.apache.commons.net.ssh.Factory;
 import org.apache.commons.net.ssh.HostKeyVerifier;
 import org.apache.commons.net.ssh.PacketHandler;
 import org.apache.commons.net.ssh.SSHException;
 import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.cipher.AuthenticatedCipher;
 import org.apache.commons.net.ssh.cipher.Cipher;
 import org.apache.commons.net.ssh.compression.Compression;
 import org.apache.commons.net.ssh.digest.Digest;
@@ -90,6 +92,16 @@ final class KeyExchanger implements PacketHandler, ErrorNotifiable
     
     private final Event<TransportException> done;
     
+    /** When the ongoing key exchange was started */
+    private volatile long kexStarted;
+    
+    /** When the last key exchange completed, and the total traffic by then */
+    private volatile long lastKexDone;
+    private volatile long bytesAtLastKex;
+    
+    /** Whether a key exchange has completed, readable without the lock that {@link #done} is guarded by */
+    private volatile boolean keysExchanged;
+    
     KeyExchanger(TransportProtocol trans)
     {
         this.transport = trans;
@@ -142,6 +154,25 @@ final class KeyExchanger implements PacketHandler, ErrorNotifiable
         return kexOngoing.get();
     }
     
+    /**
+     * Returns whether keys are due to be re-exchanged according to the rekey policy in the {@link Transport#getConfig()
+     * config}, i.e. whether enough data has been sent and received or enough time has passed since the last key
+     * exchange. Always {@code false} while key exchange is ongoing.
+     * <p>
+     * Takes no lock, as it is called for every packet received.
+     */
+    boolean isRekeyDue()
+    {
+        if (!keysExchanged || isKexOngoing())
+            return false;
+        final Config config = transport.getConfig();
+        final TransportStats stats = transport.getStats();
+        final long bytes = config.getRekeyBytes();
+        final long interval = config.getRekeyInterval();
+        return bytes > 0 && stats.getBytesWritten() + stats.getBytesRead() - bytesAtLastKex >= bytes
+                || interval > 0 && System.nanoTime() - lastKexDone >= interval * 1000000000L;
+    }
+    
     /**
      * Starts key exchange by sending a {@code SSH_MSG_KEXINIT} packet. Key exchange needs to be done once mandatorily
      * after initializing the {@link Transport} for it to be usable and may be initiated at any later point e.g. if
@@ -157,6 +188,7 @@ final class KeyExchanger implements PacketHandler, ErrorNotifiable
     {
         if (!kexOngoing.getAndSet(true))
         {
+            kexStarted = System.nanoTime();
             done.clear();
             sendKexInit();
         }
@@ -223,6 +255,11 @@ final class KeyExchanger implements PacketHandler, ErrorNotifiable
     
     private void setKexDone()
     {
+        final TransportStats stats = transport.getStats();
+        lastKexDone = System.nanoTime();
+        bytesAtLastKex = stats.getBytesWritten() + stats.getBytesRead();
+        stats.keysExchanged(lastKexDone - kexStarted);
+        keysExchanged = true;
         kexOngoing.set(false);
         kexInitSent.clear();
         done.set();
@@ -325,13 +362,22 @@ final class KeyExchanger implements PacketHandler, ErrorNotifiable
                 resizedKey(encryptionKey_S2C, cipher_S2C.getBlockSize(), hash, kex.getK(), kex.getH()), //
                 initialIV_S2C);
         
-        final MAC mac_C2S = Factory.Named.Util.create(transport.getConfig().getMACFactories(), negotiatedAlgs
-                .getClient2ServerMACAlgorithm());
-        mac_C2S.init(integrityKey_C2S);
+        // The negotiated MAC is not used with an authenticated cipher
+        MAC mac_C2S = null;
+        if (!(cipher_C2S instanceof AuthenticatedCipher))
+        {
+            mac_C2S = Factory.Named.Util.create(transport.getConfig().getMACFactories(), negotiatedAlgs
+                    .getClient2ServerMACAlgorithm());
+            mac_C2S.init(resizedKey(integrityKey_C2S, mac_C2S.getKeySize(), hash, kex.getK(), kex.getH()));
+        }
         
-        final MAC mac_S2C = Factory.Named.Util.create(transport.getConfig().getMACFactories(), //
-                negotiatedAlgs.getServer2ClientMACAlgorithm());
-        mac_S2C.init(integrityKey_S2C);
+        MAC mac_S2C = null;
+        if (!(cipher_S2C instanceof AuthenticatedCipher))
+        {
+            mac_S2C = Factory.Named.Util.create(transport.getConfig().getMACFactories(), //
+                    negotiatedAlgs.getServer2ClientMACAlgorithm());
+            mac_S2C.init(resizedKey(integrityKey_S2C, mac_S2C.getKeySize(), hash, kex.getK(), kex.getH()));
+        }
         
         final Compression compression_S2C = Factory.Named.Util.create(transport.getConfig().getCompressionFactories(),
                 negotiatedAlgs.getServer2ClientCompressionAlgorithm());
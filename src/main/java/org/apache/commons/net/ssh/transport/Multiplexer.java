@@ -0,0 +1,416 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.SocketFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Non-blocking I/O for many transports on a small, fixed number of threads.
+ * <p>
+ * By default each {@link TransportProtocol} has a dedicated thread blocking on its socket for incoming data. When a
+ * {@code Multiplexer} is {@link org.apache.commons.net.ssh.Config#setMultiplexer set} in the
+ * {@link org.apache.commons.net.ssh.Config Config}, transports are instead registered with one of this multiplexer's
+ * selector threads, which read incoming data into each transport's decoder and drain its outgoing data as the socket
+ * becomes writable. A single multiplexer may be shared by any number of clients.
+ * <p>
+ * This requires sockets that have an associated {@link SocketChannel}, such as those created by
+ * {@link #getSocketFactory()}.
+ * <p>
+ * Incoming packets are handled on the selector thread, so a handler that blocks holds up the other transports served
+ * by the same thread.
+ */
+public final class Multiplexer
+{
+    
+    /**
+     * A transport registered with a selector thread. Its {@code OutputStream} face queues outgoing data, which is
+     * written right away if the socket accepts it and otherwise drained by the selector thread.
+     */
+    final class Registration extends OutputStream
+    {
+        
+        private final TransportProtocol trans;
+        private final SocketChannel chan;
+        private final Loop loop;
+        
+        private SelectionKey key;
+        
+        /** Outgoing data that the socket did not yet accept */
+        private ByteBuffer pending = ByteBuffer.allocate(0);
+        
+        private volatile boolean active = true;
+        
+        private Registration(TransportProtocol trans, SocketChannel chan, Loop loop)
+        {
+            this.trans = trans;
+            this.chan = chan;
+            this.loop = loop;
+        }
+        
+        /**
+         * Stop serving this transport.
+         */
+        void cancel()
+        {
+            active = false;
+            synchronized (this)
+            {
+                notifyAll();
+            }
+            loop.post(this);
+        }
+        
+        boolean isActive()
+        {
+            return active;
+        }
+        
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+        
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException
+        {
+            ensureActive();
+            if (pending.remaining() > 0)
+                pending.compact();
+            else
+                pending.clear();
+            if (pending.remaining() < len)
+            {
+                final ByteBuffer bigger = ByteBuffer.allocate(pending.position() + len);
+                pending.flip();
+                bigger.put(pending);
+                pending = bigger;
+            }
+            pending.put(b, off, len);
+            pending.flip();
+        }
+        
+        /**
+         * Writes as much of the queued data as the socket will take without blocking. Whatever remains is left to
+         * the selector thread. Never blocks, as it is called with the transport's write lock held, which the selector
+         * thread may need for replying to incoming packets.
+         */
+        @Override
+        public synchronized void flush() throws IOException
+        {
+            ensureActive();
+            chan.write(pending);
+            if (pending.hasRemaining())
+                loop.post(this);
+        }
+        
+        /**
+         * If more than {@link Multiplexer#getMaxPending()} bytes are queued, waits for them to be drained. To be
+         * called before taking the transport's write lock, so that the selector thread is never held up behind a
+         * writer that is waiting. Likewise callers must not hold a lock that packet handlers take, such as a
+         * channel's monitor. Does not wait when called on a selector thread.
+         */
+        synchronized void awaitCapacity() throws IOException
+        {
+            if (Thread.currentThread() == loop)
+                return;
+            while (pending.remaining() > maxPending)
+            {
+                ensureActive();
+                try
+                {
+                    wait();
+                } catch (InterruptedException ie)
+                {
+                    throw (IOException) new InterruptedIOException().initCause(ie);
+                }
+            }
+        }
+        
+        private void ensureActive() throws TransportException
+        {
+            if (!active)
+                throw new TransportException("Transport no longer registered with multiplexer");
+        }
+        
+        /*
+         * Selector thread: socket readable.
+         */
+        private void read() throws IOException
+        {
+            final Decoder decoder = trans.getDecoder();
+            int n;
+            while ((n = decoder.receive(chan)) > 0)
+                ;
+            if (n == -1)
+                throw new TransportException("Broken transport; encountered EOF");
+        }
+        
+        /*
+         * Selector thread: socket writable, or interest in writability needs updating.
+         */
+        private synchronized void drain() throws IOException
+        {
+            if (pending.hasRemaining())
+                chan.write(pending);
+            if (pending.remaining() <= maxPending)
+                notifyAll();
+            if (key.isValid())
+                key.interestOps(pending.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                        : SelectionKey.OP_READ);
+        }
+        
+    }
+    
+    private final class Loop extends Thread
+    {
+        
+        private final Selector selector;
+        
+        /** Registrations whose interest set needs to be looked at by this thread */
+        private final Queue<Registration> updates = new ConcurrentLinkedQueue<Registration>();
+        
+        private Loop(int n) throws IOException
+        {
+            selector = Selector.open();
+            setName("multiplexer-" + n);
+            setDaemon(true);
+        }
+        
+        private void post(Registration reg)
+        {
+            updates.add(reg);
+            selector.wakeup();
+        }
+        
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (!isInterrupted())
+                {
+                    selector.select();
+                    processUpdates();
+                    final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext())
+                    {
+                        final SelectionKey key = it.next();
+                        it.remove();
+                        process(key);
+                    }
+                }
+            } catch (IOException e)
+            {
+                log.error("Selector failed, transports served by {} will stall: {}", getName(), e.toString());
+            } finally
+            {
+                for (SelectionKey key : selector.keys())
+                    ((Registration) key.attachment()).trans.die(new TransportException("Multiplexer stopped"));
+                try
+                {
+                    selector.close();
+                } catch (IOException ignored)
+                {
+                }
+            }
+            log.debug("Stopping");
+        }
+        
+        private void processUpdates()
+        {
+            Registration reg;
+            while ((reg = updates.poll()) != null)
+                try
+                {
+                    if (!reg.active)
+                    {
+                        if (reg.key != null)
+                            reg.key.cancel();
+                    } else if (reg.key == null)
+                        reg.key = reg.chan.register(selector, SelectionKey.OP_READ, reg);
+                    else
+                        reg.drain();
+                } catch (IOException e)
+                {
+                    fail(reg, e);
+                }
+        }
+        
+        private void process(SelectionKey key)
+        {
+            final Registration reg = (Registration) key.attachment();
+            try
+            {
+                if (key.isValid() && key.isWritable())
+                    reg.drain();
+                if (key.isValid() && key.isReadable())
+                    reg.read();
+            } catch (Exception e)
+            {
+                fail(reg, e);
+            }
+        }
+        
+        private void fail(Registration reg, Exception e)
+        {
+            if (reg.key != null)
+                reg.key.cancel();
+            if (reg.active && !(e instanceof ClosedChannelException))
+                reg.trans.die(e);
+            reg.active = false;
+        }
+        
+    }
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private final Loop[] loops;
+    
+    private final AtomicInteger next = new AtomicInteger();
+    
+    private volatile int maxPending = 1024 * 1024;
+    
+    private final SocketFactory socketFactory = new SocketFactory()
+    {
+        
+        @Override
+        public Socket createSocket() throws IOException
+        {
+            return SocketChannel.open().socket();
+        }
+        
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException
+        {
+            return SocketChannel.open(new InetSocketAddress(host, port)).socket();
+        }
+        
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+                throws IOException
+        {
+            final Socket sock = createSocket();
+            sock.bind(new InetSocketAddress(localAddress, localPort));
+            sock.connect(new InetSocketAddress(address, port));
+            return sock;
+        }
+        
+        @Override
+        public Socket createSocket(String host, int port) throws IOException
+        {
+            return SocketChannel.open(new InetSocketAddress(host, port)).socket();
+        }
+        
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException
+        {
+            return createSocket(InetAddress.getByName(host), port, localHost, localPort);
+        }
+        
+    };
+    
+    /**
+     * Create a multiplexer with {@code threads} selector threads, which are started right away.
+     * 
+     * @param threads
+     *            number of selector threads
+     * @throws IOException
+     *             if a selector could not be opened
+     */
+    public Multiplexer(int threads) throws IOException
+    {
+        loops = new Loop[threads];
+        for (int i = 0; i < threads; i++)
+            loops[i] = new Loop(i);
+        for (Loop loop : loops)
+            loop.start();
+    }
+    
+    /**
+     * Returns the number of bytes of outgoing data a transport may have queued before writers to it are made to wait.
+     */
+    public int getMaxPending()
+    {
+        return maxPending;
+    }
+    
+    /**
+     * Set the number of bytes of outgoing data a transport may have queued before writers to it are made to wait.
+     * 
+     * @param maxPending
+     *            limit in bytes
+     */
+    public void setMaxPending(int maxPending)
+    {
+        this.maxPending = maxPending;
+    }
+    
+    /**
+     * Returns a {@link SocketFactory} for sockets that can be served by this multiplexer.
+     */
+    public SocketFactory getSocketFactory()
+    {
+        return socketFactory;
+    }
+    
+    /**
+     * Stops the selector threads. Transports being served are told they died.
+     */
+    public void shutdown()
+    {
+        for (Loop loop : loops)
+        {
+            loop.interrupt();
+            loop.selector.wakeup();
+        }
+    }
+    
+    /**
+     * Registers {@code trans} which is connected over {@code chan}. The channel is put in non-blocking mode.
+     */
+    Registration register(TransportProtocol trans, SocketChannel chan) throws IOException
+    {
+        chan.configureBlocking(false);
+        final Loop loop = loops[(next.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+        final Registration reg = new Registration(trans, chan, loop);
+        loop.post(reg);
+        return reg;
+    }
+    
+}
@@ -29,18 +29,9 @@ final class Reader extends Thread
             final Decoder decoder = trans.getDecoder();
             final InputStream inp = trans.getConnInfo().getInputStream();
             
-            final byte[] recvbuf = new byte[decoder.getMaxPacketLength()];
-            
-            int needed = 1;
-            
             while (!curThread.isInterrupted())
-            {
-                int read = inp.read(recvbuf, 0, needed);
-                if (read == -1)
+                if (decoder.receive(inp) == -1)
                     throw new TransportException("Broken transport; encountered EOF");
-                else
-                    needed = decoder.received(recvbuf, read);
-            }
             
         } catch (Exception e)
         {
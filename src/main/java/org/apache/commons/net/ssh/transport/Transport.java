@@ -61,6 +61,11 @@ public interface Transport extends PacketHandler
      */
     Config getConfig();
     
+    /**
+     * Returns the {@link TransportStats counters} this transport maintains about its traffic.
+     */
+    TransportStats getStats();
+    
     /**
      * Returns the timeout that is currently set for blocking operations.
      */
@@ -152,15 +157,32 @@ public interface Transport extends PacketHandler
      * <p>
      * The {@code payload} {@link SSHPacket} should have 5 bytes free at the beginning to avoid a performance penalty
      * associated with making space for header bytes (packet length, padding length).
+     * <p>
+     * A packet that may not be sent while key exchange is ongoing is waited upon, except when written from the thread
+     * that handles incoming packets, in which case it is sent once key exchange completes.
      * 
      * @param payload
      *            the {@link SSHPacket} containing data to send
-     * @return sequence number of the sent packet
+     * @return sequence number of the sent packet, or {@code -1} if it is held back until key exchange completes
      * @throws TransportException
      *             if an error occured sending the packet
      */
     long write(SSHPacket payload) throws TransportException;
     
+    /**
+     * Write a packet over this transport as with {@link #write(SSHPacket)}, telling it whether another packet follows
+     * right away so that they may go out together.
+     * 
+     * @param payload
+     *            the {@link SSHPacket} containing data to send
+     * @param more
+     *            whether the caller writes another packet right after this one, which it then must
+     * @return sequence number of the sent packet, or {@code -1} if it is held back until key exchange completes
+     * @throws TransportException
+     *             if an error occured sending the packet
+     */
+    long write(SSHPacket payload, boolean more) throws TransportException;
+    
     /**
      * Returns whether this transport is active.
      * <p>
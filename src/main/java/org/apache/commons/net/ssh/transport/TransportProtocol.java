@@ -19,6 +19,8 @@
 package org.apache.commons.net.ssh.transport;
 
 import java.io.IOException;
+import java.util.LinkedList;
+import java.util.Queue;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.net.ssh.AbstractService;
@@ -29,6 +31,7 @@ import org.apache.commons.net.ssh.HostKeyVerifier;
 import org.apache.commons.net.ssh.SSHException;
 import org.apache.commons.net.ssh.SSHPacket;
 import org.apache.commons.net.ssh.Service;
+import org.apache.commons.net.ssh.util.BufferPool;
 import org.apache.commons.net.ssh.util.Event;
 import org.apache.commons.net.ssh.util.IOUtils;
 import org.apache.commons.net.ssh.util.Buffer.PlainBuffer;
@@ -63,6 +66,10 @@ public final class TransportProtocol implements Transport
     
     private final Heartbeater heartbeater;
     
+    private final TransportStats stats = new TransportStats();
+    
+    private final Writer writer = new Writer(stats);
+    
     private final Encoder encoder;
     
     private final Decoder decoder;
@@ -85,6 +92,9 @@ public final class TransportProtocol implements Transport
     
     private ConnInfo connInfo;
     
+    /** Set if I/O is being served by a {@link Multiplexer} rather than {@link #reader} */
+    private volatile Multiplexer.Registration registration;
+    
     /** Server version identification string */
     private String serverID;
     
@@ -93,13 +103,19 @@ public final class TransportProtocol implements Transport
     
     private final ReentrantLock writeLock = new ReentrantLock();
     
+    /** Thread that incoming packets are handled in, which must not wait for key exchange to complete */
+    private volatile Thread handler;
+    
+    /** Packets written by {@link #handler} during key exchange, guarded by {@link #writeLock} */
+    private final Queue<SSHPacket> deferred = new LinkedList<SSHPacket>();
+    
     public TransportProtocol(Config config)
     {
         this.config = config;
         this.reader = new Reader(this);
         this.heartbeater = new Heartbeater(this);
         this.encoder = new Encoder(config.getRandomFactory().create(), writeLock);
-        this.decoder = new Decoder(this);
+        this.decoder = new Decoder(this, stats);
         this.kexer = new KeyExchanger(this);
         clientID = "SSH-2.0-" + config.getVersion();
     }
@@ -121,12 +137,21 @@ public final class TransportProtocol implements Transport
             
             log.info("Server identity string: {}", serverID);
             
+            final Multiplexer mux = config.getMultiplexer();
+            if (mux != null && connInfo.getChannel() != null)
+            {
+                registration = mux.register(this, connInfo.getChannel());
+                writer.init(registration, config.getWriteThreshold(), config.getMaxWriteDelay());
+            } else
+                writer.init(connInfo.getOutputStream(), config.getWriteThreshold(), config.getMaxWriteDelay());
+            
         } catch (IOException e)
         {
             throw new TransportException(e);
         }
         
-        reader.start();
+        if (registration == null)
+            reader.start();
     }
     
     /**
@@ -233,6 +258,11 @@ public final class TransportProtocol implements Transport
         return config;
     }
     
+    public TransportStats getStats()
+    {
+        return stats;
+    }
+    
     public String getRemoteHost()
     {
         return connInfo.getRemoteHostname();
@@ -312,7 +342,14 @@ public final class TransportProtocol implements Transport
     {
         long seq = decoder.getSequenceNumber();
         log.info("Sending SSH_MSG_UNIMPLEMENTED for packet #{}", seq);
-        return write(new SSHPacket(Message.UNIMPLEMENTED).putInt(seq));
+        final SSHPacket packet = new SSHPacket(Message.UNIMPLEMENTED, BufferPool.getDefault());
+        try
+        {
+            return write(packet.putInt(seq));
+        } finally
+        {
+            packet.release();
+        }
     }
     
     public void join() throws TransportException
@@ -322,7 +359,7 @@ public final class TransportProtocol implements Transport
     
     public boolean isRunning()
     {
-        return reader.isAlive() && !close.isSet();
+        return (registration != null ? registration.isActive() : reader.isAlive()) && !close.isSet();
     }
     
     public void disconnect()
@@ -361,9 +398,33 @@ public final class TransportProtocol implements Transport
     
     public long write(SSHPacket payload) throws TransportException
     {
+        return write(payload, false);
+    }
+    
+    public long write(SSHPacket payload, boolean more) throws TransportException
+    {
+        final Multiplexer.Registration reg = registration;
+        if (reg != null)
+            try
+            {
+                // Wait out a backlog before taking the lock, which the selector thread may need
+                reg.awaitCapacity();
+            } catch (IOException e)
+            {
+                throw TransportException.chainer.chain(e);
+            }
+        
+        writer.announce();
         writeLock.lock();
         try
         {
+            writer.arrived();
+            
+            if (!kexer.isKexOngoing() && encoder.getSequenceNumber() == 0) // We get here every 2**32th packet
+            {
+                writer.flush();
+                kexer.startKex(false);
+            }
             
             if (kexer.isKexOngoing())
             {
@@ -372,19 +433,30 @@ public final class TransportProtocol implements Transport
                 if (!m.in(1, 49) || m == Message.SERVICE_REQUEST)
                 {
                     assert m != Message.KEXINIT;
+                    if (Thread.currentThread() == handler)
+                    {
+                        /*
+                         * Waiting here would keep the server's KEXINIT and NEWKEYS from being read, so hold on to a
+                         * copy until key exchange completes, as the caller may reuse the packet.
+                         */
+                        deferred.add(new SSHPacket(payload));
+                        return -1;
+                    }
+                    writer.flush(); // the lock is released while waiting
+                    final long start = System.nanoTime();
                     kexer.waitForDone();
+                    stats.stalled(System.nanoTime() - start);
                 }
-            } else if (encoder.getSequenceNumber() == 0) // We get here every 2**32th packet
-                kexer.startKex(true);
+            }
             
             final long seq = encoder.encode(payload);
-            try
-            {
-                connInfo.getOutputStream().write(payload.array(), payload.rpos(), payload.available());
-                connInfo.getOutputStream().flush();
-            } catch (IOException ioe)
+            writer.write(payload, more);
+            
+            if (kexer.isRekeyDue())
             {
-                throw new TransportException(ioe);
+                // Packets already written go out under the current keys; only later writers wait
+                log.info("Rekeying as per policy");
+                kexer.startKex(false);
             }
             
             return seq;
@@ -395,6 +467,27 @@ public final class TransportProtocol implements Transport
         }
     }
     
+    /*
+     * Write the packets that were held back while key exchange was ongoing, unless another one has started since.
+     */
+    private void writeDeferred() throws TransportException
+    {
+        writeLock.lock();
+        try
+        {
+            SSHPacket packet;
+            while (!kexer.isKexOngoing() && (packet = deferred.poll()) != null)
+            {
+                encoder.encode(packet);
+                writer.write(packet, !deferred.isEmpty());
+            }
+            writer.flush();
+        } finally
+        {
+            writeLock.unlock();
+        }
+    }
+    
     private void sendDisconnect(DisconnectReason reason, String message)
     {
         if (message == null)
@@ -426,14 +519,26 @@ public final class TransportProtocol implements Transport
     public void handle(Message msg, SSHPacket buf) throws SSHException
     {
         this.msg = msg;
+        handler = Thread.currentThread();
         
         log.trace("Received packet {}", msg);
         
         if (msg.geq(50)) // not a transport layer packet
+        {
             service.handle(msg, buf);
+            if (kexer.isRekeyDue())
+            {
+                log.info("Rekeying as per policy");
+                kexer.startKex(false);
+            }
+        }
         
         else if (msg.in(20, 21) || msg.in(30, 49)) // kex packet
+        {
             kexer.handle(msg, buf);
+            if (!kexer.isKexOngoing())
+                writeDeferred();
+        }
         
         else
             switch (msg)
@@ -515,8 +620,10 @@ public final class TransportProtocol implements Transport
     
     private void finishOff()
     {
+        if (registration != null)
+            registration.cancel();
         reader.interrupt();
-        heartbeater.interrupt();
+        heartbeater.stop();
         connInfo.shutdownIO();
     }
     
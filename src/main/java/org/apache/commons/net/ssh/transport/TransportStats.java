@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+/**
+ * Counters maintained by a {@link Transport} about its traffic. The values are updated by the transport and may be read
+ * from any thread.
+ */
+public final class TransportStats
+{
+    
+    private volatile long packets;
+    private volatile long bytes;
+    private volatile long flushes;
+    
+    private volatile long bytesRead;
+    private volatile long bytesCopiedIn;
+    
+    private volatile long kexCount;
+    private volatile long kexNanos;
+    private volatile long stallNanos;
+    
+    private volatile long lastWrite = System.nanoTime();
+    
+    TransportStats()
+    {
+    }
+    
+    /**
+     * Returns the number of bytes read from the underlying stream, i.e. before decoding.
+     */
+    public long getBytesRead()
+    {
+        return bytesRead;
+    }
+    
+    /**
+     * Returns the number of bytes of incoming data that were copied between buffers by the transport on their way to
+     * being handled, not counting the read from the underlying stream itself.
+     */
+    public long getBytesCopiedIn()
+    {
+        return bytesCopiedIn;
+    }
+    
+    /**
+     * Returns the average number of times each byte that was read got copied by the transport before being handled.
+     */
+    public double getCopiesPerByteRead()
+    {
+        final long r = bytesRead;
+        return r == 0 ? 0 : (double) bytesCopiedIn / r;
+    }
+    
+    /**
+     * Returns the number of completed key exchanges, including the initial one.
+     */
+    public long getKeyExchangeCount()
+    {
+        return kexCount;
+    }
+    
+    /**
+     * Returns the total time in milliseconds taken by key exchanges, from sending {@code SSH_MSG_KEXINIT} to receiving
+     * {@code SSH_MSG_NEWKEYS}.
+     */
+    public long getKeyExchangeTime()
+    {
+        return kexNanos / 1000000;
+    }
+    
+    /**
+     * Returns the total time in milliseconds that writers spent blocked while keys were being exchanged.
+     */
+    public long getWriteStallTime()
+    {
+        return stallNanos / 1000000;
+    }
+    
+    /**
+     * Returns the number of bytes written to the underlying stream, i.e. after encoding.
+     */
+    public long getBytesWritten()
+    {
+        return bytes;
+    }
+    
+    /**
+     * Returns the number of times the underlying stream has been flushed.
+     */
+    public long getFlushCount()
+    {
+        return flushes;
+    }
+    
+    /**
+     * Returns the number of packets that have been written.
+     */
+    public long getPacketsWritten()
+    {
+        return packets;
+    }
+    
+    /**
+     * Returns the average number of packets that went out with each flush of the underlying stream.
+     */
+    public double getPacketsPerFlush()
+    {
+        final long f = flushes;
+        return f == 0 ? 0 : (double) packets / f;
+    }
+    
+    /**
+     * Returns the {@link System#nanoTime()} at which a packet was last written.
+     */
+    long getLastWriteTime()
+    {
+        return lastWrite;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "[packets=" + packets + ";bytes=" + bytes + ";flushes=" + flushes + ";bytesRead=" + bytesRead
+                + ";bytesCopiedIn=" + bytesCopiedIn + ";kexCount=" + kexCount + ";kexTime=" + getKeyExchangeTime()
+                + ";writeStallTime=" + getWriteStallTime() + "]";
+    }
+    
+    // Only called with the transport's write lock held, so there is a single writer
+    
+    void wrote(int len)
+    {
+        packets++;
+        bytes += len;
+        lastWrite = System.nanoTime();
+    }
+    
+    void flushed()
+    {
+        flushes++;
+    }
+    
+    void stalled(long nanos)
+    {
+        stallNanos += nanos;
+    }
+    
+    // Only called by the thread feeding the decoder
+    
+    void read(int len)
+    {
+        bytesRead += len;
+    }
+    
+    void copiedIn(int len)
+    {
+        bytesCopiedIn += len;
+    }
+    
+    void keysExchanged(long nanos)
+    {
+        kexCount++;
+        kexNanos += nanos;
+    }
+    
+}
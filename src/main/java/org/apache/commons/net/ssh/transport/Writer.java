@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.net.ssh.SSHPacket;
+
+/**
+ * Writes encoded packets to the underlying stream, coalescing packets from concurrent writers so that they go out with
+ * fewer flushes.
+ * <p>
+ * Threads that intend to write {@link #announce() announce} themselves before contending for the write lock. A packet
+ * is held back only while another writer is known to be on its way, and the stream is flushed as soon as:
+ * <ul>
+ * <li>no other writer is waiting, i.e. the queue has drained</li>
+ * <li>the amount of buffered data reaches the flush threshold</li>
+ * <li>the oldest buffered packet has been held back for longer than the maximum delay</li>
+ * </ul>
+ * A lone writer, such as an interactive session, therefore never sees any added latency.
+ * <p>
+ * All methods except {@link #announce()} must be called with the transport's write lock held.
+ */
+final class Writer
+{
+    
+    private final TransportStats stats;
+    
+    /** Number of threads that have announced but not yet arrived */
+    private final AtomicInteger waiting = new AtomicInteger();
+    
+    private OutputStream out;
+    
+    private byte[] buf;
+    private int count;
+    
+    private long maxDelayNanos;
+    /** When the oldest packet currently in {@link #buf} was buffered */
+    private long heldSince;
+    
+    Writer(TransportStats stats)
+    {
+        this.stats = stats;
+    }
+    
+    void init(OutputStream out, int threshold, int maxDelay)
+    {
+        this.out = out;
+        this.buf = new byte[threshold];
+        this.maxDelayNanos = maxDelay * 1000000L;
+    }
+    
+    /**
+     * Called by a thread before it tries to acquire the write lock for writing a packet.
+     */
+    void announce()
+    {
+        waiting.incrementAndGet();
+    }
+    
+    /**
+     * Called by a thread that has {@link #announce() announced} itself once it holds the write lock.
+     */
+    void arrived()
+    {
+        waiting.decrementAndGet();
+    }
+    
+    /**
+     * Write an encoded {@code packet}, flushing if the coalescing policy says so.
+     * 
+     * @param packet
+     *            the packet, with its encoded bytes available for reading
+     * @param more
+     *            whether the writer has another packet to write right after this one, in which case it counts as
+     *            waiting
+     * @throws TransportException
+     *             if there is an error writing to the stream
+     */
+    void write(SSHPacket packet, boolean more) throws TransportException
+    {
+        final int len = packet.available();
+        final boolean drained = !more && waiting.get() == 0;
+        try
+        {
+            if (count > 0 && buf.length - count < len)
+                flushBuffer();
+            
+            if (count == 0 && (drained || len >= buf.length))
+            {
+                // Nothing else to coalesce with, avoid the copy
+                stats.wrote(len);
+                send(packet.array(), packet.rpos(), len);
+                return;
+            }
+            
+            if (count == 0)
+                heldSince = System.nanoTime();
+            System.arraycopy(packet.array(), packet.rpos(), buf, count, len);
+            count += len;
+            stats.wrote(len);
+            
+            if (drained || count == buf.length || System.nanoTime() - heldSince >= maxDelayNanos)
+                flushBuffer();
+            
+        } catch (IOException ioe)
+        {
+            throw new TransportException(ioe);
+        }
+    }
+    
+    /**
+     * Flush any packets that are being held back. This must be done before the write lock is released for any reason
+     * other than returning from a write, e.g. when waiting for key exchange to complete.
+     * 
+     * @throws TransportException
+     *             if there is an error writing to the stream
+     */
+    void flush() throws TransportException
+    {
+        if (count > 0)
+            try
+            {
+                flushBuffer();
+            } catch (IOException ioe)
+            {
+                throw new TransportException(ioe);
+            }
+    }
+    
+    private void flushBuffer() throws IOException
+    {
+        send(buf, 0, count);
+        count = 0;
+    }
+    
+    private void send(byte[] b, int off, int len) throws IOException
+    {
+        out.write(b, off, len);
+        out.flush();
+        stats.flushed();
+    }
+    
+}
@@ -76,10 +76,15 @@ public class Buffer<T extends Buffer<T>>
         return j;
     }
     
+    private static final byte[] RELEASED = new byte[0];
+    
     protected byte[] data;
     protected int rpos;
     protected int wpos;
     
+    /** The pool {@link #data} was taken from, if any */
+    private BufferPool pool;
+    
     /**
      * @see {@link #DEFAULT_SIZE}
      */
@@ -122,6 +127,21 @@ public class Buffer<T extends Buffer<T>>
         this(new byte[getNextPowerOf2(size)], false);
     }
     
+    /**
+     * Create a buffer whose storage is taken from {@code pool}. It should be {@link #release() released} once it is no
+     * longer needed.
+     * 
+     * @param size
+     *            initial capacity
+     * @param pool
+     *            the pool to take storage from, or {@code null} to allocate it
+     */
+    public Buffer(int size, BufferPool pool)
+    {
+        this(pool != null ? pool.take(size) : new byte[getNextPowerOf2(size)], false);
+        this.pool = pool;
+    }
+    
     public byte[] array()
     {
         return data;
@@ -141,6 +161,21 @@ public class Buffer<T extends Buffer<T>>
         wpos = 0;
     }
     
+    /**
+     * Gives this buffer's storage back to the pool it was taken from, if any. The buffer is left empty, and must not be
+     * used any more; in particular, arrays previously obtained via {@link #array()} are no longer its own.
+     */
+    public void release()
+    {
+        if (pool != null)
+        {
+            pool.give(data);
+            pool = null;
+            data = RELEASED;
+            rpos = wpos = 0;
+        }
+    }
+    
     public int rpos()
     {
         return rpos;
@@ -173,8 +208,10 @@ public class Buffer<T extends Buffer<T>>
         if (data.length - wpos < capacity)
         {
             int cw = wpos + capacity;
-            byte[] tmp = new byte[getNextPowerOf2(cw)];
+            byte[] tmp = pool != null ? pool.take(cw) : new byte[getNextPowerOf2(cw)];
             System.arraycopy(data, 0, tmp, 0, data.length);
+            if (pool != null)
+                pool.give(data);
             data = tmp;
         }
     }
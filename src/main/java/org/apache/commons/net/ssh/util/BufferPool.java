@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.util;
+
+/**
+ * A bounded pool of byte arrays for {@link Buffer buffers}, to cut down on the garbage produced by allocating a buffer
+ * for every packet.
+ * <p>
+ * Arrays come in power-of-2 sizes from {@link Buffer#DEFAULT_SIZE} up to {@link #MAX_POOLED_SIZE}. The pool is split
+ * into stripes picked by the calling thread, each holding at most a fixed number of arrays of every size, so that
+ * threads seldom contend and the memory held is bounded. Arrays of other sizes are simply allocated, and dropped when
+ * given back.
+ * <p>
+ * An array that has been {@link #give(byte[]) given} back must no longer be used by the giver.
+ * 
+ * @see Buffer#Buffer(int, BufferPool)
+ * @see Buffer#release()
+ */
+public final class BufferPool
+{
+    
+    private static final class Stripe
+    {
+        
+        private final byte[][][] arrays = new byte[CLASSES][][];
+        private final int[] counts = new int[CLASSES];
+        
+        private long taken;
+        private long reused;
+        
+        private Stripe(int perSize)
+        {
+            for (int i = 0; i < CLASSES; i++)
+                arrays[i] = new byte[perSize][];
+        }
+        
+    }
+    
+    /** The size of the largest arrays that are pooled (256 KiB) */
+    public static final int MAX_POOLED_SIZE = 256 * 1024;
+    
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(Buffer.DEFAULT_SIZE);
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_POOLED_SIZE) - MIN_SHIFT + 1;
+    
+    private static final BufferPool DEFAULT = new BufferPool(Runtime.getRuntime().availableProcessors(), 8);
+    
+    /**
+     * Returns the pool shared by default by all transports and channels.
+     */
+    public static BufferPool getDefault()
+    {
+        return DEFAULT;
+    }
+    
+    private final Stripe[] stripes;
+    
+    /**
+     * @param stripes
+     *            number of stripes
+     * @param perSize
+     *            number of arrays of each size a stripe may hold
+     */
+    public BufferPool(int stripes, int perSize)
+    {
+        this.stripes = new Stripe[Math.max(stripes, 1)];
+        for (int i = 0; i < this.stripes.length; i++)
+            this.stripes[i] = new Stripe(perSize);
+    }
+    
+    /**
+     * Take an array that can hold at least {@code size} bytes. Its length is a power of 2 and its contents are
+     * undefined.
+     * 
+     * @param size
+     *            the minimum length
+     * @return the array
+     */
+    public byte[] take(int size)
+    {
+        final int c = sizeClass(size);
+        if (c == -1)
+            return new byte[Buffer.getNextPowerOf2(size)];
+        final Stripe s = stripe();
+        synchronized (s)
+        {
+            s.taken++;
+            final int n = s.counts[c];
+            if (n > 0)
+            {
+                s.reused++;
+                final byte[] b = s.arrays[c][n - 1];
+                s.arrays[c][n - 1] = null;
+                s.counts[c] = n - 1;
+                return b;
+            }
+        }
+        return new byte[Buffer.DEFAULT_SIZE << c];
+    }
+    
+    /**
+     * Give back an array for reuse. It is dropped if it is not of a pooled size or the pool is full.
+     * 
+     * @param b
+     *            the array
+     */
+    public void give(byte[] b)
+    {
+        final int c = sizeClass(b.length);
+        if (c == -1 || b.length != Buffer.DEFAULT_SIZE << c)
+            return;
+        final Stripe s = stripe();
+        synchronized (s)
+        {
+            final int n = s.counts[c];
+            if (n < s.arrays[c].length)
+            {
+                s.arrays[c][n] = b;
+                s.counts[c] = n + 1;
+            }
+        }
+    }
+    
+    /**
+     * Returns the number of arrays that have been taken from this pool, excluding those of sizes that are not pooled.
+     */
+    public long getTakenCount()
+    {
+        long taken = 0;
+        for (Stripe s : stripes)
+            synchronized (s)
+            {
+                taken += s.taken;
+            }
+        return taken;
+    }
+    
+    /**
+     * Returns the number of arrays taken from this pool that were reused rather than allocated.
+     */
+    public long getReusedCount()
+    {
+        long reused = 0;
+        for (Stripe s : stripes)
+            synchronized (s)
+            {
+                reused += s.reused;
+            }
+        return reused;
+    }
+    
+    private Stripe stripe()
+    {
+        return stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+    }
+    
+    /*
+     * Index of the smallest pooled size holding size bytes, or -1 if there is none.
+     */
+    private static int sizeClass(int size)
+    {
+        if (size > MAX_POOLED_SIZE)
+            return -1;
+        if (size <= Buffer.DEFAULT_SIZE)
+            return 0;
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+    
+}
@@ -18,6 +18,9 @@
  */
 package org.apache.commons.net.ssh.util;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
@@ -33,6 +36,8 @@ import org.slf4j.LoggerFactory;
  * <p>
  * For atomic operations on a future - e.g. checking checking if a value is set and if it is not then setting it, i.e.
  * Compare-And-Set type operations - the associated lock for the future should be acquired while doing so.
+ * <p>
+ * Instead of waiting, one may also {@link #addListener(Listener) add a listener} to be told of the outcome.
  */
 public class Future<V, T extends Throwable> implements ErrorNotifiable
 {
@@ -45,6 +50,30 @@ public class Future<V, T extends Throwable> implements ErrorNotifiable
         }
     }
     
+    /**
+     * Told of the outcome of a future: either its value being set or an error.
+     */
+    public interface Listener<V, T extends Throwable>
+    {
+        
+        /**
+         * Called when the future's value is set.
+         * 
+         * @param val
+         *            the value
+         */
+        void completed(V val);
+        
+        /**
+         * Called when the future errors out.
+         * 
+         * @param error
+         *            the error that a waiter would have been thrown
+         */
+        void failed(T error);
+        
+    }
+    
     private final Logger log;
     
     private final FriendlyChainer<T> chainer;
@@ -54,6 +83,11 @@ public class Future<V, T extends Throwable> implements ErrorNotifiable
     private V val;
     private T pendingEx;
     
+    private ScheduledFuture<?> expiry;
+    
+    /** Listeners yet to be told of the outcome */
+    private List<Listener<V, T>> listeners;
+    
     /**
      * Creates this future with given {@code name} and exception {@code chainer}. Allocates a new
      * {@link java.util.concurrent.locks.Lock lock} object for this future.
@@ -86,6 +120,34 @@ public class Future<V, T extends Throwable> implements ErrorNotifiable
         this.cond = this.lock.newCondition();
     }
     
+    /**
+     * Have {@code listener} told of this future's outcome, once the value is set or an error occurs. If there already
+     * is an outcome, it is told right away. Otherwise it is called on the thread that sets the value or error, so it
+     * should not block. A listener is told of one outcome only, even if the future is later {@link #clear() cleared}
+     * and set again.
+     * 
+     * @param listener
+     *            the listener
+     */
+    public void addListener(Listener<V, T> listener)
+    {
+        lock();
+        try
+        {
+            if (val == null && pendingEx == null)
+            {
+                if (listeners == null)
+                    listeners = new ArrayList<Listener<V, T>>();
+                listeners.add(listener);
+                return;
+            }
+        } finally
+        {
+            unlock();
+        }
+        tell(listener);
+    }
+    
     /**
      * Clears this future by setting its value and queued exception to {@code null}.
      */
@@ -94,6 +156,7 @@ public class Future<V, T extends Throwable> implements ErrorNotifiable
         lock();
         try
         {
+            cancelExpiry();
             pendingEx = null;
             set(null);
         } finally
@@ -126,12 +189,72 @@ public class Future<V, T extends Throwable> implements ErrorNotifiable
         lock();
         try
         {
+            cancelExpiry();
             pendingEx = chainer.chain(throwable);
             cond.signalAll();
         } finally
         {
             unlock();
         }
+        tellListeners();
+    }
+    
+    /**
+     * Queues error that will be thrown in any waiting thread, unless this future already has a value or an error.
+     * Deciding and queueing are atomic, yet listeners are told after the lock is released, which is not the case when
+     * {@link #error(Throwable)} is called with the lock held. They are still told with it held if the caller holds it.
+     * 
+     * @param throwable
+     *            the error
+     * @return whether the error was queued
+     */
+    public boolean errorIfUnset(Throwable throwable)
+    {
+        lock();
+        try
+        {
+            if (val != null || pendingEx != null)
+                return false;
+            cancelExpiry();
+            pendingEx = chainer.chain(throwable);
+            cond.signalAll();
+        } finally
+        {
+            unlock();
+        }
+        tellListeners();
+        return true;
+    }
+    
+    /**
+     * Have this future error out unless its value is set within {@code timeout} seconds. The timeout is kept by the
+     * shared {@link Scheduler}, so threads waiting with {@link #get()} do not need to wake up to check on it, and a
+     * future that nobody waits on expires all the same.
+     * <p>
+     * This should not be used with a lock that may be held for long, since the scheduler thread acquires it.
+     * 
+     * @param timeout
+     *            timeout in seconds, or {@code 0} for none
+     */
+    public void expireAfter(int timeout)
+    {
+        if (timeout == 0)
+            return;
+        lock();
+        try
+        {
+            cancelExpiry();
+            expiry = Scheduler.schedule(new Runnable()
+            {
+                public void run()
+                {
+                    errorIfUnset(new FutureException("Timeout expired"));
+                }
+            }, timeout, TimeUnit.SECONDS);
+        } finally
+        {
+            unlock();
+        }
     }
     
     /**
@@ -254,12 +377,67 @@ public class Future<V, T extends Throwable> implements ErrorNotifiable
         try
         {
             log.debug("Setting to `{}`", val);
+            if (val != null)
+                cancelExpiry();
             this.val = val;
             cond.signalAll();
         } finally
         {
             unlock();
         }
+        tellListeners();
+    }
+    
+    private void tellListeners()
+    {
+        final List<Listener<V, T>> told;
+        lock();
+        try
+        {
+            if (listeners == null || val == null && pendingEx == null)
+                return;
+            told = listeners;
+            listeners = null;
+        } finally
+        {
+            unlock();
+        }
+        for (Listener<V, T> listener : told)
+            tell(listener);
+    }
+    
+    private void tell(Listener<V, T> listener)
+    {
+        V v;
+        T ex;
+        lock();
+        try
+        {
+            v = val;
+            ex = pendingEx;
+        } finally
+        {
+            unlock();
+        }
+        try
+        {
+            if (ex != null)
+                listener.failed(ex);
+            else
+                listener.completed(v);
+        } catch (RuntimeException e)
+        {
+            log.warn("Listener {} threw: {}", listener, e.toString());
+        }
+    }
+    
+    private void cancelExpiry()
+    {
+        if (expiry != null)
+        {
+            expiry.cancel(false);
+            expiry = null;
+        }
     }
     
     /**
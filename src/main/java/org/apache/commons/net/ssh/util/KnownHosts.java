@@ -24,17 +24,19 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.security.PublicKey;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
 import org.apache.commons.net.ssh.HostKeyVerifier;
 import org.apache.commons.net.ssh.SSHException;
 import org.apache.commons.net.ssh.SSHRuntimeException;
-import org.apache.commons.net.ssh.mac.HMACSHA1;
-import org.apache.commons.net.ssh.mac.MAC;
 import org.apache.commons.net.ssh.util.Buffer.PlainBuffer;
 import org.apache.commons.net.ssh.util.Constants.KeyType;
 import org.slf4j.Logger;
@@ -64,8 +66,6 @@ public class KnownHosts implements HostKeyVerifier
         private String sKey;
         private PublicKey key;
         
-        private final MAC sha1 = new HMACSHA1();
-        
         /**
          * Construct an entry from the hostname and public key
          */
@@ -121,9 +121,16 @@ public class KnownHosts implements HostKeyVerifier
                 }
                 if (salt.length != 20)
                     return false;
-                sha1.init(salt);
-                if (BufferUtils.equals(host, sha1.doFinal(hostname.getBytes())))
-                    return true;
+                try
+                {
+                    final Mac sha1 = SecurityUtils.getThreadLocalMAC("HmacSHA1");
+                    sha1.init(new SecretKeySpec(salt, "HmacSHA1"));
+                    if (BufferUtils.equals(host, sha1.doFinal(hostname.getBytes())))
+                        return true;
+                } catch (GeneralSecurityException e)
+                {
+                    throw new SSHRuntimeException(e);
+                }
             } else
                 // unhashed; possibly comma-delim'ed
                 for (String host : hosts)
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A process-wide timer that drives periodic and delayed work for all connections, such as heartbeats and timeouts, so
+ * that idle connections do not each need a thread of their own.
+ * <p>
+ * Tasks run on a single daemon thread and must not block; a task that does holds up every other task. Work that may
+ * block, such as writing to a connection, is to be handed off with {@link #execute(Runnable)}. Exceptions thrown by a
+ * task are logged.
+ */
+public final class Scheduler
+{
+    
+    private static class Task implements Runnable
+    {
+        
+        private final Runnable task;
+        
+        private Task(Runnable task)
+        {
+            this.task = task;
+        }
+        
+        public void run()
+        {
+            try
+            {
+                task.run();
+            } catch (RuntimeException e)
+            {
+                LOG.error("Scheduled task {} failed: {}", task, e.toString());
+            }
+        }
+        
+    }
+    
+    private static final Logger LOG = LoggerFactory.getLogger(Scheduler.class);
+    
+    private static final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+    {
+        public Thread newThread(Runnable r)
+        {
+            final Thread t = new Thread(r, "ssh-scheduler");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    
+    private static final AtomicInteger workerCount = new AtomicInteger();
+    
+    private static final ExecutorService workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    final Thread t = new Thread(r, "ssh-worker-" + workerCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+    
+    static
+    {
+        // Timeouts mostly get cancelled, don't let them pile up in the queue
+        executor.setRemoveOnCancelPolicy(true);
+    }
+    
+    private Scheduler()
+    {
+    }
+    
+    /**
+     * Run {@code task} once after {@code delay}.
+     * 
+     * @param task
+     *            the task, which must not block
+     * @param delay
+     *            the delay
+     * @param unit
+     *            unit of {@code delay}
+     * @return a handle for cancelling the task
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit)
+    {
+        return executor.schedule(new Task(task), delay, unit);
+    }
+    
+    /**
+     * Run {@code task}, which may block, on a pooled worker thread. Threads are started as needed and stop after a
+     * minute of idleness.
+     * 
+     * @param task
+     *            the task
+     */
+    public static void execute(Runnable task)
+    {
+        workers.execute(new Task(task));
+    }
+    
+}
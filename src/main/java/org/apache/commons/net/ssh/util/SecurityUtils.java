@@ -28,8 +28,13 @@ import java.security.KeyPairGenerator;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
+import java.security.Provider;
 import java.security.PublicKey;
+import java.security.Security;
 import java.security.Signature;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyAgreement;
@@ -45,6 +50,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Static utility methods relating to security facilities.
+ * <p>
+ * Lookups do not contend on a lock once the security provider has been registered. The configured provider is
+ * resolved by name once and cached, and {@link #getThreadLocalMAC(String)} and
+ * {@link #getThreadLocalMessageDigest(String)} hand out instances that are reused by the calling thread for
+ * short-lived computations.
  */
 public class SecurityUtils
 {
@@ -66,6 +76,16 @@ public class SecurityUtils
         }
     }
     
+    /**
+     * Instances reused by one thread, discarded when the provider configuration changes.
+     */
+    private static class ThreadCache extends HashMap<String, Object>
+    {
+        private static final long serialVersionUID = 1L;
+        
+        private int generation = SecurityUtils.generation;
+    }
+    
     private static final Logger LOG = LoggerFactory.getLogger(SecurityUtils.class);
     
     /**
@@ -76,11 +96,30 @@ public class SecurityUtils
     /*
      * Security provider identifier. null = default JCE
      */
-    private static String securityProvider = null;
+    private static volatile String securityProvider = null;
     
     // relate to BC registration
     private static Boolean registerBouncyCastle;
-    private static boolean registrationDone;
+    private static volatile boolean registrationDone;
+    
+    /*
+     * Providers by name, e.g. "BC"
+     */
+    private static final ConcurrentMap<String, Provider> providers = new ConcurrentHashMap<String, Provider>();
+    
+    /*
+     * Bumped whenever the provider configuration changes, to invalidate thread caches
+     */
+    private static volatile int generation;
+    
+    private static final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<ThreadCache>()
+    {
+        @Override
+        protected ThreadCache initialValue()
+        {
+            return new ThreadCache();
+        }
+    };
     
     /**
      * Attempts to detect how a key file is encoded.
@@ -119,14 +158,14 @@ public class SecurityUtils
      * @throws NoSuchPaddingException
      * @throws NoSuchProviderException
      */
-    public static synchronized Cipher getCipher(String transformation) throws NoSuchAlgorithmException,
-            NoSuchPaddingException, NoSuchProviderException
+    public static Cipher getCipher(String transformation) throws NoSuchAlgorithmException, NoSuchPaddingException,
+            NoSuchProviderException
     {
-        register();
-        if (getSecurityProvider() == null)
+        final String provider = getSecurityProvider();
+        if (provider == null)
             return Cipher.getInstance(transformation);
         else
-            return Cipher.getInstance(transformation, getSecurityProvider());
+            return Cipher.getInstance(transformation, getProvider(provider));
     }
     
     /**
@@ -143,7 +182,7 @@ public class SecurityUtils
         MessageDigest md5 = null;
         try
         {
-            md5 = getMessageDigest("MD5");
+            md5 = getThreadLocalMessageDigest("MD5");
         } catch (GeneralSecurityException e)
         {
             throw new SSHRuntimeException(e);
@@ -165,14 +204,14 @@ public class SecurityUtils
      * @throws NoSuchAlgorithmException
      * @throws NoSuchProviderException
      */
-    public static synchronized KeyAgreement getKeyAgreement(String algorithm) throws NoSuchAlgorithmException,
+    public static KeyAgreement getKeyAgreement(String algorithm) throws NoSuchAlgorithmException,
             NoSuchProviderException
     {
-        register();
-        if (getSecurityProvider() == null)
+        final String provider = getSecurityProvider();
+        if (provider == null)
             return KeyAgreement.getInstance(algorithm);
         else
-            return KeyAgreement.getInstance(algorithm, getSecurityProvider());
+            return KeyAgreement.getInstance(algorithm, getProvider(provider));
     }
     
     /**
@@ -184,14 +223,13 @@ public class SecurityUtils
      * @throws NoSuchAlgorithmException
      * @throws NoSuchProviderException
      */
-    public static synchronized KeyFactory getKeyFactory(String algorithm) throws NoSuchAlgorithmException,
-            NoSuchProviderException
+    public static KeyFactory getKeyFactory(String algorithm) throws NoSuchAlgorithmException, NoSuchProviderException
     {
-        register();
-        if (getSecurityProvider() == null)
+        final String provider = getSecurityProvider();
+        if (provider == null)
             return KeyFactory.getInstance(algorithm);
         else
-            return KeyFactory.getInstance(algorithm, getSecurityProvider());
+            return KeyFactory.getInstance(algorithm, getProvider(provider));
     }
     
     /**
@@ -203,14 +241,14 @@ public class SecurityUtils
      * @throws NoSuchAlgorithmException
      * @throws NoSuchProviderException
      */
-    public static synchronized KeyPairGenerator getKeyPairGenerator(String algorithm) throws NoSuchAlgorithmException,
+    public static KeyPairGenerator getKeyPairGenerator(String algorithm) throws NoSuchAlgorithmException,
             NoSuchProviderException
     {
-        register();
-        if (getSecurityProvider() == null)
+        final String provider = getSecurityProvider();
+        if (provider == null)
             return KeyPairGenerator.getInstance(algorithm);
         else
-            return KeyPairGenerator.getInstance(algorithm, getSecurityProvider());
+            return KeyPairGenerator.getInstance(algorithm, getProvider(provider));
     }
     
     /**
@@ -222,13 +260,13 @@ public class SecurityUtils
      * @throws NoSuchAlgorithmException
      * @throws NoSuchProviderException
      */
-    public static synchronized Mac getMAC(String algorithm) throws NoSuchAlgorithmException, NoSuchProviderException
+    public static Mac getMAC(String algorithm) throws NoSuchAlgorithmException, NoSuchProviderException
     {
-        register();
-        if (getSecurityProvider() == null)
+        final String provider = getSecurityProvider();
+        if (provider == null)
             return Mac.getInstance(algorithm);
         else
-            return Mac.getInstance(algorithm, getSecurityProvider());
+            return Mac.getInstance(algorithm, getProvider(provider));
     }
     
     /**
@@ -240,14 +278,14 @@ public class SecurityUtils
      * @throws NoSuchAlgorithmException
      * @throws NoSuchProviderException
      */
-    public static synchronized MessageDigest getMessageDigest(String algorithm) throws NoSuchAlgorithmException,
+    public static MessageDigest getMessageDigest(String algorithm) throws NoSuchAlgorithmException,
             NoSuchProviderException
     {
-        register();
-        if (getSecurityProvider() == null)
+        final String provider = getSecurityProvider();
+        if (provider == null)
             return MessageDigest.getInstance(algorithm);
         else
-            return MessageDigest.getInstance(algorithm, getSecurityProvider());
+            return MessageDigest.getInstance(algorithm, getProvider(provider));
     }
     
     /**
@@ -255,7 +293,7 @@ public class SecurityUtils
      * 
      * @return JCE provider identifier
      */
-    public static synchronized String getSecurityProvider()
+    public static String getSecurityProvider()
     {
         register();
         return securityProvider;
@@ -269,14 +307,61 @@ public class SecurityUtils
      * @throws NoSuchAlgorithmException
      * @throws NoSuchProviderException
      */
-    public static synchronized Signature getSignature(String algorithm) throws NoSuchAlgorithmException,
-            NoSuchProviderException
+    public static Signature getSignature(String algorithm) throws NoSuchAlgorithmException, NoSuchProviderException
     {
-        register();
-        if (getSecurityProvider() == null)
+        final String provider = getSecurityProvider();
+        if (provider == null)
             return Signature.getInstance(algorithm);
         else
-            return Signature.getInstance(algorithm, getSecurityProvider());
+            return Signature.getInstance(algorithm, getProvider(provider));
+    }
+    
+    /**
+     * Returns an instance of {@link Mac} with the given algorithm that is reused by the calling thread. It must be
+     * initialized before each use, and not be held on to once the computation is done or passed to another thread.
+     * 
+     * @param algorithm
+     *            MAC algorithm
+     * @return the calling thread's instance
+     * @throws NoSuchAlgorithmException
+     * @throws NoSuchProviderException
+     */
+    public static Mac getThreadLocalMAC(String algorithm) throws NoSuchAlgorithmException, NoSuchProviderException
+    {
+        final ThreadCache cache = getThreadCache();
+        final String key = "Mac." + algorithm;
+        Mac mac = (Mac) cache.get(key);
+        if (mac == null)
+        {
+            mac = getMAC(algorithm);
+            cache.put(key, mac);
+        }
+        return mac;
+    }
+    
+    /**
+     * Returns an instance of {@link MessageDigest} with the given algorithm that is reused by the calling thread. It is
+     * reset, and must not be held on to once the computation is done or passed to another thread.
+     * 
+     * @param algorithm
+     *            MessageDigest algorithm name
+     * @return the calling thread's instance
+     * @throws NoSuchAlgorithmException
+     * @throws NoSuchProviderException
+     */
+    public static MessageDigest getThreadLocalMessageDigest(String algorithm) throws NoSuchAlgorithmException,
+            NoSuchProviderException
+    {
+        final ThreadCache cache = getThreadCache();
+        final String key = "MessageDigest." + algorithm;
+        MessageDigest md = (MessageDigest) cache.get(key);
+        if (md == null)
+        {
+            md = getMessageDigest(algorithm);
+            cache.put(key, md);
+        } else
+            md.reset();
+        return md;
     }
     
     /**
@@ -285,7 +370,7 @@ public class SecurityUtils
      * 
      * @return whether BC registered
      */
-    public static synchronized boolean isBouncyCastleRegistered()
+    public static boolean isBouncyCastleRegistered()
     {
         register();
         return BOUNCY_CASTLE.equals(securityProvider);
@@ -294,7 +379,7 @@ public class SecurityUtils
     public static synchronized void setRegisterBouncyCastle(boolean registerBouncyCastle)
     {
         SecurityUtils.registerBouncyCastle = registerBouncyCastle;
-        registrationDone = false;
+        invalidate();
     }
     
     /**
@@ -306,10 +391,51 @@ public class SecurityUtils
     public static synchronized void setSecurityProvider(String securityProvider)
     {
         SecurityUtils.securityProvider = securityProvider;
+        invalidate();
+    }
+    
+    private static ThreadCache getThreadCache()
+    {
+        ThreadCache cache = threadCache.get();
+        if (cache.generation != generation)
+        {
+            cache = new ThreadCache();
+            threadCache.set(cache);
+        }
+        return cache;
+    }
+    
+    /*
+     * Returns the provider named {@code name}, looking it up only the first time.
+     */
+    private static Provider getProvider(String name) throws NoSuchProviderException
+    {
+        Provider provider = providers.get(name);
+        if (provider == null)
+        {
+            provider = Security.getProvider(name);
+            if (provider == null)
+                throw new NoSuchProviderException("No such provider: " + name);
+            providers.put(name, provider);
+        }
+        return provider;
+    }
+    
+    private static void invalidate()
+    {
         registrationDone = false;
+        providers.clear();
+        generation++;
     }
     
     private static void register()
+    {
+        // Only take the lock until registration is done
+        if (!registrationDone)
+            doRegister();
+    }
+    
+    private static synchronized void doRegister()
     {
         if (!registrationDone)
         {
@@ -23,6 +23,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import org.apache.commons.net.ssh.connection.ChannelInputStream;
+import org.apache.commons.net.ssh.connection.ChannelOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,21 +51,32 @@ public class StreamCopier extends Thread
     
     public static void copy(InputStream in, OutputStream out, int bufSize, boolean flush) throws IOException
     {
-        byte[] buf = new byte[bufSize];
-        int len;
         long count = 0;
         
         final long startTime = System.currentTimeMillis();
         
-        while ((len = in.read(buf)) != -1)
+        // Channel streams can skip the intermediate buffer
+        if (out instanceof ChannelOutputStream)
+            count = ((ChannelOutputStream) out).transferFrom(in, flush);
+        else if (in instanceof ChannelInputStream)
         {
-            out.write(buf, 0, len);
-            count += len;
-            if (flush)
+            count = ((ChannelInputStream) in).transferTo(out, flush);
+            if (!flush)
+                out.flush();
+        } else
+        {
+            byte[] buf = new byte[bufSize];
+            int len;
+            while ((len = in.read(buf)) != -1)
+            {
+                out.write(buf, 0, len);
+                count += len;
+                if (flush)
+                    out.flush();
+            }
+            if (!flush)
                 out.flush();
         }
-        if (!flush)
-            out.flush();
         
         final float sizeKiB = count / 1024;
         final double timeSeconds = (System.currentTimeMillis() - startTime) / 1000.0;
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+
+import org.apache.commons.net.ssh.Factory.Named;
+import org.apache.commons.net.ssh.kex.KeyExchange;
+import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.BogusPasswordAuthenticator;
+import org.apache.sshd.SshServer;
+import org.apache.sshd.common.keyprovider.FileKeyPairProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Measures how many connections per second can be set up using each key exchange algorithm. Connections are made one
+ * after another from a single thread, so the figures are per core. Algorithms the server does not support are
+ * reported as such.
+ * <p>
+ * Not run as part of the regular build; run explicitly with {@code -Dtest=HandshakeBenchmark}.
+ */
+public class HandshakeBenchmark
+{
+    
+    private static final String hostkey = "src/test/resources/hostkey.pem";
+    private static final String fingerprint = "ce:a7:c1:cf:17:3f:96:49:6a:53:1a:05:0b:ba:90:db";
+    
+    private static final int WARMUP = 20;
+    private static final int CONNECTIONS = 200;
+    
+    private SshServer sshd;
+    
+    private int port;
+    
+    @Before
+    public void setUp() throws IOException
+    {
+        ServerSocket s = new ServerSocket(0);
+        port = s.getLocalPort();
+        s.close();
+        
+        sshd = SshServer.setUpDefaultServer();
+        sshd.setPort(port);
+        sshd.setKeyPairProvider(new FileKeyPairProvider(new String[] { hostkey }));
+        sshd.setPasswordAuthenticator(new BogusPasswordAuthenticator());
+        sshd.start();
+    }
+    
+    @After
+    public void tearDown() throws InterruptedException
+    {
+        sshd.stop();
+    }
+    
+    @Test
+    public void benchmark() throws IOException
+    {
+        final List<Named<KeyExchange>> all = SSHClient.getDefaultConfig().getKeyExchangeFactories();
+        for (Named<KeyExchange> kex : all)
+        {
+            final Config config = SSHClient.getDefaultConfig();
+            config.setKeyExchangeFactories(kex);
+            try
+            {
+                handshakes(config, WARMUP);
+            } catch (TransportException e)
+            {
+                System.out.println(kex.getName() + ": not supported by server");
+                continue;
+            }
+            final long start = System.nanoTime();
+            handshakes(config, CONNECTIONS);
+            final double secs = (System.nanoTime() - start) / 1e9;
+            System.out.println(kex.getName() + ": " + Math.round(CONNECTIONS / secs) + " connections/s");
+        }
+    }
+    
+    private void handshakes(Config config, int n) throws IOException
+    {
+        for (int i = 0; i < n; i++)
+        {
+            final SSHClient ssh = new SSHClient(config);
+            ssh.addHostKeyVerifier("localhost", fingerprint);
+            try
+            {
+                ssh.connect("localhost", port);
+            } finally
+            {
+                ssh.disconnect();
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.net.ssh.connection.ConnectionException;
+import org.apache.commons.net.ssh.connection.Session;
+import org.apache.commons.net.ssh.util.BogusPasswordAuthenticator;
+import org.apache.sshd.SshServer;
+import org.apache.sshd.common.keyprovider.FileKeyPairProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link SessionPool} against an embedded server.
+ */
+public class SessionPoolTest
+{
+    
+    private static final String hostkey = "src/test/resources/hostkey.pem";
+    private static final String fingerprint = "ce:a7:c1:cf:17:3f:96:49:6a:53:1a:05:0b:ba:90:db";
+    
+    private SshServer sshd;
+    private SessionPool pool;
+    
+    private final List<SSHClient> clients = new CopyOnWriteArrayList<SSHClient>();
+    
+    private int port;
+    
+    @Before
+    public void setUp() throws IOException
+    {
+        ServerSocket s = new ServerSocket(0);
+        port = s.getLocalPort();
+        s.close();
+        
+        sshd = SshServer.setUpDefaultServer();
+        sshd.setPort(port);
+        sshd.setKeyPairProvider(new FileKeyPairProvider(new String[] { hostkey }));
+        sshd.setPasswordAuthenticator(new BogusPasswordAuthenticator());
+        sshd.start();
+        
+        pool = new SessionPool(new SessionPool.Connector()
+        {
+            public SSHClient connect(String hostname, int port, String username) throws IOException
+            {
+                final SSHClient ssh = new SSHClient();
+                ssh.addHostKeyVerifier(hostname, fingerprint);
+                ssh.connect(hostname, port);
+                ssh.authPassword(username, username);
+                clients.add(ssh);
+                return ssh;
+            }
+        });
+        pool.setHeartbeatInterval(0);
+    }
+    
+    @After
+    public void tearDown() throws InterruptedException
+    {
+        pool.close();
+        sshd.stop();
+    }
+    
+    @Test
+    public void testLeaseCap() throws IOException
+    {
+        pool.setMaxChannels(2);
+        pool.setMaxConnections(2);
+        for (int i = 0; i < 4; i++)
+            startSession();
+        assertEquals(2, pool.getConnectionCount());
+        assertEquals(4, pool.getLeaseCount());
+        assertEquals(2, pool.getHitCount());
+        assertEquals(0, pool.getLeaseWaitCount());
+    }
+    
+    @Test
+    public void testLeaseTimeout() throws IOException
+    {
+        pool.setMaxChannels(1);
+        pool.setMaxConnections(1);
+        pool.setLeaseTimeout(1);
+        startSession();
+        final long start = System.nanoTime();
+        try
+        {
+            startSession();
+            fail("Session leased beyond the limits");
+        } catch (ConnectionException expected)
+        {
+        }
+        assertTrue("gave up too early", System.nanoTime() - start >= 900000000L);
+        assertEquals(1, pool.getConnectionCount());
+        assertEquals(1, pool.getLeaseWaitCount());
+    }
+    
+    @Test
+    public void testLeaseWait() throws Exception
+    {
+        pool.setMaxChannels(1);
+        pool.setMaxConnections(1);
+        pool.setLeaseTimeout(10);
+        final Session first = startSession();
+        final Thread closer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(200);
+                    first.close();
+                } catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        closer.start();
+        startSession();
+        closer.join();
+        assertEquals(1, pool.getConnectionCount());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getLeaseWaitCount());
+    }
+    
+    @Test
+    public void testEviction() throws Exception
+    {
+        pool.setIdleTimeout(1);
+        final Session kept = startSession();
+        pool.getSessionFactory("localhost", port, "other").startSession().close();
+        assertEquals(2, pool.getConnectionCount());
+        
+        // Only the idle connection goes
+        awaitConnectionCount(1);
+        Thread.sleep(2000);
+        assertEquals(1, pool.getConnectionCount());
+        assertTrue(clients.get(0).isConnected());
+        for (int i = 0; i < 50 && clients.get(1).isConnected(); i++)
+            Thread.sleep(100);
+        assertFalse(clients.get(1).isConnected());
+        
+        kept.close();
+        awaitConnectionCount(0);
+    }
+    
+    private void awaitConnectionCount(int count) throws InterruptedException
+    {
+        for (int i = 0; i < 50 && pool.getConnectionCount() != count; i++)
+            Thread.sleep(100);
+        assertEquals(count, pool.getConnectionCount());
+    }
+    
+    private Session startSession() throws IOException
+    {
+        return pool.startSession("localhost", port, "same");
+    }
+    
+}
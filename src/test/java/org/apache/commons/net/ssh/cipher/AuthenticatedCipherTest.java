@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.cipher;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ChaCha20} and {@link Poly1305} against the test vectors of RFC 8439, and the authenticated ciphers
+ * against known answers.
+ * <p>
+ * Neither RFC 5647 nor OpenSSH's description of {@code chacha20-poly1305@openssh.com} gives test vectors, so the
+ * expected packets were computed with OpenSSL's AES-GCM, ChaCha20 and Poly1305.
+ */
+public class AuthenticatedCipherTest
+{
+    
+    private static byte[] hex(String s)
+    {
+        final byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++)
+            b[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        return b;
+    }
+    
+    private static byte[] key(int len, int mul, int add)
+    {
+        final byte[] key = new byte[len];
+        for (int i = 0; i < len; i++)
+            key[i] = (byte) (i * mul + add);
+        return key;
+    }
+    
+    @Test
+    public void testChaCha20()
+    {
+        // RFC 8439 section 2.4.2, with the 96-bit nonce 00:00:00:00:00:00:00:4a:00:00:00:00 split into the high word of
+        // the 64-bit block counter and the 64-bit nonce
+        final byte[] buf = ("Ladies and Gentlemen of the class of '99: If I could offer you only one tip for the "
+                + "future, sunscreen would be it.").getBytes();
+        new ChaCha20(key(32, 1, 0), 0).crypt(0x0000004a00000000L, 1, buf, 0, buf.length);
+        assertArrayEquals(hex("6e2e359a2568f98041ba0728dd0d6981e97e7aec1d4360c20a27afccfd9fae0bf91b65c5524733ab8f593dab"
+                + "cd62b3571639d624e65152ab8f530c359f0861d807ca0dbf500d6a6156a38e088a22b65e52bc514d16ccf806818ce91ab7793736"
+                + "5af90bbf74a35be6b40b8eedf2785e42874d"), buf);
+        
+        // RFC 8439 appendix A.1, test vector #1
+        final byte[] zeros = new byte[64];
+        new ChaCha20(new byte[32], 0).crypt(0, 0, zeros, 0, zeros.length);
+        assertArrayEquals(hex("76b8e0ada0f13d90405d6ae55386bd28bdd219b8a08ded1aa836efcc8b770dc7da41597c5157488d7724e03f"
+                + "b8d84a376a43b8f41518a11cc387b669b2ee6586"), zeros);
+    }
+    
+    @Test
+    public void testPoly1305()
+    {
+        // RFC 8439 section 2.5.2
+        final byte[] msg = "Cryptographic Forum Research Group".getBytes();
+        final byte[] tag = new byte[16];
+        Poly1305.mac(hex("85d6be7857556d337f4452fe42d506a80103808afb0db2fd4abff6af4149f51b"), msg, 0, msg.length, tag, 0);
+        assertArrayEquals(hex("a8061dc1305136c6c22b8baf0c0127a9"), tag);
+        
+        // RFC 8439 appendix A.3, test vector #1
+        Poly1305.mac(new byte[32], new byte[64], 0, 64, tag, 0);
+        assertArrayEquals(new byte[16], tag);
+    }
+    
+    @Test
+    public void testChaCha20Poly1305()
+    {
+        final byte[] key = key(64, 7, 3);
+        final byte[] plain = hex("0000001c0468656c6c6f2c2063686163686132302d706f6c7931333035000000");
+        final byte[] expected = hex("37ed40b775255c44ab89efd44d4af7221bd9ef154e8c813334abb753461f49b81f64e0c822f327b140b"
+                + "cfa959635102f");
+        
+        final ChaCha20Poly1305 enc = new ChaCha20Poly1305();
+        enc.init(Cipher.Mode.Encrypt, key, null);
+        final byte[] buf = Arrays.copyOf(plain, plain.length + 16);
+        enc.encrypt(7, buf, 0, plain.length);
+        assertArrayEquals(expected, buf);
+        
+        final ChaCha20Poly1305 dec = new ChaCha20Poly1305();
+        dec.init(Cipher.Mode.Decrypt, key, null);
+        assertEquals(28, dec.decryptLength(7, buf, 0));
+        assertTrue(dec.decrypt(7, buf, 0, plain.length));
+        // The length field is left encrypted
+        assertArrayEquals(Arrays.copyOfRange(plain, 4, plain.length), Arrays.copyOfRange(buf, 4, plain.length));
+        
+        // Wrong sequence number
+        assertFalse(dec.decrypt(8, expected.clone(), 0, plain.length));
+    }
+    
+    @Test
+    public void testAES128GCM()
+    {
+        checkGCM(new AES128GCM(), new AES128GCM(), 16, //
+                "0000001c2bb2bfbd0aa423af8bb9531dffeb85b4a87997fc4b080e61aabe1a852644a5ff9805a2a6857aa51e8f9deef8", //
+                "0000001c87d7ac409c12f2f84c97ae5c365de8a4b0ed1b69c4faf60fb50b6a2f56e3739c589f3ad0ee5550cd226c8cba");
+    }
+    
+    @Test
+    public void testAES256GCM()
+    {
+        checkGCM(new AES256GCM(), new AES256GCM(), 32, //
+                "0000001cebf8584dd405ab97e44c0100a647776c74e2a06cafa518744194b269fbc10b3c9fb8fc6840168a9b0577ab3c", //
+                "0000001ccab5fa7844cf74a95f9573bdcadc2ebe3f7e1387bab2b71e2a28198de03fe0bed88e9d3bc140348f1dc2a068");
+    }
+    
+    /*
+     * Encrypts the same packet twice, to check that the invocation counter advances, then decrypts both.
+     */
+    private void checkGCM(AuthenticatedCipher enc, AuthenticatedCipher dec, int keySize, String first, String second)
+    {
+        final byte[] key = key(keySize, 5, 1);
+        final byte[] iv = hex("000102030405060708090a0b");
+        final byte[] plain = hex("0000001c0468656c6c6f2c206165732d67636d2c205246432035363437000000");
+        enc.init(Cipher.Mode.Encrypt, key, iv);
+        dec.init(Cipher.Mode.Decrypt, key, iv);
+        for (String expected : new String[] { first, second })
+        {
+            final byte[] buf = Arrays.copyOf(plain, plain.length + 16);
+            enc.encrypt(0, buf, 0, plain.length);
+            assertArrayEquals(hex(expected), buf);
+            assertEquals(28, dec.decryptLength(0, buf, 0));
+            assertTrue(dec.decrypt(0, buf, 0, plain.length));
+            assertArrayEquals(plain, Arrays.copyOf(buf, plain.length));
+        }
+        
+        final byte[] tampered = hex(first);
+        tampered[10] ^= 1;
+        assertFalse(dec.decrypt(0, tampered, 0, plain.length));
+    }
+    
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.kex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.net.ssh.Factory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyPairPoolTest
+{
+    
+    private final Factory.Named<KeyPair> factory = new Factory.Named<KeyPair>()
+    {
+        public KeyPair create()
+        {
+            return new KeyPair(null, null);
+        }
+        
+        public String getName()
+        {
+            return "test";
+        }
+    };
+    
+    private KeyPairPool pool;
+    
+    @Before
+    public void setUp()
+    {
+        pool = new KeyPairPool(4, 1);
+    }
+    
+    @After
+    public void tearDown()
+    {
+        pool.shutdown();
+    }
+    
+    @Test
+    public void testMissThenHit() throws InterruptedException
+    {
+        pool.take(factory);
+        assertEquals(1, pool.getMisses());
+        
+        while (pool.getAvailable("test") < 4)
+            Thread.sleep(10);
+        
+        pool.take(factory);
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+    }
+    
+    @Test
+    public void testHandedOutOnce()
+    {
+        final Set<KeyPair> seen = new HashSet<KeyPair>();
+        for (int i = 0; i < 100; i++)
+            assertTrue(seen.add(pool.take(factory)));
+        assertEquals(100, pool.getHits() + pool.getMisses());
+    }
+    
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.sftp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests read-ahead in {@link RemoteFileInputStream} against a file that answers {@code READ} requests straight away.
+ */
+public class RemoteFileInputStreamTest
+{
+    
+    /**
+     * Serves {@code READ}s from an array, sending no more than {@code maxRead} bytes at a time, and only
+     * {@code shortLen} bytes for the read at {@code shortAt}.
+     */
+    private static class StubFile extends RemoteFile
+    {
+        
+        private final byte[] data;
+        private final int maxRead;
+        private long shortAt = -1;
+        private int shortLen;
+        
+        /** Offset and length of each {@code READ} sent */
+        private final List<long[]> reads = new ArrayList<long[]>();
+        
+        private StubFile(byte[] data, int maxRead)
+        {
+            super(null, "stub", "handle");
+            this.data = data;
+            this.maxRead = maxRead;
+        }
+        
+        @Override
+        public Request asyncRead(long fileOffset, int len) throws IOException
+        {
+            reads.add(new long[] { fileOffset, len });
+            final Request req = new Request(PacketType.READ, reads.size());
+            int n = (int) Math.min(Math.min(len, maxRead), data.length - fileOffset);
+            if (fileOffset == shortAt)
+                n = Math.min(n, shortLen);
+            final SFTPPacket<Response> res = new SFTPPacket<Response>(n > 0 ? PacketType.DATA : PacketType.STATUS);
+            res.putInt(req.getRequestID());
+            if (n > 0)
+            {
+                res.putInt(n);
+                res.putRawBytes(data, (int) fileOffset, n);
+            } else
+                res.putInt(1); // SSH_FX_EOF
+            req.getFuture().set(new Response(res));
+            return req;
+        }
+        
+    }
+    
+    @Test
+    public void testReadAhead() throws IOException
+    {
+        final byte[] data = data(10 * RemoteFileInputStream.READ_AHEAD_SIZE);
+        final StubFile rf = new StubFile(data, Integer.MAX_VALUE);
+        assertArrayEquals(data, readAll(new RemoteFileInputStream(rf, 0, 4)));
+        for (long[] read : rf.reads)
+            assertEquals(RemoteFileInputStream.READ_AHEAD_SIZE, read[1]);
+    }
+    
+    @Test
+    public void testShortReadShrinksChunks() throws IOException
+    {
+        final byte[] data = data(100000);
+        final StubFile rf = new StubFile(data, 10000);
+        assertArrayEquals(data, readAll(new RemoteFileInputStream(rf, 0, 4)));
+        
+        // The rest of the first chunk is asked for until it is all in
+        final int chunk = RemoteFileInputStream.READ_AHEAD_SIZE;
+        assertEquals(0, rf.reads.get(0)[0]);
+        assertEquals(chunk, rf.reads.get(0)[1]);
+        assertEquals(10000, rf.reads.get(1)[0]);
+        assertEquals(chunk - 10000, rf.reads.get(1)[1]);
+        
+        // By then the server's limit is known, and later reads within the file are no bigger
+        for (long[] read : rf.reads)
+            if (read[0] >= chunk && read[0] < data.length)
+                assertEquals(10000, read[1]);
+    }
+    
+    @Test
+    public void testShortReadFillsGap() throws IOException
+    {
+        final int chunk = RemoteFileInputStream.READ_AHEAD_SIZE;
+        final byte[] data = data(8 * chunk);
+        final StubFile rf = new StubFile(data, Integer.MAX_VALUE);
+        rf.shortAt = 2 * chunk;
+        rf.shortLen = 1000;
+        assertArrayEquals(data, readAll(new RemoteFileInputStream(rf, 0, 4)));
+        
+        // Only the rest of the short one is asked for again; the reads sent past it are kept, and chunks stay whole
+        int i = 0;
+        while (rf.reads.get(i)[0] != rf.shortAt)
+            i++;
+        assertTrue("reads sent past the short one", rf.reads.get(i + 1)[0] > rf.shortAt);
+        int gaps = 0;
+        for (long[] read : rf.reads)
+            if (read[0] == rf.shortAt + 1000)
+            {
+                assertEquals(chunk - 1000, read[1]);
+                gaps++;
+            } else
+            {
+                assertEquals(0, read[0] % chunk);
+                assertEquals(chunk, read[1]);
+            }
+        assertEquals(1, gaps);
+        for (int j = 1; j < rf.reads.size(); j++)
+            assertTrue("asked twice", rf.reads.get(j)[0] != rf.reads.get(j - 1)[0]);
+    }
+    
+    @Test
+    public void testEOFWithReadsOutstanding() throws IOException
+    {
+        final int chunk = RemoteFileInputStream.READ_AHEAD_SIZE;
+        final byte[] data = data(5 * chunk + 100);
+        final StubFile rf = new StubFile(data, Integer.MAX_VALUE);
+        final InputStream in = new RemoteFileInputStream(rf, 0, 16);
+        assertArrayEquals(data, readAll(in));
+        
+        // Reads went out past the end, and no more are sent once it is hit
+        long furthest = 0;
+        for (long[] read : rf.reads)
+            furthest = Math.max(furthest, read[0]);
+        assertTrue(furthest > data.length);
+        final int sent = rf.reads.size();
+        assertEquals(-1, in.read());
+        assertEquals(-1, in.read(new byte[10], 0, 10));
+        assertEquals(sent, rf.reads.size());
+    }
+    
+    @Test
+    public void testSegmentLimit() throws IOException
+    {
+        final int chunk = RemoteFileInputStream.READ_AHEAD_SIZE;
+        final byte[] data = data(4 * chunk);
+        final StubFile rf = new StubFile(data, Integer.MAX_VALUE);
+        final byte[] segment = readAll(new RemoteFileInputStream(rf, chunk, 2 * chunk + 10, 4));
+        assertEquals(chunk + 10, segment.length);
+        for (long[] read : rf.reads)
+            assertTrue(read[0] + read[1] <= 2 * chunk + 10);
+    }
+    
+    private static byte[] data(int len)
+    {
+        final byte[] data = new byte[len];
+        new Random(len).nextBytes(data);
+        return data;
+    }
+    
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[5000];
+        int n;
+        while ((n = in.read(buf, 0, buf.length)) != -1)
+            out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+    
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.net.ssh.PacketHandler;
+import org.apache.commons.net.ssh.SSHException;
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.cipher.AES128CBC;
+import org.apache.commons.net.ssh.cipher.AES128CTR;
+import org.apache.commons.net.ssh.cipher.AES128GCM;
+import org.apache.commons.net.ssh.cipher.AES256GCM;
+import org.apache.commons.net.ssh.cipher.ChaCha20Poly1305;
+import org.apache.commons.net.ssh.cipher.Cipher;
+import org.apache.commons.net.ssh.mac.HMACSHA1;
+import org.apache.commons.net.ssh.mac.HMACSHA256;
+import org.apache.commons.net.ssh.mac.HMACSHA256ETM;
+import org.apache.commons.net.ssh.mac.HMACSHA512ETM;
+import org.apache.commons.net.ssh.mac.MAC;
+import org.apache.commons.net.ssh.random.JCERandom;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link Decoder} together with {@link Encoder}, and compares how many times incoming bytes get copied when the
+ * decoder is fed from a separate receive buffer versus reading straight into the decoder buffer.
+ */
+public class DecoderTest
+{
+    
+    private static final int PACKETS = 1000;
+    private static final int PAYLOAD = 32 * 1024;
+    
+    private byte[] wire;
+    
+    private final PacketHandler handler = new PacketHandler()
+    {
+        public void handle(Message msg, SSHPacket buf) throws SSHException
+        {
+            assertEquals(Message.CHANNEL_DATA, msg);
+            assertEquals(PAYLOAD, buf.available());
+            handled++;
+        }
+    };
+    
+    private int handled;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        final Encoder encoder = new Encoder(new JCERandom(), new ReentrantLock());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < PACKETS; i++)
+        {
+            final SSHPacket packet = new SSHPacket(Message.CHANNEL_DATA);
+            packet.putRawBytes(new byte[PAYLOAD]);
+            encoder.encode(packet);
+            out.write(packet.array(), packet.rpos(), packet.available());
+        }
+        wire = out.toByteArray();
+    }
+    
+    @Test
+    public void testReceiveBuffer() throws Exception
+    {
+        final TransportStats stats = new TransportStats();
+        final Decoder decoder = new Decoder(handler, stats);
+        final InputStream in = new ByteArrayInputStream(wire);
+        final byte[] recvbuf = new byte[256 * 1024];
+        
+        int needed = 1;
+        int read;
+        while ((read = in.read(recvbuf, 0, needed)) != -1)
+            needed = decoder.received(recvbuf, read);
+        
+        assertEquals(PACKETS, handled);
+        assertEquals("every byte copied once", wire.length, stats.getBytesCopiedIn());
+    }
+    
+    @Test
+    public void testReceiveStream() throws Exception
+    {
+        final TransportStats stats = new TransportStats();
+        final Decoder decoder = new Decoder(handler, stats);
+        final InputStream in = new ByteArrayInputStream(wire);
+        
+        while (decoder.receive(in) != -1)
+            ;
+        
+        assertEquals(PACKETS, handled);
+        assertEquals(wire.length, stats.getBytesRead());
+        assertEquals("no byte copied", 0, stats.getBytesCopiedIn());
+    }
+    
+    @Test
+    public void testAuthenticatedCiphers() throws Exception
+    {
+        roundTrip(new AES128GCM(), null);
+        roundTrip(new AES256GCM(), null);
+        roundTrip(new ChaCha20Poly1305(), null);
+    }
+    
+    @Test
+    public void testMACs() throws Exception
+    {
+        roundTrip(new AES128CTR(), new HMACSHA256ETM());
+        roundTrip(new AES128CBC(), new HMACSHA512ETM());
+        roundTrip(new AES128CTR(), new HMACSHA256());
+        roundTrip(new AES128CTR(), new HMACSHA1());
+    }
+    
+    private void roundTrip(Cipher c, MAC m) throws Exception
+    {
+        final byte[] key = new byte[c.getBlockSize()];
+        final byte[] iv = new byte[c.getIVSize()];
+        new Random(c.getBlockSize()).nextBytes(key);
+        
+        final Encoder encoder = new Encoder(new JCERandom(), new ReentrantLock());
+        c.init(Cipher.Mode.Encrypt, key, iv);
+        if (m != null)
+            m.init(key);
+        encoder.setAlgorithms(c, m, null);
+        
+        final Cipher d = c.getClass().newInstance();
+        d.init(Cipher.Mode.Decrypt, key, iv);
+        final MAC n = m != null ? m.getClass().newInstance() : null;
+        if (n != null)
+            n.init(key);
+        final Decoder decoder = new Decoder(handler, new TransportStats());
+        decoder.setAlgorithms(d, n, null);
+        
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 10; i++)
+        {
+            final SSHPacket packet = new SSHPacket(Message.CHANNEL_DATA);
+            packet.putRawBytes(new byte[PAYLOAD]);
+            encoder.encode(packet);
+            out.write(packet.array(), packet.rpos(), packet.available());
+        }
+        final byte[] encoded = out.toByteArray();
+        
+        handled = 0;
+        final InputStream in = new ByteArrayInputStream(encoded);
+        while (decoder.receive(in) != -1)
+            ;
+        assertEquals(10, handled);
+        
+        // Tampering must be detected
+        encoded[encoded.length / 2] ^= 1;
+        final Decoder tampered = new Decoder(handler, new TransportStats());
+        d.init(Cipher.Mode.Decrypt, key, iv);
+        if (n != null)
+            n.init(key);
+        tampered.setAlgorithms(d, n, null);
+        try
+        {
+            final InputStream tin = new ByteArrayInputStream(encoded);
+            while (tampered.receive(tin) != -1)
+                ;
+            fail("Tampered packet not detected with " + c.getClass().getSimpleName() + "/" + m);
+        } catch (TransportException expected)
+        {
+        }
+    }
+    
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.util;
+
+import java.lang.management.ManagementFactory;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.util.Constants.Message;
+
+/**
+ * Measures the bytes allocated per packet with and without a {@link BufferPool}. Needs a JVM that reports per-thread
+ * allocation, such as HotSpot.
+ * <p>
+ * Not a test: run {@link #main(String[])} from the test classpath, and pass the number of packets to time if the
+ * default is too few for a stable figure.
+ */
+public final class BufferPoolBenchmark
+{
+    
+    private static final int DEFAULT_PACKETS = 10000;
+    private static final int PAYLOAD = 32 * 1024;
+    
+    private static volatile byte[] sink;
+    
+    private BufferPoolBenchmark()
+    {
+    }
+    
+    public static void main(String[] args)
+    {
+        final int packets = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PACKETS;
+        final java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean))
+        {
+            System.err.println("Per-thread allocation not reported by this JVM");
+            System.exit(1);
+        }
+        final com.sun.management.ThreadMXBean tmx = (com.sun.management.ThreadMXBean) mx;
+        final long tid = Thread.currentThread().getId();
+        final byte[] payload = new byte[PAYLOAD];
+        
+        // Warm up both paths
+        packets(null, payload, packets);
+        packets(BufferPool.getDefault(), payload, packets);
+        
+        long start = tmx.getThreadAllocatedBytes(tid);
+        packets(null, payload, packets);
+        final long unpooled = (tmx.getThreadAllocatedBytes(tid) - start) / packets;
+        
+        start = tmx.getThreadAllocatedBytes(tid);
+        packets(BufferPool.getDefault(), payload, packets);
+        final long pooled = (tmx.getThreadAllocatedBytes(tid) - start) / packets;
+        
+        System.out.println("Bytes allocated per " + PAYLOAD + "-byte packet: " + unpooled + " unpooled, " + pooled
+                + " pooled");
+    }
+    
+    private static void packets(BufferPool pool, byte[] payload, int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            final SSHPacket packet = new SSHPacket(Message.CHANNEL_DATA, pool);
+            packet.putInt(i).putString(payload);
+            sink = packet.array();
+            packet.release();
+        }
+    }
+    
+}
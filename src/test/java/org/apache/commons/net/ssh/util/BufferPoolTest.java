@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.Test;
+
+/**
+ * Tests {@link BufferPool}.
+ */
+public class BufferPoolTest
+{
+    
+    @Test
+    public void testSizes()
+    {
+        final BufferPool pool = new BufferPool(1, 1);
+        assertEquals(Buffer.DEFAULT_SIZE, pool.take(1).length);
+        assertEquals(Buffer.DEFAULT_SIZE, pool.take(Buffer.DEFAULT_SIZE).length);
+        assertEquals(512, pool.take(Buffer.DEFAULT_SIZE + 1).length);
+        assertEquals(BufferPool.MAX_POOLED_SIZE, pool.take(BufferPool.MAX_POOLED_SIZE).length);
+        assertEquals(2 * BufferPool.MAX_POOLED_SIZE, pool.take(BufferPool.MAX_POOLED_SIZE + 1).length);
+    }
+    
+    @Test
+    public void testReuseIsBounded()
+    {
+        final BufferPool pool = new BufferPool(1, 1);
+        final byte[] a = pool.take(1000);
+        final byte[] b = pool.take(1000);
+        pool.give(a);
+        pool.give(b);
+        pool.give(new byte[1000]); // not a pooled size
+        assertSame(a, pool.take(1000));
+        assertNotSame(b, pool.take(1000));
+        assertEquals(4, pool.getTakenCount());
+        assertEquals(1, pool.getReusedCount());
+    }
+    
+    @Test
+    public void testRelease()
+    {
+        final BufferPool pool = new BufferPool(1, 1);
+        final SSHPacket packet = new SSHPacket(Message.CHANNEL_DATA, pool);
+        packet.putRawBytes(new byte[1000]); // grows, giving back the first array
+        final byte[] grown = packet.array();
+        packet.release();
+        packet.release();
+        assertEquals(0, packet.available());
+        assertSame(grown, pool.take(1000));
+        assertEquals(Buffer.DEFAULT_SIZE, pool.take(1).length);
+        assertEquals(2, pool.getReusedCount());
+    }
+    
+}
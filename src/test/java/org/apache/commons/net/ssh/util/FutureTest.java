@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.net.ssh.connection.ConnectionException;
+import org.apache.commons.net.ssh.util.Future.Listener;
+import org.junit.Test;
+
+public class FutureTest
+{
+    
+    @Test
+    public void testExpires()
+    {
+        final Future<String, ConnectionException> future = new Future<String, ConnectionException>("expires",
+                ConnectionException.chainer);
+        future.expireAfter(1);
+        final long start = System.currentTimeMillis();
+        try
+        {
+            future.get();
+            fail("Future did not expire");
+        } catch (ConnectionException expected)
+        {
+            assertFalse(System.currentTimeMillis() - start < 900);
+        }
+    }
+    
+    @Test
+    public void testExpiryToldOutsideLock() throws Exception
+    {
+        final ReentrantLock lock = new ReentrantLock();
+        final Future<String, ConnectionException> future = new Future<String, ConnectionException>("expires",
+                ConnectionException.chainer, lock);
+        final List<Boolean> heldWhenTold = new ArrayList<Boolean>();
+        future.addListener(new Listener<String, ConnectionException>()
+        {
+            
+            public void completed(String val)
+            {
+            }
+            
+            public void failed(ConnectionException error)
+            {
+                heldWhenTold.add(lock.isHeldByCurrentThread());
+            }
+            
+        });
+        future.expireAfter(1);
+        Thread.sleep(1500);
+        assertEquals(1, heldWhenTold.size());
+        assertFalse(heldWhenTold.get(0));
+        // Already has an outcome
+        assertFalse(future.errorIfUnset(new Exception("Too late")));
+    }
+    
+    @Test
+    public void testSetBeforeExpiry() throws Exception
+    {
+        final Future<String, ConnectionException> future = new Future<String, ConnectionException>("set",
+                ConnectionException.chainer);
+        future.expireAfter(1);
+        future.set("done");
+        Thread.sleep(1500);
+        assertFalse(future.hasError());
+        assertEquals("done", future.get());
+    }
+    
+    @Test
+    public void testListeners()
+    {
+        final Future<String, ConnectionException> future = new Future<String, ConnectionException>("listened",
+                ConnectionException.chainer);
+        final List<String> told = new ArrayList<String>();
+        final Listener<String, ConnectionException> listener = new Listener<String, ConnectionException>()
+        {
+            
+            public void completed(String val)
+            {
+                told.add(val);
+            }
+            
+            public void failed(ConnectionException error)
+            {
+                told.add("failed");
+            }
+            
+        };
+        future.addListener(listener);
+        assertTrue(told.isEmpty());
+        future.set("done");
+        assertEquals(1, told.size());
+        assertEquals("done", told.get(0));
+        // Told right away once there is an outcome
+        future.addListener(listener);
+        assertEquals(2, told.size());
+        
+        final Future<String, ConnectionException> failing = new Future<String, ConnectionException>("failing",
+                ConnectionException.chainer);
+        failing.addListener(listener);
+        failing.error("Broken");
+        assertEquals("failed", told.get(2));
+    }
+    
+}